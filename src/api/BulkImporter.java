@@ -0,0 +1,360 @@
+package api;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import api.RequestScheduler.Priority;
+import song.Song;
+
+/**
+ * Imports a whole list of songs from Spotify at once.
+ *
+ * The list is a text file with one "Artist, Title" per line, like the search box takes. Each
+ * song goes through the same steps as SpotifyAPI.getMetadata, but split into stages that each
+ * have their own pool of threads: looking up the track, downloading the audio and artwork side
+ * by side, looking up the artist's genre, and saving the Song. A stage can only work on as many
+ * songs at once as it has threads, and only window songs can be anywhere in the pipeline at once,
+ * so reading the list waits whenever the stages fall behind instead of queueing up the whole file.
+ *
+ * Its searches wait in the RequestScheduler's BULK lane, so searches from the search box
+ * still go first while an import is running.
+ *
+ * Saved Songs are written to data.txt in batches, and each batch is handed to the ImportListener
+ * together, so the model only has to update once per batch. A song that fails doesn't stop the
+ * others, it is added to the ImportSummary with the reason it failed.
+ *
+ * Properties:
+ * lookups, downloads, genres:
+ * How many threads the lookup, download and genre stages have.
+ *
+ * window:
+ * How many songs can be in the pipeline at once.
+ *
+ * batchSize:
+ * How many Songs are saved at a time.
+ */
+public class BulkImporter {
+
+	/**
+	 * Gets told how an import is going. Both methods are called from the importer's threads,
+	 * so anything touching the view has to go through Platform.runLater.
+	 */
+	public interface ImportListener {
+
+		/**
+		 * Called each time a song finishes, whether it was imported or failed.
+		 * @param done How many songs have finished, counting failures.
+		 * @param failed How many songs have failed.
+		 * @param total How many songs are in the list.
+		 */
+		void progress(int done, int failed, int total);
+
+		/**
+		 * Called once for every batch of Songs that has been written to data.txt.
+		 * @param songs The Songs in the batch.
+		 */
+		void imported(List<Song> songs);
+	}
+
+	/**
+	 * What happened in an import once it has finished.
+	 */
+	public static class ImportSummary {
+
+		private final int total;
+		private final int imported;
+		private final List<String> failures;
+
+		private ImportSummary(int total, int imported, List<String> failures) {
+			this.total = total;
+			this.imported = imported;
+			this.failures = failures;
+		}
+
+		/**
+		 * Returns how many songs were in the list.
+		 * @return The number of songs.
+		 */
+		public int getTotal() {
+			return total;
+		}
+
+		/**
+		 * Returns how many songs were imported.
+		 * @return The number of songs imported.
+		 */
+		public int getImported() {
+			return imported;
+		}
+
+		/**
+		 * Returns one line for every song that failed, saying which song and why.
+		 * @return The failures.
+		 */
+		public List<String> getFailures() {
+			return failures;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("Imported ").append(imported).append(" of ").append(total).append(" songs");
+			if (!failures.isEmpty()) {
+				sb.append(", ").append(failures.size()).append(" failed:");
+				for (String failure : failures) {
+					sb.append("\n").append(failure);
+				}
+			}
+			return sb.toString();
+		}
+	}
+
+	private final int lookups;
+	private final int downloads;
+	private final int genres;
+	private final int window;
+	private final int batchSize;
+
+	/**
+	 * Creates a BulkImporter with 8 lookup threads, 8 download threads, 4 genre threads,
+	 * 64 songs in the pipeline at once and batches of 100.
+	 */
+	public BulkImporter() {
+		this(8, 8, 4, 64, 100);
+	}
+
+	/**
+	 * Creates a BulkImporter.
+	 * @param lookups How many track lookups can happen at once.
+	 * @param downloads How many files can download at once.
+	 * @param genres How many genre lookups can happen at once.
+	 * @param window How many songs can be in the pipeline at once.
+	 * @param batchSize How many Songs to save at a time.
+	 */
+	public BulkImporter(int lookups, int downloads, int genres, int window, int batchSize) {
+		this.lookups = lookups;
+		this.downloads = downloads;
+		this.genres = genres;
+		this.window = window;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Imports every song in a file, waiting until all of them have finished.
+	 * @param fileName Path of a file with one "Artist, Title" per line. Blank lines and lines
+	 * starting with # are skipped.
+	 * @param listener Told about progress and each saved batch, can be null.
+	 * @return The ImportSummary.
+	 * @throws IOException If the file can't be read.
+	 * @throws InterruptedException If the thread is interrupted while waiting on the stages.
+	 */
+	public ImportSummary importFile(String fileName, ImportListener listener) throws IOException, InterruptedException {
+		List<String> lines = Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8);
+		List<String> songs = new ArrayList<String>();
+		for (String line : lines) {
+			if (!line.isBlank() && !line.strip().startsWith("#")) {
+				songs.add(line);
+			}
+		}
+		return importSongs(songs, listener);
+	}
+
+	/**
+	 * Imports a list of songs, waiting until all of them have finished.
+	 * @param songs The songs, each written "Artist, Title".
+	 * @param listener Told about progress and each saved batch, can be null.
+	 * @return The ImportSummary.
+	 * @throws InterruptedException If the thread is interrupted while waiting on the stages.
+	 */
+	public ImportSummary importSongs(List<String> songs, ImportListener listener) throws InterruptedException {
+		Run run = new Run(songs.size(), listener);
+		try {
+			Set<String> seen = new HashSet<String>();
+			for (String line : songs) {
+				String[] split = line.split(",");
+				if (split.length != 2 || split[0].isBlank() || split[1].isBlank()) {
+					run.fail(line.strip(), "not written as Artist, Title");
+					continue;
+				}
+				String artist = split[0].strip();
+				String title = split[1].strip();
+				if (!seen.add(LookupCache.key(artist, title))) {
+					run.fail(artist + ", " + title, "already in the list");
+					continue;
+				}
+				run.permits.acquire();
+				run.start(artist, title);
+			}
+			// every permit is back once every song has finished
+			run.permits.acquire(window);
+			run.flush().join();
+		} finally {
+			run.shutdown();
+		}
+		return new ImportSummary(songs.size(), run.imported.get(), new ArrayList<String>(run.failures));
+	}
+
+	/**
+	 * The stages and counts of one import.
+	 */
+	private class Run {
+
+		private final ExecutorService lookupPool = pool("import-lookup", lookups);
+		private final ExecutorService downloadPool = pool("import-download", downloads);
+		private final ExecutorService genrePool = pool("import-genre", genres);
+		private final ExecutorService persistPool = pool("import-save", 1);
+
+		private final Semaphore permits = new Semaphore(window);
+		private final AtomicInteger done = new AtomicInteger();
+		private final AtomicInteger failed = new AtomicInteger();
+		private final AtomicInteger imported = new AtomicInteger();
+		private final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+		private final int total;
+		private final ImportListener listener;
+
+		// only touched from persistPool
+		private List<Song> batch = new ArrayList<Song>();
+
+		private Run(int total, ImportListener listener) {
+			this.total = total;
+			this.listener = listener;
+		}
+
+		/**
+		 * Sends one song through the stages. Its permit is given back once it is saved or fails.
+		 */
+		private void start(String artist, String title) {
+			CompletableFuture
+					.supplyAsync(() -> SpotifyAPI.lookupTrackAsync(artist, title, Priority.BULK).join(), lookupPool)
+					.thenCompose(track -> {
+						CompletableFuture<String> audio = CompletableFuture.supplyAsync(() -> SpotifyAPI.downloadAudio(track.getPreviewLink()).join(), downloadPool);
+						CompletableFuture<String> art = CompletableFuture.supplyAsync(() -> SpotifyAPI.downloadArt(track.getCoverLink()).join(), downloadPool);
+						return audio.thenCombine(art, (audioPath, artPath) -> new String[] {audioPath, artPath, track.getReleaseDate()});
+					})
+					.thenApplyAsync(paths -> {
+						String genre = SpotifyAPI.getGenreAsync(artist, Priority.BULK).join();
+						return new Song(title, artist, genre, paths[1], paths[2], paths[0]);
+					}, genrePool)
+					.thenAcceptAsync(this::save, persistPool)
+					.whenComplete((nothing, e) -> {
+						if (e != null) {
+							fail(artist + ", " + title, reason(e));
+						} else {
+							progress();
+						}
+						permits.release();
+					});
+		}
+
+		private void save(Song song) {
+			batch.add(song);
+			imported.incrementAndGet();
+			if (batch.size() >= batchSize) {
+				writeBatch();
+			}
+		}
+
+		/**
+		 * Saves whatever is left in the last batch.
+		 */
+		private CompletableFuture<Void> flush() {
+			return CompletableFuture.runAsync(this::writeBatch, persistPool);
+		}
+
+		private void writeBatch() {
+			if (batch.isEmpty()) {
+				return;
+			}
+			List<Song> songs = batch;
+			batch = new ArrayList<Song>();
+			SpotifyAPI.updateData(songs);
+			if (listener != null) {
+				listener.imported(songs);
+			}
+		}
+
+		private void fail(String song, String reason) {
+			failures.add(song + ": " + reason);
+			failed.incrementAndGet();
+			progress();
+		}
+
+		private void progress() {
+			int finished = done.incrementAndGet();
+			if (listener != null) {
+				listener.progress(finished, failed.get(), total);
+			}
+		}
+
+		private void shutdown() {
+			lookupPool.shutdownNow();
+			downloadPool.shutdownNow();
+			genrePool.shutdownNow();
+			persistPool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns a short reason a song failed, from the exception at the bottom of a failed stage.
+	 */
+	private static String reason(Throwable e) {
+		while (e instanceof CompletionException && e.getCause() != null) {
+			e = e.getCause();
+		}
+		String message = e.getMessage();
+		if (message == null || message.isBlank()) {
+			return e.getClass().getSimpleName();
+		}
+		return message;
+	}
+
+	private static ExecutorService pool(String name, int threads) {
+		AtomicInteger count = new AtomicInteger();
+		return Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Imports the list of songs in the file given as the first argument, printing progress as it goes.
+	 * @param args The path of the list.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length != 1) {
+			System.out.println("usage: BulkImporter <file of Artist, Title lines>");
+			return;
+		}
+		long start = System.nanoTime();
+		ImportSummary summary = new BulkImporter().importFile(args[0], new ImportListener() {
+			@Override
+			public void progress(int done, int failed, int total) {
+				if (done % 50 == 0 || done == total) {
+					System.out.println(done + "/" + total + " done, " + failed + " failed");
+				}
+			}
+
+			@Override
+			public void imported(List<Song> songs) {
+				System.out.println("saved " + songs.size() + " songs");
+			}
+		});
+		System.out.println(summary);
+		System.out.println(String.format("took %.1f s", (System.nanoTime() - start) / 1e9));
+		System.out.println("downloads: " + SpotifyAPI.getDownloads());
+	}
+}
@@ -0,0 +1,307 @@
+package api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import utilities.AssetStore;
+import utilities.SpotifyAPIInvalidDownloadException;
+
+/**
+ * Downloads the audio previews and album artwork that SpotifyAPI finds.
+ *
+ * Downloads run on a fixed number of threads no matter how many are asked for at once, and each
+ * one gives back a future that completes once the file is finished. A file is written next to where
+ * it belongs with ".part" on the end, forced to disk, and then renamed into place, so a file at the
+ * real path is always whole. If a download is cut off, the next try asks the server for only the
+ * bytes after what the .part file already has, using an HTTP Range request. The file's ETag, or its
+ * Last-Modified date if it has no strong ETag, is saved next to the .part file and sent back as
+ * If-Range, so if the file changed on the server in between it sends the whole new file instead of
+ * the rest of a different one. A .part file with nothing saved to check it against is started over.
+ *
+ * Downloads can also go into an AssetStore, which names files by their hash so a file that is
+ * downloaded twice is only stored once.
+ *
+ * The manager also counts files, failures and bytes so the throughput of the downloads can be checked.
+ *
+ * Properties:
+ * client:
+ * The HttpClient downloads are sent with.
+ *
+ * pool:
+ * The threads downloads run on.
+ *
+ * files, failures, deduplicated, bytes, busyNanos:
+ * Totals across every download, deduplicated being downloads an AssetStore already had and busyNanos
+ * being the time spent downloading added up over all threads.
+ */
+public class DownloadManager {
+
+	private static final int ATTEMPTS = 3;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+	private final HttpClient client;
+	private final ExecutorService pool;
+	private final AtomicInteger files;
+	private final AtomicInteger failures;
+	private final AtomicInteger deduplicated;
+	private final AtomicLong bytes;
+	private final AtomicLong busyNanos;
+
+	/**
+	 * Creates a DownloadManager.
+	 * @param client The HttpClient to send downloads with.
+	 * @param threads How many downloads can run at once.
+	 */
+	public DownloadManager(HttpClient client, int threads) {
+		this.client = client;
+		AtomicInteger count = new AtomicInteger();
+		this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "download-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.files = new AtomicInteger();
+		this.failures = new AtomicInteger();
+		this.deduplicated = new AtomicInteger();
+		this.bytes = new AtomicLong();
+		this.busyNanos = new AtomicLong();
+	}
+
+	/**
+	 * Downloads a file. The download waits for a free thread, and is tried a few times,
+	 * picking up where the last try stopped, before it gives up.
+	 * @param link Where to download from.
+	 * @param outputFileName The path to save the file at, its folder is made if needed.
+	 * @return A CompletableFuture of the saved file's path, which completes once the file is on disk
+	 * at that path, or fails with a SpotifyAPIInvalidDownloadException.
+	 */
+	public CompletableFuture<Path> download(URI link, String outputFileName) {
+		return download(link, Paths.get(outputFileName), null);
+	}
+
+	/**
+	 * Downloads a file into an AssetStore. The file is hashed as it comes in, and if the store
+	 * already has the same file the download is thrown away without being forced to disk or moved,
+	 * and the stored file's path is given back instead.
+	 * @param link Where to download from.
+	 * @param store The AssetStore to save the file in.
+	 * @return A CompletableFuture of the stored file's path, or fails with a SpotifyAPIInvalidDownloadException.
+	 */
+	public CompletableFuture<Path> download(URI link, AssetStore store) {
+		return download(link, store.stagingPath(link.toString()), store);
+	}
+
+	private CompletableFuture<Path> download(URI link, Path target, AssetStore store) {
+		return CompletableFuture.supplyAsync(() -> {
+			long start = System.nanoTime();
+			try {
+				IOException last = null;
+				for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+					try {
+						Path saved = fetch(link, target, store);
+						files.incrementAndGet();
+						return saved;
+					} catch (IOException e) {
+						last = e;
+					}
+				}
+				failures.incrementAndGet();
+				throw new CompletionException(new SpotifyAPIInvalidDownloadException("Couldn't download " + link + ": " + last.getMessage()));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failures.incrementAndGet();
+				throw new CompletionException(new SpotifyAPIInvalidDownloadException("Download of " + link + " was interrupted"));
+			} finally {
+				busyNanos.addAndGet(System.nanoTime() - start);
+			}
+		}, pool);
+	}
+
+	/**
+	 * Makes one try at a download, resuming from the .part file if there is one.
+	 * @return Where the file ended up, which is target unless it went into store.
+	 */
+	private Path fetch(URI link, Path target, AssetStore store) throws IOException, InterruptedException {
+		if (target.getParent() != null) {
+			Files.createDirectories(target.getParent());
+		}
+		Path part = target.resolveSibling(target.getFileName() + ".part");
+		Path validator = target.resolveSibling(target.getFileName() + ".part.validator");
+		long have = Files.exists(part) ? Files.size(part) : 0;
+		String saved = have > 0 && Files.exists(validator) ? Files.readString(validator).trim() : "";
+		HttpRequest.Builder request = HttpRequest.newBuilder(link).timeout(TIMEOUT).GET();
+		if (have > 0 && !saved.isEmpty()) {
+			request.header("Range", "bytes=" + have + "-");
+			request.header("If-Range", saved);
+		} else {
+			// without a validator there's no telling if the server's file is still the one the .part came from
+			have = 0;
+		}
+		HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+		int status = response.statusCode();
+		String hash = null;
+		try (InputStream in = response.body()) {
+			if (status == 416 && have > 0) {
+				// the .part file is already everything the server has, or isn't from this file, start over
+				Files.delete(part);
+				Files.deleteIfExists(validator);
+				throw new IOException("Range not satisfiable");
+			} else if (status != 200 && status != 206) {
+				throw new IOException("HTTP " + status);
+			} else if (status == 206 && (have == 0 || !startsAt(response, have))) {
+				// a range that wasn't asked for can't be put together with what is saved
+				Files.deleteIfExists(part);
+				Files.deleteIfExists(validator);
+				throw new IOException("Unexpected range " + response.headers().firstValue("Content-Range").orElse(""));
+			}
+			// a 200 means the server sent the whole file, because it changed or doesn't do ranges, so
+			// anything already saved is thrown away and the new file's validator is kept instead
+			boolean resume = status == 206;
+			if (!resume) {
+				saveValidator(response, validator);
+			}
+			MessageDigest digest = store == null ? null : AssetStore.newDigest();
+			byte[] chunk = new byte[BUFFER_SIZE];
+			if (resume && digest != null) {
+				try (InputStream old = Files.newInputStream(part)) {
+					int read;
+					while ((read = old.read(chunk)) != -1) {
+						digest.update(chunk, 0, read);
+					}
+				}
+			}
+			try (FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					resume ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer buffer = ByteBuffer.wrap(chunk);
+				int read;
+				while ((read = in.read(chunk)) != -1) {
+					buffer.clear().limit(read);
+					while (buffer.hasRemaining()) {
+						out.write(buffer);
+					}
+					if (digest != null) {
+						digest.update(chunk, 0, read);
+					}
+					bytes.addAndGet(read);
+				}
+				if (digest != null) {
+					hash = AssetStore.hex(digest.digest());
+				}
+				if (hash == null || !store.contains(hash)) {
+					out.force(true);
+				}
+			}
+		}
+		Files.deleteIfExists(validator);
+		if (store == null) {
+			Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return target;
+		}
+		if (store.contains(hash)) {
+			deduplicated.incrementAndGet();
+		}
+		return store.commit(part, hash);
+	}
+
+	/**
+	 * Checks that a 206 response starts right after the bytes the .part file has.
+	 */
+	private static boolean startsAt(HttpResponse<?> response, long have) {
+		String range = response.headers().firstValue("Content-Range").orElse(null);
+		if (range == null) {
+			// servers that leave it out send what was asked for
+			return true;
+		}
+		int dash = range.indexOf('-');
+		if (!range.startsWith("bytes ") || dash < 0) {
+			return false;
+		}
+		try {
+			return Long.parseLong(range.substring(6, dash).trim()) == have;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Saves what a later try sends as If-Range, a strong ETag if the response has one and its
+	 * Last-Modified date if not. Weak ETags can't be used for ranges, and with neither the file
+	 * is removed, so a cut off download starts over.
+	 */
+	private static void saveValidator(HttpResponse<?> response, Path validator) throws IOException {
+		String value = response.headers().firstValue("ETag").filter(tag -> !tag.startsWith("W/"))
+				.or(() -> response.headers().firstValue("Last-Modified")).orElse(null);
+		if (value == null) {
+			Files.deleteIfExists(validator);
+		} else {
+			Files.writeString(validator, value);
+		}
+	}
+
+	/**
+	 * Returns how many files have finished downloading.
+	 * @return The number of files.
+	 */
+	public int getFiles() {
+		return files.get();
+	}
+
+	/**
+	 * Returns how many downloads gave up.
+	 * @return The number of failed downloads.
+	 */
+	public int getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * Returns how many bytes have been downloaded, counting tries that failed.
+	 * @return The number of bytes.
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * Returns how many downloads into an AssetStore turned out to be a file it already had.
+	 * @return The number of duplicate files.
+	 */
+	public int getDeduplicated() {
+		return deduplicated.get();
+	}
+
+	/**
+	 * Returns the average speed of one download thread while it was downloading.
+	 * @return Bytes per second, 0 before anything has been downloaded.
+	 */
+	public double getThroughput() {
+		long nanos = busyNanos.get();
+		return nanos == 0 ? 0 : bytes.get() * 1e9 / nanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d files, %d already stored, %d failed, %.1f MB, %.0f KB/s per download", getFiles(),
+				getDeduplicated(), getFailures(), getBytes() / 1e6, getThroughput() / 1e3);
+	}
+}
@@ -0,0 +1,375 @@
+package api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A small pull parser that reads JSON straight off a byte stream, one token at a time.
+ *
+ * SpotifyAPI only needs a handful of fields out of responses that are mostly market lists
+ * and links, so instead of reading the whole response into lines and searching them, this
+ * walks the bytes once, skips everything it isn't asked about without making Strings out of it,
+ * and lets the caller stop as soon as it has what it needs. Names can be checked with nameEquals
+ * without decoding them, and a String is only built when text() is called.
+ *
+ * This is not a validating parser. It expects well formed JSON, which is what the API sends.
+ */
+public class JsonScanner {
+
+	/**
+	 * The kinds of tokens the scanner can return.
+	 */
+	public enum Token {
+		START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, NAME, STRING, NUMBER, LITERAL, END
+	}
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final InputStream in;
+	private final byte[] buffer;
+	private int pos;
+	private int limit;
+
+	// the text of the current NAME, STRING, NUMBER or LITERAL token, as UTF-8
+	private byte[] text;
+	private int textLength;
+
+	private Token current;
+	private int depth;
+
+	/**
+	 * Creates a JsonScanner over a stream. The scanner doesn't close the stream.
+	 * @param in The stream of JSON bytes.
+	 */
+	public JsonScanner(InputStream in) {
+		this.in = in;
+		this.buffer = new byte[BUFFER_SIZE];
+		this.pos = 0;
+		this.limit = 0;
+		this.text = new byte[256];
+		this.textLength = 0;
+		this.current = null;
+		this.depth = 0;
+	}
+
+	/**
+	 * Reads the next token.
+	 * @return The token that was read, END once the stream runs out.
+	 * @throws IOException If the stream can't be read or the JSON is cut off.
+	 */
+	public Token next() throws IOException {
+		int c = skipSeparators();
+		switch (c) {
+		case -1:
+			current = Token.END;
+			break;
+		case '{':
+			depth += 1;
+			current = Token.START_OBJECT;
+			break;
+		case '}':
+			depth -= 1;
+			current = Token.END_OBJECT;
+			break;
+		case '[':
+			depth += 1;
+			current = Token.START_ARRAY;
+			break;
+		case ']':
+			depth -= 1;
+			current = Token.END_ARRAY;
+			break;
+		case '"':
+			readString();
+			current = peekSeparator() == ':' ? Token.NAME : Token.STRING;
+			break;
+		default:
+			readBare(c);
+			current = (c == '-' || (c >= '0' && c <= '9')) ? Token.NUMBER : Token.LITERAL;
+		}
+		return current;
+	}
+
+	/**
+	 * Returns the last token read.
+	 * @return The current token, null before the first call to next.
+	 */
+	public Token current() {
+		return current;
+	}
+
+	/**
+	 * Returns how many objects and arrays the scanner is inside of. A START token counts
+	 * the container it starts, an END token has already left it.
+	 * @return The nesting depth.
+	 */
+	public int depth() {
+		return depth;
+	}
+
+	/**
+	 * Checks the current NAME or STRING against a String without building a new String.
+	 * @param name The text to compare to.
+	 * @return true if the current token's text is exactly name.
+	 */
+	public boolean nameEquals(String name) {
+		int length = name.length();
+		if (length != textLength) {
+			// only right for ASCII names, which is all the API uses
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (text[i] != (byte) name.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the current token's text as a String.
+	 * @return The text of the current NAME, STRING, NUMBER or LITERAL.
+	 */
+	public String text() {
+		return new String(text, 0, textLength, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns if the current token is the literal null.
+	 * @return true if the current token is null.
+	 */
+	public boolean isNull() {
+		return current == Token.LITERAL && nameEquals("null");
+	}
+
+	/**
+	 * Skips the value that comes after the current NAME, including everything inside it if
+	 * it is an object or array.
+	 * @throws IOException If the stream can't be read.
+	 */
+	public void skipValue() throws IOException {
+		Token token = next();
+		if (token == Token.START_OBJECT || token == Token.START_ARRAY) {
+			skipContainer();
+		}
+	}
+
+	/**
+	 * Skips everything left in the object or array the scanner is in, up to and including its end.
+	 * @throws IOException If the stream can't be read.
+	 */
+	public void skipRest() throws IOException {
+		skipContainer();
+	}
+
+	/**
+	 * Moves through the fields of the object the scanner is in until it finds one called name,
+	 * skipping the values of any other fields. The scanner is left right before the value of name.
+	 * @param name The field to find.
+	 * @return true if the field was found, false if the object ended first.
+	 * @throws IOException If the stream can't be read.
+	 */
+	public boolean findField(String name) throws IOException {
+		while (true) {
+			Token token = next();
+			if (token != Token.NAME) {
+				return false;
+			}
+			if (nameEquals(name)) {
+				return true;
+			}
+			skipValue();
+		}
+	}
+
+	/**
+	 * Reads the START_ARRAY of the value that comes next and stops right before the array's first element.
+	 * @return true if there is a first element, false if the value isn't an array or is empty.
+	 * @throws IOException If the stream can't be read.
+	 */
+	public boolean enterArray() throws IOException {
+		Token token = next();
+		if (token != Token.START_ARRAY) {
+			if (token == Token.START_OBJECT) {
+				skipContainer();
+			}
+			return false;
+		}
+		if (peekSeparator() == ']') {
+			next();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads until the object or array the scanner is in is closed.
+	 */
+	private void skipContainer() throws IOException {
+		int target = depth - 1;
+		while (depth > target) {
+			if (next() == Token.END) {
+				throw new IOException("JSON ended inside an object or array");
+			}
+		}
+	}
+
+	/*
+	 * Byte level reading
+	 */
+
+	private int read() throws IOException {
+		if (pos == limit) {
+			limit = in.read(buffer, 0, buffer.length);
+			pos = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[pos++] & 0xff;
+	}
+
+	/**
+	 * Returns the next byte that isn't whitespace, a comma or a colon without reading it.
+	 */
+	private int peekSeparator() throws IOException {
+		while (true) {
+			int c = read();
+			if (c == -1) {
+				return -1;
+			}
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				pos -= 1;
+				return c;
+			}
+		}
+	}
+
+	/**
+	 * Reads past whitespace, commas and colons and returns the byte after them.
+	 */
+	private int skipSeparators() throws IOException {
+		while (true) {
+			int c = read();
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t' && c != ',' && c != ':') {
+				return c;
+			}
+		}
+	}
+
+	private void readString() throws IOException {
+		textLength = 0;
+		while (true) {
+			int c = read();
+			if (c == -1) {
+				throw new IOException("JSON ended inside a string");
+			}
+			if (c == '"') {
+				return;
+			}
+			if (c == '\\') {
+				readEscape();
+			} else {
+				append(c);
+			}
+		}
+	}
+
+	private void readEscape() throws IOException {
+		int c = read();
+		switch (c) {
+		case 'n':
+			append('\n');
+			break;
+		case 't':
+			append('\t');
+			break;
+		case 'r':
+			append('\r');
+			break;
+		case 'b':
+			append('\b');
+			break;
+		case 'f':
+			append('\f');
+			break;
+		case 'u':
+			int code = readHex();
+			if (code >= 0xD800 && code <= 0xDBFF) {
+				// the high half of a surrogate pair, the low half is another \\u escape
+				if (read() == '\\' && read() == 'u') {
+					int low = readHex();
+					code = 0x10000 + ((code - 0xD800) << 10) + (low - 0xDC00);
+				}
+			}
+			appendCodePoint(code);
+			break;
+		case -1:
+			throw new IOException("JSON ended inside a string");
+		default:
+			// \" \\ and \/
+			append(c);
+		}
+	}
+
+	private int readHex() throws IOException {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			int c = read();
+			int digit = Character.digit(c, 16);
+			if (c == -1 || digit < 0) {
+				throw new IOException("Bad \\u escape in JSON");
+			}
+			value = value * 16 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Reads a number, true, false or null that starts with first.
+	 */
+	private void readBare(int first) throws IOException {
+		textLength = 0;
+		append(first);
+		while (true) {
+			int c = read();
+			if (c == -1) {
+				return;
+			}
+			if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+				pos -= 1;
+				return;
+			}
+			append(c);
+		}
+	}
+
+	private void append(int b) {
+		if (textLength == text.length) {
+			byte[] bigger = new byte[text.length * 2];
+			System.arraycopy(text, 0, bigger, 0, textLength);
+			text = bigger;
+		}
+		text[textLength++] = (byte) b;
+	}
+
+	private void appendCodePoint(int code) {
+		if (code < 0x80) {
+			append(code);
+		} else if (code < 0x800) {
+			append(0xC0 | (code >> 6));
+			append(0x80 | (code & 0x3F));
+		} else if (code < 0x10000) {
+			append(0xE0 | (code >> 12));
+			append(0x80 | ((code >> 6) & 0x3F));
+			append(0x80 | (code & 0x3F));
+		} else {
+			append(0xF0 | (code >> 18));
+			append(0x80 | ((code >> 12) & 0x3F));
+			append(0x80 | ((code >> 6) & 0x3F));
+			append(0x80 | (code & 0x3F));
+		}
+	}
+}
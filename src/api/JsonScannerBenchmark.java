@@ -0,0 +1,125 @@
+package api;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Times SpotifyJson against the line by line parsing SpotifyAPI used before it, on responses
+ * laid out the way Spotify sends them (the same ones SpotifyStubServer answers with). Run it with
+ * the main method, no network is needed.
+ *
+ * For each parser it prints the average time per response and, when the JVM can report it,
+ * the bytes allocated per response.
+ */
+public class JsonScannerBenchmark {
+
+	private static final int WARMUP = 20000;
+	private static final int ROUNDS = 200000;
+
+	// kept so the JIT can't throw the parsing away
+	private static int sink;
+
+	public static void main(String[] args) throws IOException {
+		byte[] track = SpotifyStubServer.trackResponse("The Strokes", "Last Nite",
+				"https://i.scdn.co/image/ab67616d0000b27313f2466b83507515291acce4",
+				"https://p.scdn.co/mp3-preview/c3b0e8a2b3e14e46f5a2e1b0a7e9c1b7a2ba2d7f?cid=f8d521b06e3146e4ac81c0e72e4cf010").getBytes(StandardCharsets.UTF_8);
+		byte[] artist = SpotifyStubServer.artistResponse("The Strokes",
+				new String[] {"alternative rock", "garage rock", "modern rock", "permanent wave", "rock"}).getBytes(StandardCharsets.UTF_8);
+		System.out.println("track response: " + track.length + " bytes, artist response: " + artist.length + " bytes");
+
+		TrackMetadata lines = lineTrack(new ByteArrayInputStream(track));
+		TrackMetadata scanned = SpotifyJson.readTrack(new ByteArrayInputStream(track));
+		System.out.println("lines:   " + lines.getCoverLink() + " " + lines.getPreviewLink() + " " + lines.getReleaseDate());
+		System.out.println("scanner: " + scanned.getCoverLink() + " " + scanned.getPreviewLink() + " " + scanned.getReleaseDate());
+		System.out.println("genre lines: " + lineGenre(new ByteArrayInputStream(artist)) + ", scanner: " + SpotifyJson.readGenres(new ByteArrayInputStream(artist)));
+
+		for (int pass = 0; pass < 2; pass++) {
+			// the first pass is warmup for both parsers
+			boolean print = pass == 1;
+			run("track, lines", print, () -> lineTrack(new ByteArrayInputStream(track)).getPreviewLink().length());
+			run("track, scanner", print, () -> SpotifyJson.readTrack(new ByteArrayInputStream(track)).getPreviewLink().length());
+			run("genre, lines", print, () -> lineGenre(new ByteArrayInputStream(artist)).length());
+			run("genre, scanner", print, () -> SpotifyJson.readGenres(new ByteArrayInputStream(artist)).size());
+		}
+		System.out.println("checksum " + sink);
+	}
+
+	private interface Parse {
+		int parse() throws IOException;
+	}
+
+	private static void run(String name, boolean print, Parse parse) throws IOException {
+		for (int i = 0; i < WARMUP; i++) {
+			sink += parse.parse();
+		}
+		long bytesBefore = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			sink += parse.parse();
+		}
+		long time = System.nanoTime() - start;
+		long bytes = allocatedBytes() - bytesBefore;
+		if (print) {
+			String alloc = bytesBefore < 0 ? "" : String.format(", %7d bytes/op", bytes / ROUNDS);
+			System.out.println(String.format("%-16s %8.0f ns/op", name, (double) time / ROUNDS) + alloc);
+		}
+	}
+
+	private static long allocatedBytes() {
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+		}
+		return -1;
+	}
+
+	/*
+	 * The parsing SpotifyAPI did before SpotifyJson, kept here to compare against
+	 */
+
+	private static TrackMetadata lineTrack(InputStream body) throws IOException {
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+			String date = "";
+			String coverLink = "";
+			String prevLink = "";
+			String output;
+			int i = 0;
+			while ((output = br.readLine()) != null) {
+				if (output.contains("images")) {
+					output = br.readLine(); output = br.readLine();
+					coverLink = output.substring(19, output.length() - 2);
+				} else if (output.contains("preview_url") && output.length() > 23) {
+					prevLink = output.substring(23, output.length() - 2);
+				} else if (output.contains("release_date") && i <= 0) {
+					int colon = output.indexOf(':');
+					int open = output.indexOf('"', colon + 1);
+					int close = output.indexOf('"', open + 1);
+					date = output.substring(open + 1, close);
+					i++;
+				}
+			}
+			return new TrackMetadata(coverLink, prevLink, date);
+		}
+	}
+
+	private static String lineGenre(InputStream body) throws IOException {
+		String genre = "";
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+			String output;
+			while ((output = br.readLine()) != null) {
+				if (output.contains("genres")) {
+					String[] split = output.split(",");
+					genre = split[0];
+				}
+			}
+		}
+		if (genre.length() < 21) {
+			return "";
+		}
+		return genre.substring(20, genre.length() - 1);
+	}
+}
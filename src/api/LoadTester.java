@@ -0,0 +1,103 @@
+package api;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import api.BulkImporter.ImportSummary;
+import song.Song;
+
+/**
+ * Puts load on the API layer against a SpotifyStubServer, so changes to the scheduler, caches and
+ * downloads can be measured without touching the real Spotify.
+ *
+ * It runs in two parts. First a BulkImporter imports a list of made up songs and the songs per second
+ * are printed. Then the same number of different songs are looked up with getMetadataAsync all at
+ * once, like many searches from the search box, and the 50th, 95th and 99th percentile times a search
+ * took are printed. Everything SpotifyAPI saves goes into a new temporary folder, so the library in
+ * the project folder isn't touched and the caches start empty.
+ *
+ * Arguments, all optional, in order: songs, latency in milliseconds, error rate, searches per second
+ * the stub allows. For example "LoadTester 500 40 0.02 50" imports 500 songs with about 40ms of latency,
+ * 2% of searches failing and the stub throttling over 50 searches a second.
+ */
+public class LoadTester {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int songs = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int latency = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+		double errorRate = args.length > 2 ? Double.parseDouble(args[2]) : 0.01;
+		int rateLimit = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+		// has to be set before SpotifyAPI is loaded, it reads it once
+		Path home = Files.createTempDirectory("musicplayer-load");
+		System.setProperty("musicplayer.dir", home.toString());
+
+		SpotifyStubServer stub = new SpotifyStubServer(0, 32);
+		stub.setLatency(latency);
+		stub.setErrorRate(errorRate);
+		stub.setRateLimit(rateLimit);
+		stub.start();
+		SpotifyAPI.setSearchURL(stub.getBaseURL() + "/v1/search");
+		SpotifyAPI.setTokenURL(stub.getBaseURL() + "/api/token");
+		System.out.println(songs + " songs, " + latency + " ms latency, " + errorRate + " error rate, "
+				+ (rateLimit > 0 ? rateLimit + " searches/s limit" : "no rate limit") + ", saving to " + home);
+
+		try {
+			List<String> list = new ArrayList<String>();
+			for (int i = 0; i < songs; i++) {
+				list.add("Import Artist " + (i % 40) + ", Song " + i);
+			}
+			long start = System.nanoTime();
+			ImportSummary summary = new BulkImporter().importSongs(list, null);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println(String.format("import: %d of %d songs in %.2f s, %.1f songs/s, %d failed", summary.getImported(),
+					summary.getTotal(), seconds, summary.getImported() / seconds, summary.getFailures().size()));
+
+			long[] took = new long[songs];
+			List<CompletableFuture<Song>> searches = new ArrayList<CompletableFuture<Song>>();
+			start = System.nanoTime();
+			for (int i = 0; i < songs; i++) {
+				int n = i;
+				long sent = System.nanoTime();
+				searches.add(SpotifyAPI.getMetadataAsync("Search Artist " + (i % 40), "Song " + i)
+						.whenComplete((song, e) -> took[n] = System.nanoTime() - sent));
+			}
+			int failed = 0;
+			for (CompletableFuture<Song> search : searches) {
+				try {
+					search.join();
+				} catch (RuntimeException e) {
+					failed += 1;
+				}
+			}
+			seconds = (System.nanoTime() - start) / 1e9;
+			Arrays.sort(took);
+			System.out.println(String.format("search: %d at once in %.2f s, %d failed, p50 %.1f ms, p95 %.1f ms, p99 %.1f ms",
+					songs, seconds, failed, percentile(took, 50), percentile(took, 95), percentile(took, 99)));
+
+			RequestScheduler scheduler = SpotifyAPI.getScheduler();
+			System.out.println("scheduler: limit " + scheduler.getLimit() + ", " + scheduler.getRetries() + " retries, "
+					+ scheduler.getThrottled() + " throttled");
+			System.out.println("downloads: " + SpotifyAPI.getDownloads());
+			System.out.println("stub: " + stub);
+		} finally {
+			stub.stop();
+		}
+	}
+
+	/**
+	 * Returns a percentile of sorted times, in milliseconds.
+	 */
+	private static double percentile(long[] sorted, int percent) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1e6;
+	}
+}
@@ -0,0 +1,338 @@
+package api;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A cache of lookups from Spotify's API that lasts between runs of the program.
+ *
+ * There are two tiers. The first is a small LinkedHashMap in access order, so the entries
+ * that were used least recently are dropped once it is full. Behind it is a file that every
+ * entry is appended to as one line of the key, the time it was saved and the value, split by
+ * tabs. The file is read once when the cache is first used, but only to remember where the
+ * newest line for each key starts, so a lookup that misses memory is one positioned read of
+ * that line. Once most of the file is old copies of keys it is rewritten with only the newest
+ * line of each.
+ *
+ * Entries expire after a time to live. A lookup that found nothing can be saved as a
+ * "negative" entry, which is stored as an empty value and has its own, usually shorter,
+ * time to live so it gets asked again sooner.
+ *
+ * Properties:
+ * file:
+ * The path of the file the cache is saved in.
+ *
+ * capacity:
+ * How many entries to keep in memory.
+ *
+ * ttl, negativeTtl:
+ * How long, in milliseconds, entries and negative entries last.
+ *
+ * memory:
+ * The in memory tier, in order from least to most recently used.
+ *
+ * offsets, lengths:
+ * Where the newest line for each key starts in the file and how many bytes it is.
+ *
+ * channel:
+ * The open file, null until the cache is first used.
+ *
+ * lines:
+ * How many lines the file has, counting old copies of keys.
+ */
+public class LookupCache {
+
+	private final Path file;
+	private final int capacity;
+	private final long ttl;
+	private final long negativeTtl;
+	private final LinkedHashMap<String, Entry> memory;
+	private final Map<String, Long> offsets;
+	private final Map<String, Integer> lengths;
+	private FileChannel channel;
+	private int lines;
+
+	/**
+	 * One cached value and when it was saved.
+	 */
+	private static class Entry {
+		private final String value;
+		private final long saved;
+
+		private Entry(String value, long saved) {
+			this.value = value;
+			this.saved = saved;
+		}
+	}
+
+	/**
+	 * Creates a LookupCache. Nothing is read until the first lookup.
+	 * @param fileName Path of the file to save the cache in, its folder is made if needed.
+	 * @param capacity How many entries to keep in memory.
+	 * @param ttl How long an entry lasts.
+	 * @param negativeTtl How long a negative entry lasts.
+	 */
+	public LookupCache(String fileName, int capacity, Duration ttl, Duration negativeTtl) {
+		this.file = Paths.get(fileName);
+		this.capacity = capacity;
+		this.ttl = ttl.toMillis();
+		this.negativeTtl = negativeTtl.toMillis();
+		this.memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > LookupCache.this.capacity;
+			}
+		};
+		this.offsets = new HashMap<String, Long>();
+		this.lengths = new HashMap<String, Integer>();
+		this.channel = null;
+		this.lines = 0;
+	}
+
+	/**
+	 * Makes a key out of the parts of a lookup, ignoring case and extra spaces,
+	 * so "The Strokes" and " the  strokes" are the same lookup.
+	 * @param parts The parts of the lookup, like an artist and a song name.
+	 * @return The key.
+	 */
+	public static String key(String... parts) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < parts.length; i++) {
+			if (i > 0) {
+				sb.append('|');
+			}
+			sb.append(parts[i].strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Looks up a key, first in memory and then in the file.
+	 * @param key The key, from key().
+	 * @return The value, "" if there is a negative entry, or null if there is nothing saved
+	 * for key or what was saved has expired.
+	 */
+	public synchronized String get(String key) {
+		Entry entry = memory.get(key);
+		if (entry == null) {
+			entry = readEntry(key);
+			if (entry == null) {
+				return null;
+			}
+			memory.put(key, entry);
+		}
+		long age = System.currentTimeMillis() - entry.saved;
+		if (age > (entry.value.isEmpty() ? negativeTtl : ttl)) {
+			memory.remove(key);
+			return null;
+		}
+		return entry.value;
+	}
+
+	/**
+	 * Saves a value in memory and appends it to the file.
+	 * @param key The key, from key().
+	 * @param value The value, which can't have line breaks. "" saves a negative entry.
+	 */
+	public synchronized void put(String key, String value) {
+		Entry entry = new Entry(value.replace('\n', ' ').replace('\r', ' '), System.currentTimeMillis());
+		memory.put(key, entry);
+		writeEntry(key, entry);
+	}
+
+	/**
+	 * Saves a negative entry, meaning the lookup was done and found nothing.
+	 * @param key The key, from key().
+	 */
+	public void putMissing(String key) {
+		put(key, "");
+	}
+
+	/**
+	 * Returns how many keys the cache has saved, in memory or in the file.
+	 * @return The number of keys.
+	 */
+	public synchronized int size() {
+		open();
+		return channel == null ? memory.size() : offsets.size();
+	}
+
+	/*
+	 * The file tier
+	 */
+
+	/**
+	 * Opens the file and remembers where each key's newest line is, the first time it's called.
+	 */
+	private void open() {
+		if (channel != null) {
+			return;
+		}
+		try {
+			if (file.getParent() != null) {
+				Files.createDirectories(file.getParent());
+			}
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			index();
+			if (lines > 64 && lines > 2 * offsets.size()) {
+				compact();
+			}
+		} catch (IOException e) {
+			// without the file this is only an in memory cache
+			close();
+		}
+	}
+
+	/**
+	 * Reads the file once, finding the start and length of every line.
+	 */
+	private void index() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		byte[] line = new byte[1024];
+		int lineLength = 0;
+		long lineStart = 0;
+		long position = 0;
+		channel.position(0);
+		while (channel.read(buffer) > 0) {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				byte b = buffer.get();
+				position += 1;
+				if (b == '\n') {
+					addLine(line, lineLength, lineStart, (int) (position - lineStart - 1));
+					lineStart = position;
+					lineLength = 0;
+				} else if (lineLength < line.length) {
+					// only the key at the start of the line is needed
+					line[lineLength++] = b;
+				}
+			}
+			buffer.clear();
+		}
+	}
+
+	private void addLine(byte[] line, int length, long start, int bytes) {
+		int tab = 0;
+		while (tab < length && line[tab] != '\t') {
+			tab++;
+		}
+		if (tab == length) {
+			return;
+		}
+		String key = new String(line, 0, tab, StandardCharsets.UTF_8);
+		offsets.put(key, start);
+		lengths.put(key, bytes);
+		lines += 1;
+	}
+
+	private Entry readEntry(String key) {
+		open();
+		Long offset = offsets.get(key);
+		if (channel == null || offset == null) {
+			return null;
+		}
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(lengths.get(key));
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, offset + buffer.position()) < 0) {
+					return null;
+				}
+			}
+			return parse(new String(buffer.array(), StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Turns one line of the file back into an Entry.
+	 */
+	private static Entry parse(String line) {
+		int first = line.indexOf('\t');
+		int second = line.indexOf('\t', first + 1);
+		if (first < 0 || second < 0) {
+			return null;
+		}
+		try {
+			return new Entry(line.substring(second + 1), Long.parseLong(line.substring(first + 1, second)));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private void writeEntry(String key, Entry entry) {
+		open();
+		if (channel == null) {
+			return;
+		}
+		byte[] line = (key + "\t" + entry.saved + "\t" + entry.value).getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.allocate(line.length + 1);
+		buffer.put(line).put((byte) '\n').flip();
+		try {
+			long start = channel.size();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, start + buffer.position());
+			}
+			offsets.put(key, start);
+			lengths.put(key, line.length);
+			lines += 1;
+		} catch (IOException e) {
+			// the entry is still in memory for this run
+		}
+	}
+
+	/**
+	 * Rewrites the file with only the newest line of each key, dropping expired entries.
+	 */
+	private void compact() throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		Map<String, Long> newOffsets = new HashMap<String, Long>();
+		Map<String, Integer> newLengths = new HashMap<String, Integer>();
+		long now = System.currentTimeMillis();
+		try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (String key : offsets.keySet()) {
+				Entry entry = readEntry(key);
+				if (entry == null || now - entry.saved > (entry.value.isEmpty() ? negativeTtl : ttl)) {
+					continue;
+				}
+				byte[] line = (key + "\t" + entry.saved + "\t" + entry.value + "\n").getBytes(StandardCharsets.UTF_8);
+				newOffsets.put(key, out.position());
+				newLengths.put(key, line.length - 1);
+				out.write(ByteBuffer.wrap(line));
+			}
+		}
+		channel.close();
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		offsets.clear();
+		offsets.putAll(newOffsets);
+		lengths.clear();
+		lengths.putAll(newLengths);
+		lines = offsets.size();
+	}
+
+	private void close() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// nothing left to do with it
+			}
+		}
+		channel = null;
+	}
+}
@@ -0,0 +1,307 @@
+package api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends every request to Spotify's API, keeping under its rate limit and backing off when it says to.
+ *
+ * Requests wait in one of two lanes. INTERACTIVE requests, like a search from the search box, are
+ * always sent before BULK requests from an import, so a search doesn't sit behind a long list.
+ * A request leaves its lane when three things allow it:
+ *
+ * A token bucket, which lets rate requests through a second on average with bursts of up to burst.
+ *
+ * A limit on how many requests can be waiting on the network at once. The limit grows by about one
+ * for every limit requests that come back quickly, and is cut in half when Spotify answers 429 Too
+ * Many Requests or a request takes longer than SLOW (additive increase, multiplicative decrease),
+ * so it settles around what the API can take right now.
+ *
+ * A pause. When a 429 has a Retry-After header, nothing is sent until that many seconds have passed.
+ *
+ * Requests that get a 429, a 5xx or no response at all are sent again, up to ATTEMPTS times, after
+ * waiting either for Retry-After or a random time up to a delay that doubles each try (full jitter).
+ * Any other response is handed back to the caller as it is.
+ *
+ * Properties:
+ * client:
+ * The HttpClient requests are sent with.
+ *
+ * rate, burst, tokens, refilled:
+ * The token bucket: how many tokens are added a second, how many it holds, how many it has
+ * and when tokens were last added.
+ *
+ * limit, maxLimit, inFlight:
+ * How many requests can be on the network at once, the most it can grow to, and how many are.
+ *
+ * pausedUntil:
+ * The System.nanoTime() nothing is sent before, from the last Retry-After.
+ *
+ * interactive, bulk:
+ * The lanes of requests waiting to be sent.
+ *
+ * timer:
+ * Runs retries and wakes the scheduler when the bucket or a pause will let requests through.
+ */
+public class RequestScheduler {
+
+	/**
+	 * Which lane a request waits in.
+	 */
+	public enum Priority {
+		INTERACTIVE, BULK
+	}
+
+	private static final int ATTEMPTS = 5;
+	private static final long BASE_DELAY = TimeUnit.MILLISECONDS.toNanos(500);
+	private static final long MAX_DELAY = TimeUnit.SECONDS.toNanos(30);
+	private static final long SLOW = TimeUnit.SECONDS.toNanos(2);
+
+	/**
+	 * One request and the future its caller is waiting on.
+	 */
+	private static class Pending {
+		private final HttpRequest request;
+		private final Priority priority;
+		private final CompletableFuture<HttpResponse<InputStream>> result;
+		private int attempts;
+
+		private Pending(HttpRequest request, Priority priority) {
+			this.request = request;
+			this.priority = priority;
+			this.result = new CompletableFuture<HttpResponse<InputStream>>();
+			this.attempts = 0;
+		}
+	}
+
+	private final HttpClient client;
+	private final double rate;
+	private final int burst;
+	private double tokens;
+	private long refilled;
+	private double limit;
+	private final int maxLimit;
+	private int inFlight;
+	private long pausedUntil;
+	private boolean wakeScheduled;
+	private final ArrayDeque<Pending> interactive;
+	private final ArrayDeque<Pending> bulk;
+	private final ScheduledExecutorService timer;
+	private final AtomicInteger retries;
+	private final AtomicInteger throttled;
+
+	/**
+	 * Creates a RequestScheduler.
+	 * @param client The HttpClient to send requests with.
+	 * @param rate How many requests can be sent a second on average.
+	 * @param burst How many requests can be sent at once after a quiet stretch.
+	 * @param maxLimit The most requests that can be on the network at once.
+	 */
+	public RequestScheduler(HttpClient client, double rate, int burst, int maxLimit) {
+		this.client = client;
+		this.rate = rate;
+		this.burst = burst;
+		this.tokens = burst;
+		this.refilled = System.nanoTime();
+		this.limit = Math.min(4, maxLimit);
+		this.maxLimit = maxLimit;
+		this.inFlight = 0;
+		this.pausedUntil = refilled;
+		this.wakeScheduled = false;
+		this.interactive = new ArrayDeque<Pending>();
+		this.bulk = new ArrayDeque<Pending>();
+		this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "request-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.retries = new AtomicInteger();
+		this.throttled = new AtomicInteger();
+	}
+
+	/**
+	 * Queues a request to be sent when the rate limit allows it.
+	 * @param request The request.
+	 * @param priority The lane it waits in.
+	 * @return A CompletableFuture of the response, with the body left as a stream. It fails
+	 * only if every try failed without a response.
+	 */
+	public CompletableFuture<HttpResponse<InputStream>> send(HttpRequest request, Priority priority) {
+		Pending pending = new Pending(request, priority);
+		synchronized (this) {
+			lane(priority).addLast(pending);
+		}
+		dispatch();
+		return pending.result;
+	}
+
+	/**
+	 * Returns how many requests can be on the network at once right now.
+	 * @return The concurrency limit.
+	 */
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	/**
+	 * Returns how many requests are waiting to be sent.
+	 * @return The number of requests in both lanes.
+	 */
+	public synchronized int getQueued() {
+		return interactive.size() + bulk.size();
+	}
+
+	/**
+	 * Returns how many times a request has been sent again.
+	 * @return The number of retries.
+	 */
+	public int getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * Returns how many 429 responses have come back.
+	 * @return The number of 429s.
+	 */
+	public int getThrottled() {
+		return throttled.get();
+	}
+
+	private ArrayDeque<Pending> lane(Priority priority) {
+		return priority == Priority.INTERACTIVE ? interactive : bulk;
+	}
+
+	/**
+	 * Sends as many waiting requests as the bucket, the limit and any pause allow, and
+	 * sets a timer to try again if requests are left waiting on the bucket or a pause.
+	 */
+	private void dispatch() {
+		while (true) {
+			Pending next;
+			synchronized (this) {
+				if (inFlight >= (int) limit || (interactive.isEmpty() && bulk.isEmpty())) {
+					return;
+				}
+				long now = System.nanoTime();
+				tokens = Math.min(burst, tokens + (now - refilled) * rate / 1e9);
+				refilled = now;
+				long wait = 0;
+				if (now - pausedUntil < 0) {
+					wait = pausedUntil - now;
+				} else if (tokens < 1) {
+					wait = (long) ((1 - tokens) / rate * 1e9);
+				}
+				if (wait > 0) {
+					if (!wakeScheduled) {
+						wakeScheduled = true;
+						timer.schedule(this::wake, wait, TimeUnit.NANOSECONDS);
+					}
+					return;
+				}
+				tokens -= 1;
+				inFlight += 1;
+				next = interactive.isEmpty() ? bulk.pollFirst() : interactive.pollFirst();
+			}
+			send(next);
+		}
+	}
+
+	private void wake() {
+		synchronized (this) {
+			wakeScheduled = false;
+		}
+		dispatch();
+	}
+
+	private void send(Pending pending) {
+		pending.attempts += 1;
+		long start = System.nanoTime();
+		client.sendAsync(pending.request, HttpResponse.BodyHandlers.ofInputStream())
+				.whenComplete((response, e) -> finished(pending, response, e, System.nanoTime() - start));
+	}
+
+	/**
+	 * Adjusts the limit from how a request went, then hands the response back or retries it.
+	 */
+	private void finished(Pending pending, HttpResponse<InputStream> response, Throwable e, long took) {
+		int status = response == null ? 0 : response.statusCode();
+		long retryAfter = status == 429 ? retryAfter(response) : -1;
+		synchronized (this) {
+			inFlight -= 1;
+			if (status == 429 || took > SLOW) {
+				limit = Math.max(1, limit / 2);
+			} else if (e == null) {
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+			if (retryAfter > 0) {
+				pausedUntil = Math.max(pausedUntil, System.nanoTime() + retryAfter);
+			}
+		}
+		if (status == 429) {
+			throttled.incrementAndGet();
+		}
+		boolean retry = (e != null || status == 429 || status >= 500) && pending.attempts < ATTEMPTS;
+		if (!retry) {
+			if (e != null) {
+				pending.result.completeExceptionally(e);
+			} else {
+				pending.result.complete(response);
+			}
+		} else {
+			if (response != null) {
+				close(response);
+			}
+			retries.incrementAndGet();
+			long delay = retryAfter > 0 ? retryAfter : backoff(pending.attempts);
+			timer.schedule(() -> {
+				synchronized (this) {
+					// it was already waited on, so it goes to the front of its lane
+					lane(pending.priority).addFirst(pending);
+				}
+				dispatch();
+			}, delay, TimeUnit.NANOSECONDS);
+		}
+		dispatch();
+	}
+
+	/**
+	 * Returns a random wait up to a limit that doubles with every try, which keeps many
+	 * failed requests from all coming back at the same moment.
+	 */
+	private static long backoff(int attempts) {
+		long cap = Math.min(MAX_DELAY, BASE_DELAY << Math.min(attempts - 1, 16));
+		return ThreadLocalRandom.current().nextLong(cap + 1);
+	}
+
+	/**
+	 * Reads a Retry-After header given in seconds, with a little jitter added.
+	 * @return The wait in nanoseconds, -1 if there isn't a header.
+	 */
+	private static long retryAfter(HttpResponse<InputStream> response) {
+		String header = response.headers().firstValue("Retry-After").orElse("");
+		try {
+			long seconds = Long.parseLong(header.strip());
+			return TimeUnit.SECONDS.toNanos(seconds) + ThreadLocalRandom.current().nextLong(TimeUnit.MILLISECONDS.toNanos(250));
+		} catch (NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	private static void close(HttpResponse<InputStream> response) {
+		try {
+			response.body().close();
+		} catch (IOException e) {
+			// the body is being thrown away anyway
+		}
+	}
+}
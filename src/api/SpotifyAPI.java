@@ -1,22 +1,28 @@
 package api;
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
+import api.RequestScheduler.Priority;
 import javafx.application.Platform;
 import song.Song;
+import utilities.AssetStore;
+import utilities.Thumbnails;
 import utilities.SpotifyAPIInvalidDownloadException;
 import utilities.SpotifyAPIInvalidStreamException;
 import utilities.SpotifyAPIInvalidURLException;
@@ -65,14 +71,75 @@ public class SpotifyAPI {
 	 * String representing the token type which is always Bearer
 	 */
 	private static final String tokType = "Bearer"; 
-	/**
-	 * String constant for the token, which will be updated after we receive our token.
-	 */
-	private static String token = "";
 	/**
 	 * String constant for the state, required for API calls, used for nothing in program. 
 	 */
 	private static String state = "7WwsUkOgugujRct7"; // not sure if I need it but saving it anyway
+	/**
+	 * The folder data.txt, Audios, src/images and cache are in. This is the folder the program runs in 
+	 * unless the musicplayer.dir system property says otherwise, which keeps load tests out of the real library.
+	 */
+	private static final String home = System.getProperty("musicplayer.dir", ".");
+	/**
+	 * The search endpoint, which can be pointed at a stub server with the spotify.search.url system property or setSearchURL.
+	 */
+	private static volatile String searchURL = System.getProperty("spotify.search.url", "https://api.spotify.com/v1/search");
+	/**
+	 * How long to wait on a single request before giving up on it.
+	 */
+	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(20);
+	/**
+	 * The one HttpClient every call to the API goes through. Sharing it keeps connections to Spotify 
+	 * open between requests, so we only pay for the TLS handshake once, and lets requests share 
+	 * an HTTP/2 connection.
+	 */
+	private static final HttpClient client = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_2)
+			.connectTimeout(Duration.ofSeconds(10))
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.build();
+	/**
+	 * Every search goes through the scheduler, which keeps us under Spotify's rate limit and backs off when told to.
+	 */
+	private static final RequestScheduler scheduler = new RequestScheduler(client, 10, 20, 16);
+	/**
+	 * Gets the token for our client, and gets a new one before the old one expires.
+	 */
+	private static final TokenManager tokens = new TokenManager(client, 
+			System.getProperty("spotify.token.url", "https://accounts.spotify.com/api/token"), clientID, clientSecret);
+	/**
+	 * Downloads the audio previews and artwork on a few threads of its own, however many songs are being added at once.
+	 */
+	private static final DownloadManager downloads = new DownloadManager(client, 6);
+	/**
+	 * Track searches that have already been done, keyed by artist and song name. A lookup lasts 30 days,
+	 * and a lookup that found no preview is asked again after a day.
+	 */
+	private static final LookupCache trackCache = new LookupCache(inHome("cache/metadata.txt"), 512, Duration.ofDays(30), Duration.ofDays(1));
+	/**
+	 * The genre of each artist that has been looked up, keyed by artist name. Artists with no genres 
+	 * are asked again after a day.
+	 */
+	private static final LookupCache genreCache = new LookupCache(inHome("cache/genres.txt"), 256, Duration.ofDays(30), Duration.ofDays(1));
+	/**
+	 * Artist searches that are on their way, so that lookups for the same artist at the same time share one request.
+	 */
+	private static final ConcurrentHashMap<String, CompletableFuture<String>> genreLookups = new ConcurrentHashMap<String, CompletableFuture<String>>();
+	/**
+	 * Where previews and artwork are saved, each file named by the hash of what is in it so the same
+	 * file is only stored once.
+	 */
+	private static final AssetStore audioStore = new AssetStore(inHome("Audios"), ".wav");
+	private static final AssetStore artStore = new AssetStore(inHome("src/images"), ".jpg");
+	/**
+	 * The stored file each preview and artwork link was saved as, so a link that was downloaded before,
+	 * like the cover every track on an album shares, isn't downloaded again.
+	 */
+	private static final LookupCache assetCache = new LookupCache(inHome("cache/assets.txt"), 1024, Duration.ofDays(30), Duration.ofDays(1));
+	/**
+	 * Downloads that are on their way, keyed by link, so songs downloading the same file at the same time share one download.
+	 */
+	private static final ConcurrentHashMap<String, CompletableFuture<String>> assetDownloads = new ConcurrentHashMap<String, CompletableFuture<String>>();
 	
 
 	
@@ -99,68 +166,188 @@ public class SpotifyAPI {
 	 */
 
 	public static Song getMetadata(String artist, String songName) throws SpotifyAPIInvalidURLException, SpotifyAPIInvalidStreamException, SpotifyAPIInvalidDownloadException  {
-		String link = formTrackURL(artist, songName);
 		try {
-			URL url = new URL(link);
-			HttpURLConnection con = (HttpURLConnection) url.openConnection();
-			con.setRequestMethod("GET");
-			con.setDoInput(true);
-			con.setDoOutput(true);
-			con.setRequestProperty("Accept", "application/json");
-			con.setRequestProperty("Content-Type", "application/json");
-			con.setRequestProperty("Authorization", "Bearer " + token);
-			BufferedReader br = new BufferedReader(new InputStreamReader(
-					(con.getInputStream())));
-			String date = "";
-			String coverLink = ""; 
-			String prevLink = ""; 
-			String output;
-			int i = 0; 
-			while ((output = br.readLine()) != null) {
-				if (output.contains("images")) {
-					output = br.readLine(); output = br.readLine(); // doing twice to get artwork image link. 
-					coverLink = output.substring(19, output.length() -2);
-				} else if (output.contains("preview_url") && output.length() > 23) {
-					prevLink = output.substring(23, output.length() -2);
-				} else if (output.contains("release_date") && i <= 0) {
-					date = output.substring(26, 36);
-					i++;
-				}
-			}
-			if (prevLink.equals("") || coverLink.equals("")) {
-				throw new SpotifyAPIInvalidDownloadException("No preview link found. Try a different track.");
+			return getMetadataAsync(artist, songName).join();
+		} catch (CompletionException e) {
+			throw rethrow(e);
+		}
+	}
+	
+	/**
+	 * Does the same thing as getMetadata, but returns right away instead of waiting on the network.
+	 * 
+	 * The requests go through the shared HttpClient, and every step after a response comes back
+	 * runs on the client's threads, so this is safe to call from the JavaFX thread. If anything 
+	 * goes wrong the future completes exceptionally with a CompletionException whose cause is one
+	 * of the same exceptions getMetadata throws.
+	 * @param artist Artist name we are searching for.
+	 * @param songName Song name we are searching for.
+	 * @return A CompletableFuture of the Song that was added to the library.
+	 */
+	public static CompletableFuture<Song> getMetadataAsync(String artist, String songName) {
+		return lookupTrackAsync(artist, songName, Priority.INTERACTIVE)
+				.thenCompose(track -> {
+					// the downloads and the genre lookup don't depend on each other
+					CompletableFuture<String> audio = downloadAudio(track.getPreviewLink());
+					CompletableFuture<String> art = downloadArt(track.getCoverLink());
+					CompletableFuture<String> genre = getGenreAsync(artist, Priority.INTERACTIVE);
+					return CompletableFuture.allOf(audio, art, genre).thenApply(done -> {
+						Song retval = new Song(songName, artist, genre.join(), art.join(), track.getReleaseDate(), audio.join()); 
+						// add method to write to data.txt
+						updateData(retval);
+						return retval;
+					});
+				});
+	}
+	
+	/**
+	 * Finds the TrackMetadata for a song, from trackCache if it has been looked up before,
+	 * otherwise by searching Spotify and saving what comes back in trackCache. A search that 
+	 * finds no preview is saved too, so asking again for the same song fails without a request.
+	 * @param artist Artist name we are searching for.
+	 * @param songName Song name we are searching for.
+	 * @param priority Which of the RequestScheduler's lanes the search waits in.
+	 * @return A CompletableFuture of the TrackMetadata, which fails with a SpotifyAPIInvalidDownloadException
+	 * if the track has no preview or artwork.
+	 */
+	static CompletableFuture<TrackMetadata> lookupTrackAsync(String artist, String songName, Priority priority) {
+		String key = LookupCache.key(artist, songName);
+		String cached = trackCache.get(key);
+		if (cached != null) {
+			TrackMetadata track = TrackMetadata.fromRecord(cached);
+			if (track != null && track.isPlayable()) {
+				return CompletableFuture.completedFuture(track);
+			} else if (cached.isEmpty()) {
+				return CompletableFuture.failedFuture(noPreview());
 			}
-			String audioPath = downloadAudio(prevLink, artist, songName);
-			String artPath = downloadArt(coverLink, artist, songName);
-			String genre = getGenre(artist);
-			Song retval = new Song(songName, artist, genre, artPath, date, audioPath); 
-			// add method to write to data.txt
-			updateData(retval);
-			con.disconnect();
-			return retval; 
-		} catch (MalformedURLException e) {
-			throw new SpotifyAPIInvalidURLException("Invalid call to Spotify's API. Ensure the link is a valid SpotifyAPI URL");
+		}
+		return getTokenAsync()
+				.thenCompose(tok -> sendAsync(apiRequest(formTrackURL(artist, songName), tok), priority))
+				.thenApply(response -> {
+					TrackMetadata track = parseTrack(response.body());
+					if (!track.isPlayable()) {
+						trackCache.putMissing(key);
+						throw new CompletionException(noPreview());
+					}
+					trackCache.put(key, track.toRecord());
+					return track;
+				});
+	}
+	
+	/**
+	 * Returns the exception for a track that can't be downloaded.
+	 * @return A SpotifyAPIInvalidDownloadException.
+	 */
+	private static SpotifyAPIInvalidDownloadException noPreview() {
+		return new SpotifyAPIInvalidDownloadException("No preview link found. Try a different track.");
+	}
+	
+	/**
+	 * Reads the JSON from a track search and pulls out the artwork link, preview link and release date.
+	 * The body is closed as soon as those are found, so the rest of the response is never downloaded.
+	 * @param body The body of the search response.
+	 * @return The TrackMetadata of the first track in the results, which may not be playable.
+	 * @throws CompletionException Wrapping a SpotifyAPIInvalidStreamException if the body can't be read. 
+	 */
+	private static TrackMetadata parseTrack(InputStream body) {
+		try (body) {
+			return SpotifyJson.readTrack(body);
 		} catch (IOException e) {
-			throw new SpotifyAPIInvalidStreamException();
+			throw new CompletionException(new SpotifyAPIInvalidStreamException());
+		}
+	}
+	
+	/**
+	 * Builds an authorized GET request to Spotify's API.
+	 * @param link The API URL to request.
+	 * @param tok The access token to send.
+	 * @return The HttpRequest.
+	 * @throws CompletionException Wrapping a SpotifyAPIInvalidURLException if link isn't a valid URL. 
+	 */
+	private static HttpRequest apiRequest(String link, String tok) {
+		try {
+			return HttpRequest.newBuilder(URI.create(link))
+					.timeout(REQUEST_TIMEOUT)
+					.header("Accept", "application/json")
+					.header("Authorization", tokType + " " + tok)
+					.GET()
+					.build();
+		} catch (IllegalArgumentException e) {
+			throw new CompletionException(new SpotifyAPIInvalidURLException("Invalid call to Spotify's API. Ensure the link is a valid SpotifyAPI URL"));
 		}
 	}
 	
+	/**
+	 * Sends a request through the RequestScheduler without blocking. The scheduler already retries
+	 * 429s and server errors, so any response other than 200 that gets back here fails the future.
+	 * @param request The request to send.
+	 * @param priority Which of the scheduler's lanes the request waits in.
+	 * @return A CompletableFuture of the response, with the body left as a stream.
+	 */
+	private static CompletableFuture<HttpResponse<InputStream>> sendAsync(HttpRequest request, Priority priority) {
+		return scheduler.send(request, priority)
+				.thenApply(response -> {
+					if (response.statusCode() == 401) {
+						// the token was turned down, the next request will get a new one
+						request.headers().firstValue("Authorization")
+								.ifPresent(auth -> tokens.invalidate(auth.substring(tokType.length() + 1)));
+					}
+					if (response.statusCode() != 200) {
+						try {
+							response.body().close();
+						} catch (IOException e) {
+							// the body is being thrown away anyway
+						}
+						throw new CompletionException(new SpotifyAPIInvalidStreamException());
+					}
+					return response;
+				});
+	}
+	
+	/**
+	 * Turns a CompletionException from one of the async methods back into the checked exception
+	 * that the blocking methods are declared to throw.
+	 * @param e The CompletionException.
+	 * @return Never returns, this is only so callers can write "throw rethrow(e)".
+	 * @throws SpotifyAPIInvalidURLException If that was the cause.
+	 * @throws SpotifyAPIInvalidStreamException If that was the cause, or the cause was anything unexpected.
+	 * @throws SpotifyAPIInvalidDownloadException If that was the cause.
+	 */
+	private static RuntimeException rethrow(CompletionException e) throws SpotifyAPIInvalidURLException, SpotifyAPIInvalidStreamException, SpotifyAPIInvalidDownloadException {
+		Throwable cause = e.getCause();
+		if (cause instanceof SpotifyAPIInvalidURLException) {
+			throw (SpotifyAPIInvalidURLException) cause;
+		} else if (cause instanceof SpotifyAPIInvalidStreamException) {
+			throw (SpotifyAPIInvalidStreamException) cause;
+		} else if (cause instanceof SpotifyAPIInvalidDownloadException) {
+			throw (SpotifyAPIInvalidDownloadException) cause;
+		}
+		throw new SpotifyAPIInvalidStreamException();
+	}
+	
 	/**
 	 * This method appends to data.txt with new Songs that are added to the library.
 	 * @param retval Song object to add info about to data.txt. 
 	 */
 	private static void updateData(Song retval) {
-		try {
-			FileWriter fw = new FileWriter("data.txt", true);
-			BufferedWriter bw = new BufferedWriter(fw);
-			bw.write(retval.getName() + ", " + 
-			retval.getArtist() + ", " + 
-			retval.getGenre() + ", " +
-			retval.getArtPath() + ", " +
-			retval.getSongDate() + "," + 
-			retval.getAudioPath());
-			bw.newLine();
-			bw.close();
+		updateData(List.of(retval));
+	}
+	
+	/**
+	 * Appends a batch of Songs to data.txt, opening the file once for all of them.
+	 * @param songs The Songs to add to data.txt.
+	 */
+	static void updateData(List<Song> songs) {
+		try (BufferedWriter bw = new BufferedWriter(new FileWriter(inHome("data.txt"), true))) {
+			for (Song retval : songs) {
+				bw.write(retval.getName() + ", " + 
+				retval.getArtist() + ", " + 
+				retval.getGenre() + ", " +
+				retval.getArtPath() + ", " +
+				retval.getSongDate() + "," + 
+				retval.getAudioPath());
+				bw.newLine();
+			}
 		} catch (IOException e) {
 			System.out.println("oh no"); // might change but this should never happen
 		}
@@ -168,119 +355,183 @@ public class SpotifyAPI {
 
 	/**
 	 * Returns the path of the location of the .wav file that is downloaded by this method.
+	 * The file is stored in Audios under the hash of its contents, so a preview that is
+	 * already saved is shared instead of saved again.
 	 * @param prevLink 30 Second preview link given from Spotify API
-	 * @param artist Artists name
-	 * @param name Name of the song
-	 * @return String path to place into the Song object representing where the audio is for the Song.
-	 * @throws SpotifyAPIInvalidURLException Thrown if URL is incorrect according to Spotify's API. 
+	 * @return A CompletableFuture of the String path to place into the Song object representing where the audio 
+	 * is for the Song, which completes once the file is saved.
+	 * It fails with a SpotifyAPIInvalidURLException if the URL is incorrect according to Spotify's API, 
+	 * or a SpotifyAPIInvalidDownloadException if the download doesn't finish.
 	 */
-	private static String downloadAudio(String prevLink, String artist, String name) throws SpotifyAPIInvalidURLException {
-		try {
-			URL url = new URL(prevLink);
-			fetchContent(url, "Audios/"+ artist + "_" + name +  ".wav"); // likely will get rid of artist maybe? 
-		} catch (MalformedURLException e) {
-			try {
-				URL url = new URL(prevLink);
-				fetchContent(url, "Audios/"+ artist + "_" + name +  ".mp3");
-			} catch (MalformedURLException e2) { 
-				throw new SpotifyAPIInvalidURLException("Invalid path. Ensure the path is correct for saving the audio.");
-			}
-			
-		} 
-		return "Audios/"+ artist + "_" + name +  ".wav";
+	static CompletableFuture<String> downloadAudio(String prevLink) {
+		return fetchContent(prevLink, audioStore, "Invalid path. Ensure the path is correct for saving the audio.");
 	}
 
 
 	/**
 	 * Returns the path of the location of the .jpg file that is downloaded by this method.
+	 * The file is stored in src/images under the hash of its contents, so every track from 
+	 * an album shares one copy of the cover, and the smaller copies in Thumbnails.SIZES are made next to it.
 	 * @param coverLink Album artwork link given from Spotify API
-	 * @param artist Artists name
-	 * @param name Name of the song
-	 * @return String path to place into the Song object representing where the audio is for the Song.
-	 * @throws SpotifyAPIInvalidURLException Thrown if URL is incorrect according to Spotify's API. 
+	 * @return A CompletableFuture of the String path to place into the Song object representing where the art 
+	 * is for the Song, which completes once the file is saved.
+	 * It fails with a SpotifyAPIInvalidURLException if the URL is incorrect according to Spotify's API, 
+	 * or a SpotifyAPIInvalidDownloadException if the download doesn't finish.
+	 */
+	static CompletableFuture<String> downloadArt(String coverLink) {
+		return fetchContent(coverLink, artStore, "Invalid path. Ensure the path is correct for saving the art.")
+				.thenApply(path -> {
+					// smaller copies for the view, skipped if the cover already has them
+					Thumbnails.generate(path);
+					return path;
+				});
+	}
+	
+	
+	/**
+	 * This method handles actually downloading the content either from an artwork link or preview link,
+	 * by handing it to the DownloadManager. A link that has been saved before and is still on disk isn't
+	 * downloaded again, and the same link asked for twice at once is only downloaded once.
+	 * @param link The link we receive from Spotify API either for the artwork or 30 second audio preview.
+	 * @param store The AssetStore to save the file in. 
+	 * @param invalid The message for the exception if link isn't a valid URL.
+	 * @return A CompletableFuture of the stored file's path, which completes once the file is saved.
 	 */
-	private static String downloadArt(String coverLink, String artist, String name) throws SpotifyAPIInvalidURLException {
+	private static CompletableFuture<String> fetchContent(String link, AssetStore store, String invalid) {
+		URI uri;
 		try {
-			URL url = new URL(coverLink);
-			fetchContent(url, "src/images/"+ artist + "_" + name +  ".jpg");
-		} catch (MalformedURLException e) {
-			throw new SpotifyAPIInvalidURLException("Invalid path. Ensure the path is correct for saving the art.");
+			uri = URI.create(link);
+		} catch (IllegalArgumentException e) {
+			return CompletableFuture.failedFuture(new SpotifyAPIInvalidURLException(invalid));
+		}
+		if (!"https".equals(uri.getScheme()) && !"http".equals(uri.getScheme())) {
+			return CompletableFuture.failedFuture(new SpotifyAPIInvalidURLException(invalid));
 		}
-		return "src/images/"+ artist + "_" + name +  ".jpg"; 
+		String saved = assetCache.get(link);
+		if (saved != null && !saved.isEmpty() && Files.exists(Paths.get(saved))) {
+			return CompletableFuture.completedFuture(saved);
+		}
+		CompletableFuture<String> download = new CompletableFuture<String>();
+		CompletableFuture<String> running = assetDownloads.putIfAbsent(link, download);
+		if (running != null) {
+			return running;
+		}
+		downloads.download(uri, store).thenApply(Path::toString).whenComplete((path, e) -> {
+			if (e == null) {
+				assetCache.put(link, path);
+			}
+			assetDownloads.remove(link, download);
+			if (e != null) {
+				download.completeExceptionally(e);
+			} else {
+				download.complete(path);
+			}
+		});
+		return download;
 	}
 	
-	
 	/**
-	 * This method handles actually downloading the content either from an artwork link or preview link.
-	 * @param url The URL we receive from Spotify API either for the artwork or 30 second audio preview.
-	 * @param outputFileName The path to store the file in the project. 
-	 */
-	private static void fetchContent(URL url, String outputFileName) {
-		Runnable download = new Runnable() {
-			@Override
-			public void run() {
-				try (InputStream in = url.openStream();
-			            ReadableByteChannel rbc = Channels.newChannel(in);
-			            FileOutputStream fos = new FileOutputStream(outputFileName)) {
-			            fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
-			        } catch (IOException e) {
-						// need to figure this out
-					}
-				}	
-			};
-		Thread thread = new Thread(download);
-		thread.start();
-		
+	 * Returns the DownloadManager the audio and artwork are downloaded with, for checking its throughput.
+	 * @return The DownloadManager.
+	 */
+	static DownloadManager getDownloads() {
+		return downloads;
 	}
 
 	/**
-	 * Returns a String representing the genre from the given artist which we send to get a URL to search
-	 * just the artist, which is a slightly different call to the API than getMetadata but very similar. 
+	 * Returns the RequestScheduler searches are sent through, for checking how it is throttling.
+	 * @return The RequestScheduler.
+	 */
+	static RequestScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Returns the genre of an artist without blocking.
+	 * 
+	 * Every song by an artist has the same genre, so the answer is saved in genreCache and only
+	 * asked for again once it expires. If a lookup for the artist is already on its way, the
+	 * caller gets that lookup's future instead of starting another, so importing a whole album
+	 * at once still sends one artist search.
 	 * @param artist Name of an artist
-	 * @return returns the String representing the genre of the artist
-	 * @throws SpotifyAPIInvalidURLException Thrown if the URL is invalid according to the API.
-	 * @throws SpotifyAPIInvalidStreamException Thrown if the metadata isn't readable. 
+	 * @param priority Which of the RequestScheduler's lanes the search waits in.
+	 * @return A CompletableFuture of the genre of the artist.
 	 */
-	private static String getGenre(String artist) throws SpotifyAPIInvalidURLException, SpotifyAPIInvalidStreamException {
-		String url = formArtistURL(artist);
-		return parseGenre(url);
+	static CompletableFuture<String> getGenreAsync(String artist, Priority priority) {
+		String key = LookupCache.key(artist);
+		String cached = genreCache.get(key);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		CompletableFuture<String> lookup = new CompletableFuture<String>();
+		CompletableFuture<String> inFlight = genreLookups.putIfAbsent(key, lookup);
+		if (inFlight != null) {
+			return inFlight;
+		}
+		// another lookup may have finished between checking the cache and claiming the key
+		cached = genreCache.get(key);
+		if (cached != null) {
+			genreLookups.remove(key, lookup);
+			lookup.complete(cached);
+			return lookup;
+		}
+		getTokenAsync()
+				.thenCompose(tok -> sendAsync(apiRequest(formArtistURL(artist), tok), priority))
+				.thenApply(response -> parseGenre(response.body()))
+				.whenComplete((genre, e) -> {
+					if (e == null) {
+						// an artist with no genres is saved as a negative entry
+						genreCache.put(key, genre);
+					}
+					genreLookups.remove(key, lookup);
+					if (e == null) {
+						lookup.complete(genre);
+					} else {
+						lookup.completeExceptionally(e);
+					}
+				});
+		return lookup;
 	}
 
 	/**
-	 * This method works very similarly to getMetadata but this query specifically queries an Artist and then only grabs
-	 * the genre that artist is apart of and returns that String. 
-	 * @param link
+	 * This method works very similarly to parseTrack but reads the result of an Artist search and only grabs
+	 * the first genre listed for that artist and returns that String. 
+	 * @param body The body of the artist search response.
 	 * @return String representing the genre of the artist. 
-	 * @throws SpotifyAPIInvalidURLException Thrown if the URL is invalid according to the API.
-	 * @throws SpotifyAPIInvalidStreamException Thrown if the metadata isn't readable. 
+	 * @throws CompletionException Wrapping a SpotifyAPIInvalidStreamException if the metadata isn't readable. 
 	 */
-	private static String parseGenre(String link) throws SpotifyAPIInvalidURLException, SpotifyAPIInvalidStreamException {
-		String genre = ""; 
-		try {
-			URL url = new URL(link);
-			HttpURLConnection con = (HttpURLConnection) url.openConnection();
-			con.setRequestMethod("GET");
-			con.setDoInput(true);
-			con.setDoOutput(true);
-			con.setRequestProperty("Accept", "application/json");
-			con.setRequestProperty("Content-Type", "application/json");
-			con.setRequestProperty("Authorization", "Bearer " + token);
-			BufferedReader br = new BufferedReader(new InputStreamReader(
-					(con.getInputStream())));
-			String output;
-			while ((output = br.readLine()) != null) {
-				if (output.contains("genres")) {
-					String[] split = output.split(",");
-					genre = split[0];
-				}
-			}
-		} catch (MalformedURLException e) {
-			throw new SpotifyAPIInvalidURLException("Invalid call to Spotify's API. Ensure the link is a valid SpotifyAPI URL");
+	private static String parseGenre(InputStream body) {
+		try (body) {
+			List<String> genres = SpotifyJson.readGenres(body);
+			return genres.isEmpty() ? "" : genres.get(0);
 		} catch (IOException e) {
-			throw new SpotifyAPIInvalidStreamException();
+			throw new CompletionException(new SpotifyAPIInvalidStreamException());
 		}
-		genre = genre.substring(20, genre.length() - 1);
-		return genre;
+	}
+	
+	/**
+	 * Points searches at a different server, like SpotifyStubServer.
+	 * @param url The search endpoint, for example "http://localhost:8888/v1/search".
+	 */
+	public static void setSearchURL(String url) {
+		searchURL = url;
+	}
+	
+	/**
+	 * Points token requests at a different server, like SpotifyStubServer. The current token is forgotten.
+	 * @param url The token endpoint, for example "http://localhost:8888/api/token".
+	 */
+	public static void setTokenURL(String url) {
+		tokens.setEndpoint(url);
+	}
+	
+	/**
+	 * Returns where a file of the library goes, inside the musicplayer.dir folder if it was set.
+	 * @param path The path of the file relative to the program's folder, like "data.txt".
+	 * @return The path to use.
+	 */
+	static String inHome(String path) {
+		return home.equals(".") ? path : Paths.get(home, path).toString();
 	}
 	
 	/**
@@ -290,15 +541,8 @@ public class SpotifyAPI {
 	 * @return String representing valid URL to query Spotify's API.
 	 */
 	private static String formArtistURL(String artist) {
-		String uriAuth = "https://api.spotify.com/v1/search?q="; 
-		String[] splitArtist = artist.split(" ");
-		for (int i = 0; i < splitArtist.length; i++) {
-			if (i == splitArtist.length - 1) {
-				uriAuth = uriAuth + splitArtist[i];
-			} else {
-				uriAuth = uriAuth + splitArtist[i] + "%20";
-			}
-		}
+		String uriAuth = searchURL + "?q="; 
+		uriAuth = uriAuth + encode(artist);
 		uriAuth = uriAuth + "&type=artist&market=US&limit=1"; 
 		
 		return uriAuth;
@@ -309,25 +553,24 @@ public class SpotifyAPI {
 	 * songName params. Returns the formatted URL as a String at the end. 
 	 * @param artist Name of the artist.
 	 * @param songName Name of the song.
-	 * @return
+	 * @return String representing valid URL to query Spotify's API.
 	 */
 	private static String formTrackURL(String artist, String songName) {
-		String uriAuth = "https://api.spotify.com/v1/search?q="; 
-		String[] splitName = songName.split(" ");
-		String[] splitArtist = artist.split(" ");
-		for (int i = 0; i < splitName.length; i++) {
-			uriAuth = uriAuth + splitName[i] + "%20";
-		}
-		for (int i = 0; i < splitArtist.length; i++) {
-			if (i == splitArtist.length - 1) {
-				uriAuth = uriAuth + splitArtist[i];
-			} else {
-				uriAuth = uriAuth + splitArtist[i] + "%20";
-			}
-		}
+		String uriAuth = searchURL + "?q="; 
+		uriAuth = uriAuth + encode(songName) + "%20" + encode(artist);
 		uriAuth = uriAuth + "&type=track&market=US&limit=1"; 
 		return uriAuth;
 	}
+	
+	/**
+	 * Percent-encodes search words for a URL, so names with accents, ampersands or quotes
+	 * still make a valid URI.
+	 * @param words The words to search for.
+	 * @return The words encoded for a URL query, with spaces as %20.
+	 */
+	private static String encode(String words) {
+		return URLEncoder.encode(words.strip(), StandardCharsets.UTF_8).replace("+", "%20");
+	}
 
 	/**
 	 * This method handles the first part of the authentication process for being able to query
@@ -344,19 +587,23 @@ public class SpotifyAPI {
 				+ "scope=user-read-private%20user-read-email&"
 				+ "state=7WwsUkOgugujRct7"; // might need to save this into var. 
 		try {
-			URL url = new URL(uriAuth);
-			HttpURLConnection con = (HttpURLConnection) url.openConnection();
-			con.setRequestMethod("GET");
-			if (con.getResponseCode() != 200) {
-				throw new RuntimeException("Failed: " + con.getResponseCode());
+			HttpRequest request = HttpRequest.newBuilder(URI.create(uriAuth))
+					.timeout(REQUEST_TIMEOUT)
+					.GET()
+					.build();
+			HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+			if (response.statusCode() != 200) {
+				throw new RuntimeException("Failed: " + response.statusCode());
 			}
-			System.out.println(con.getResponseCode());
-			con.disconnect();
-		} catch (MalformedURLException e) {
+			System.out.println(response.statusCode());
+		} catch (IllegalArgumentException e) {
 			throw new SpotifyAPIInvalidURLException("Invalid call to Spotify's API. Ensure the link is a valid SpotifyAPI URL");
 		} catch (IOException e) {
 			throw new SpotifyAPIInvalidStreamException();
-		}	
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SpotifyAPIInvalidStreamException();
+		}
 	}
 	
 
@@ -369,36 +616,33 @@ public class SpotifyAPI {
 	 * @throws SpotifyAPIInvalidStreamException, when has issues
 	 */
 	public static void getToken() throws SpotifyAPIInvalidURLException, SpotifyAPIInvalidStreamException {
-		if (token != "") {
-			return; 
-		}
-		String uriAuth = "https://accounts.spotify.com/api/token";
 		try {
-			URL url = new URL(uriAuth);
-			HttpURLConnection con = (HttpURLConnection) url.openConnection();
-			con.setRequestMethod("POST");
-			con.setDoOutput(true); 
-			con.setDoInput(true);
-			//con.setRequestProperty("Authorization", "Basic " + clientID + ":" + clientSecret);
-			con.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-			String info = "grant_type=client_credentials&client_id="
-					+ clientID + "&client_secret="
-					+ clientSecret +"";
-			byte[] out = info.getBytes(StandardCharsets.UTF_8);
-			OutputStream stream = con.getOutputStream();
-			stream.write(out);
-			InputStream temp = con.getInputStream();
-			token = new String(temp.readAllBytes());
-			String[] tmp = token.split(",");
-			String tok = tmp[0].split(":")[1].substring(1);
-			tok = tok.substring(0, tok.length() - 1);
-			token = tok; 
-		} catch (MalformedURLException e) {
-			throw new SpotifyAPIInvalidURLException("Invalid call to Spotify's API. Ensure the link is a valid SpotifyAPI URL");
-		} catch (IOException e) {
-			throw new SpotifyAPIInvalidStreamException();
+			getTokenAsync().join();
+		} catch (CompletionException e) {
+			try {
+				throw rethrow(e);
+			} catch (SpotifyAPIInvalidDownloadException e2) {
+				throw new SpotifyAPIInvalidStreamException();
+			}
 		}
 	}
 	
+	/**
+	 * Does the same thing as getToken without blocking. The TokenManager refreshes the token before it 
+	 * expires, so this is almost always already complete.
+	 * @return A CompletableFuture of the token.
+	 */
+	private static CompletableFuture<String> getTokenAsync() {
+		return tokens.getTokenAsync();
+	}
+	
+	/**
+	 * Returns the TokenManager, so SpotifyBuilder uses the same token.
+	 * @return The TokenManager.
+	 */
+	static TokenManager getTokens() {
+		return tokens;
+	}
+	
 	
 }
@@ -11,6 +11,8 @@ import java.net.*;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
+import utilities.SpotifyAPIInvalidStreamException;
+
 public class SpotifyBuilder {
 	
 	private static final String clientID = "f8d521b06e3146e4ac81c0e72e4cf010";
@@ -56,35 +58,11 @@ public class SpotifyBuilder {
 	
 	
 	public static void requestAccessToken() {
-		if (token != "") {
-			return; 
-		}
-		String uriAuth = "https://accounts.spotify.com/api/token";
+		// SpotifyAPI's TokenManager keeps the token fresh, this just uses the same one
 		try {
-			URL url = new URL(uriAuth);
-			HttpURLConnection con = (HttpURLConnection) url.openConnection();
-			con.setRequestMethod("POST");
-			con.setDoOutput(true); 
-			con.setDoInput(true);
-			//con.setRequestProperty("Authorization", "Basic " + clientID + ":" + clientSecret);
-			con.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-			String info = "grant_type=client_credentials&client_id="
-					+ clientID + "&client_secret="
-					+ clientSecret +"";
-			byte[] out = info.getBytes(StandardCharsets.UTF_8);
-			OutputStream stream = con.getOutputStream();
-			stream.write(out);
-			InputStream temp = con.getInputStream();
-			token = new String(temp.readAllBytes());
-			String[] tmp = token.split(",");
-			String tok = tmp[0].split(":")[1].substring(1);
-			tok = tok.substring(0, tok.length() - 1);
-			token = tok; 
+			token = SpotifyAPI.getTokens().getToken();
 			System.out.println(token);
-		} catch (MalformedURLException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (IOException e) {
+		} catch (SpotifyAPIInvalidStreamException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
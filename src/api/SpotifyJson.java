@@ -0,0 +1,107 @@
+package api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import api.JsonScanner.Token;
+
+/**
+ * Pulls the fields SpotifyAPI uses out of Spotify's search responses with a JsonScanner.
+ *
+ * Each method walks down to the first result by name and skips the fields around it,
+ * so the market lists, links and artist objects are read past but never turned into Strings.
+ * Reading stops as soon as the last wanted field has been found, which for a track search
+ * is preview_url, well before the end of the response.
+ */
+class SpotifyJson {
+
+	/**
+	 * Reads the first track of a track search.
+	 * @param body The body of a /v1/search?type=track response.
+	 * @return The first image link of the album, the preview link and the release date of the
+	 * first track. Any of them are "" if they weren't there.
+	 * @throws IOException If the body can't be read.
+	 */
+	static TrackMetadata readTrack(InputStream body) throws IOException {
+		JsonScanner json = new JsonScanner(body);
+		String coverLink = "";
+		String prevLink = "";
+		String date = "";
+		if (json.next() != Token.START_OBJECT || !json.findField("tracks") || json.next() != Token.START_OBJECT
+				|| !json.findField("items") || !json.enterArray() || json.next() != Token.START_OBJECT) {
+			return new TrackMetadata(coverLink, prevLink, date);
+		}
+		while (json.next() == Token.NAME) {
+			if (json.nameEquals("album")) {
+				Token token = json.next();
+				if (token != Token.START_OBJECT) {
+					if (token == Token.START_ARRAY) {
+						json.skipRest();
+					}
+					continue;
+				}
+				while (json.next() == Token.NAME) {
+					if (json.nameEquals("images")) {
+						coverLink = readFirstImage(json);
+					} else if (json.nameEquals("release_date")) {
+						json.next();
+						date = json.isNull() ? "" : json.text();
+					} else {
+						json.skipValue();
+					}
+				}
+			} else if (json.nameEquals("preview_url")) {
+				json.next();
+				prevLink = json.isNull() ? "" : json.text();
+				// album comes before preview_url, nothing after it is needed
+				break;
+			} else {
+				json.skipValue();
+			}
+		}
+		return new TrackMetadata(coverLink, prevLink, date);
+	}
+
+	/**
+	 * Reads the genres of the first artist of an artist search.
+	 * @param body The body of a /v1/search?type=artist response.
+	 * @return The genres of the first artist in the order Spotify lists them, empty if there were none.
+	 * @throws IOException If the body can't be read.
+	 */
+	static List<String> readGenres(InputStream body) throws IOException {
+		JsonScanner json = new JsonScanner(body);
+		List<String> genres = new ArrayList<String>();
+		if (json.next() != Token.START_OBJECT || !json.findField("artists") || json.next() != Token.START_OBJECT
+				|| !json.findField("items") || !json.enterArray() || json.next() != Token.START_OBJECT
+				|| !json.findField("genres") || !json.enterArray()) {
+			return genres;
+		}
+		while (json.next() == Token.STRING) {
+			genres.add(json.text());
+		}
+		return genres;
+	}
+
+	/**
+	 * Reads an images array and returns the url of the first image, which is the largest.
+	 */
+	private static String readFirstImage(JsonScanner json) throws IOException {
+		if (!json.enterArray()) {
+			return "";
+		}
+		String url = "";
+		if (json.next() == Token.START_OBJECT && json.findField("url")) {
+			json.next();
+			url = json.text();
+			// finish the first image object
+			while (json.next() == Token.NAME) {
+				json.skipValue();
+			}
+		}
+		// the smaller images aren't needed
+		json.skipRest();
+		return url;
+	}
+}
@@ -0,0 +1,472 @@
+package api;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stand in for Spotify that runs inside the program, for testing SpotifyAPI without the real service.
+ *
+ * It answers the four kinds of requests SpotifyAPI sends: token requests at /api/token, track and
+ * artist searches at /v1/search, and preview and artwork downloads at /preview/ and /art/. Search
+ * responses are laid out the same way Spotify's are, with the links pointing back at the stub. Previews
+ * are made up bytes and artwork is a 640 pixel JPEG, both the same every time the same file is asked
+ * for. Tracks are spread over a number of albums that share artwork, like a real library.
+ *
+ * To see how SpotifyAPI copes with a bad day, every request can be made to wait, a share of searches
+ * can fail with a 500, and searches over a number per second get a 429 with a Retry-After.
+ *
+ * Run main to start one by itself, then point SpotifyAPI at it with the spotify.search.url and
+ * spotify.token.url system properties, or setSearchURL and setTokenURL.
+ *
+ * Properties:
+ * server, pool:
+ * The HttpServer and the threads it answers on.
+ *
+ * latency:
+ * About how many milliseconds each request waits before it is answered.
+ *
+ * errorRate:
+ * The share of searches that fail with a 500, from 0 to 1.
+ *
+ * rateLimit:
+ * How many searches a second are answered before the rest get a 429, 0 for no limit.
+ *
+ * albums:
+ * How many albums the tracks are spread over.
+ *
+ * window, windowCount:
+ * The second being counted for rateLimit and how many searches have come in during it.
+ *
+ * tokens, searches, downloads, errors, throttled:
+ * How many of each kind of request, and of each kind of failure, have been sent back.
+ *
+ * covers:
+ * The JPEG made for each artwork path.
+ */
+public class SpotifyStubServer {
+
+	private static final int PREVIEW_SIZE = 48 * 1024;
+	private static final int ART_SIZE = 640;
+
+	private final HttpServer server;
+	private final ExecutorService pool;
+	private volatile int latency;
+	private volatile double errorRate;
+	private volatile int rateLimit;
+	private volatile int albums;
+	private long window;
+	private int windowCount;
+	private final AtomicInteger tokens;
+	private final AtomicInteger searches;
+	private final AtomicInteger downloads;
+	private final AtomicInteger errors;
+	private final AtomicInteger throttled;
+	private final ConcurrentHashMap<String, byte[]> covers;
+
+	/**
+	 * Creates a SpotifyStubServer, not started yet.
+	 * @param port The port to listen on, 0 for any free port.
+	 * @param threads How many requests can be answered at once.
+	 * @throws IOException If the port can't be opened.
+	 */
+	public SpotifyStubServer(int port, int threads) throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		AtomicInteger count = new AtomicInteger();
+		this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "stub-server-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.latency = 0;
+		this.errorRate = 0;
+		this.rateLimit = 0;
+		this.albums = 50;
+		this.window = 0;
+		this.windowCount = 0;
+		this.tokens = new AtomicInteger();
+		this.searches = new AtomicInteger();
+		this.downloads = new AtomicInteger();
+		this.errors = new AtomicInteger();
+		this.throttled = new AtomicInteger();
+		this.covers = new ConcurrentHashMap<String, byte[]>();
+		server.setExecutor(pool);
+		server.createContext("/api/token", this::token);
+		server.createContext("/v1/search", this::search);
+		server.createContext("/preview/", exchange -> {
+			// the same path always gets the same bytes
+			byte[] data = new byte[PREVIEW_SIZE];
+			new Random(exchange.getRequestURI().getPath().hashCode()).nextBytes(data);
+			download(exchange, data);
+		});
+		server.createContext("/art/", exchange -> download(exchange, cover(exchange.getRequestURI().getPath())));
+	}
+
+	/**
+	 * Starts answering requests.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops answering requests.
+	 */
+	public void stop() {
+		server.stop(0);
+		pool.shutdownNow();
+	}
+
+	/**
+	 * Returns the address the stub is at.
+	 * @return Something like "http://127.0.0.1:8888".
+	 */
+	public String getBaseURL() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * Sets about how long each request waits before it is answered. The real wait is
+	 * picked at random between half and one and a half times this.
+	 * @param millis The wait in milliseconds.
+	 */
+	public void setLatency(int millis) {
+		this.latency = millis;
+	}
+
+	/**
+	 * Sets the share of searches that fail with a 500.
+	 * @param errorRate From 0 for none to 1 for all of them.
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * Sets how many searches a second are answered before the rest get a 429.
+	 * @param perSecond The limit, 0 for no limit.
+	 */
+	public void setRateLimit(int perSecond) {
+		this.rateLimit = perSecond;
+	}
+
+	/**
+	 * Sets how many albums tracks are spread over. Tracks on the same album have the same artwork.
+	 * @param albums The number of albums.
+	 */
+	public void setAlbums(int albums) {
+		this.albums = albums;
+	}
+
+	/**
+	 * Returns how many requests of each kind have been answered and how many were failed on purpose.
+	 * @return A one line summary.
+	 */
+	@Override
+	public String toString() {
+		return tokens.get() + " token, " + searches.get() + " search and " + downloads.get() + " download requests, "
+				+ errors.get() + " 500s, " + throttled.get() + " 429s";
+	}
+
+	/*
+	 * Handlers
+	 */
+
+	private void token(HttpExchange exchange) throws IOException {
+		wait(exchange);
+		try (InputStream body = exchange.getRequestBody()) {
+			body.readAllBytes();
+		}
+		int n = tokens.incrementAndGet();
+		respond(exchange, 200, "{\"access_token\":\"stub-token-" + n + "\",\"token_type\":\"Bearer\",\"expires_in\":3600}");
+	}
+
+	private void search(HttpExchange exchange) throws IOException {
+		wait(exchange);
+		searches.incrementAndGet();
+		if (overLimit()) {
+			throttled.incrementAndGet();
+			exchange.getResponseHeaders().add("Retry-After", "1");
+			respond(exchange, 429, "{\"error\":{\"status\":429,\"message\":\"API rate limit exceeded\"}}");
+			return;
+		}
+		if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+			errors.incrementAndGet();
+			respond(exchange, 500, "{\"error\":{\"status\":500,\"message\":\"Server error\"}}");
+			return;
+		}
+		String q = "";
+		String type = "track";
+		String query = exchange.getRequestURI().getRawQuery();
+		for (String param : query == null ? new String[0] : query.split("&")) {
+			int equals = param.indexOf('=');
+			if (equals < 0) {
+				continue;
+			}
+			String value = URLDecoder.decode(param.substring(equals + 1), StandardCharsets.UTF_8);
+			if (param.startsWith("q=")) {
+				q = value;
+			} else if (param.startsWith("type=")) {
+				type = value;
+			}
+		}
+		if (type.equals("artist")) {
+			respond(exchange, 200, artistResponse(q, new String[] {"stub rock", "stub pop"}));
+		} else {
+			String id = Integer.toHexString(q.hashCode());
+			String album = Integer.toString(Math.floorMod(q.hashCode(), albums));
+			respond(exchange, 200, trackResponse(q, q, getBaseURL() + "/art/" + album, getBaseURL() + "/preview/" + id));
+		}
+	}
+
+	private void download(HttpExchange exchange, byte[] data) throws IOException {
+		wait(exchange);
+		downloads.incrementAndGet();
+		int size = data.length;
+		int from = 0;
+		String etag = "\"" + Integer.toHexString(Arrays.hashCode(data)) + "\"";
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		if (range != null && range.startsWith("bytes=") && range.endsWith("-") && (ifRange == null || ifRange.equals(etag))) {
+			from = Integer.parseInt(range.substring(6, range.length() - 1));
+		}
+		if (from >= size) {
+			exchange.sendResponseHeaders(416, -1);
+			exchange.close();
+			return;
+		}
+		exchange.getResponseHeaders().set("ETag", etag);
+		if (from > 0) {
+			exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + (size - 1) + "/" + size);
+		}
+		exchange.sendResponseHeaders(from > 0 ? 206 : 200, size - from);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(data, from, size - from);
+		}
+	}
+
+	/**
+	 * Returns a 640 by 640 JPEG cover, a different color for every path, made the first time it is asked for.
+	 */
+	private byte[] cover(String path) {
+		return covers.computeIfAbsent(path, p -> {
+			Random random = new Random(p.hashCode());
+			BufferedImage image = new BufferedImage(ART_SIZE, ART_SIZE, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = image.createGraphics();
+			g.setPaint(new GradientPaint(0, 0, new Color(random.nextInt(0xFFFFFF)), ART_SIZE, ART_SIZE, new Color(random.nextInt(0xFFFFFF))));
+			g.fillRect(0, 0, ART_SIZE, ART_SIZE);
+			g.dispose();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try {
+				ImageIO.write(image, "jpg", out);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return out.toByteArray();
+		});
+	}
+
+	private void wait(HttpExchange exchange) {
+		int millis = latency;
+		if (millis <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextInt(millis / 2, millis + millis / 2 + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized boolean overLimit() {
+		int limit = rateLimit;
+		if (limit <= 0) {
+			return false;
+		}
+		long second = System.nanoTime() / 1_000_000_000L;
+		if (second != window) {
+			window = second;
+			windowCount = 0;
+		}
+		windowCount += 1;
+		return windowCount > limit;
+	}
+
+	private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/*
+	 * Responses, laid out the way Spotify sends them
+	 */
+
+	/**
+	 * Returns a track search response with one track in it.
+	 * @param artist The name of the track's artist.
+	 * @param title The name of the track.
+	 * @param coverLink The link of the album's largest image. The smaller ones have a size added on.
+	 * @param previewLink The link of the preview.
+	 * @return The JSON.
+	 */
+	static String trackResponse(String artist, String title, String coverLink, String previewLink) {
+		String artistId = id(artist);
+		String albumId = id(coverLink);
+		String trackId = id(artist + title);
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n  \"tracks\" : {\n");
+		sb.append("    \"href\" : \"https://api.spotify.com/v1/search?query=").append(trackId).append("&type=track&market=US&offset=0&limit=1\",\n");
+		sb.append("    \"items\" : [ {\n");
+		sb.append("      \"album\" : {\n");
+		sb.append("        \"album_type\" : \"album\",\n");
+		sb.append("        \"artists\" : [ ");
+		appendArtist(sb, artist, artistId, 8);
+		sb.append(" ],\n");
+		sb.append("        \"external_urls\" : {\n          \"spotify\" : \"https://open.spotify.com/album/").append(albumId).append("\"\n        },\n");
+		sb.append("        \"href\" : \"https://api.spotify.com/v1/albums/").append(albumId).append("\",\n");
+		sb.append("        \"id\" : \"").append(albumId).append("\",\n");
+		sb.append("        \"images\" : [ {\n");
+		int[] sizes = {640, 300, 64};
+		for (int i = 0; i < sizes.length; i++) {
+			if (i > 0) {
+				sb.append(", {\n");
+			}
+			sb.append("          \"height\" : ").append(sizes[i]).append(",\n");
+			sb.append("          \"url\" : ").append(quote(i == 0 ? coverLink : coverLink + "?size=" + sizes[i])).append(",\n");
+			sb.append("          \"width\" : ").append(sizes[i]).append("\n        }");
+		}
+		sb.append(" ],\n");
+		sb.append("        \"is_playable\" : true,\n");
+		sb.append("        \"name\" : ").append(quote(title)).append(",\n");
+		sb.append("        \"release_date\" : \"2001-07-30\",\n");
+		sb.append("        \"release_date_precision\" : \"day\",\n");
+		sb.append("        \"total_tracks\" : 11,\n");
+		sb.append("        \"type\" : \"album\",\n");
+		sb.append("        \"uri\" : \"spotify:album:").append(albumId).append("\"\n");
+		sb.append("      },\n");
+		sb.append("      \"artists\" : [ ");
+		appendArtist(sb, artist, artistId, 6);
+		sb.append(" ],\n");
+		sb.append("      \"disc_number\" : 1,\n");
+		sb.append("      \"duration_ms\" : 193373,\n");
+		sb.append("      \"explicit\" : false,\n");
+		sb.append("      \"external_ids\" : {\n        \"isrc\" : \"USRC10100732\"\n      },\n");
+		sb.append("      \"external_urls\" : {\n        \"spotify\" : \"https://open.spotify.com/track/").append(trackId).append("\"\n      },\n");
+		sb.append("      \"href\" : \"https://api.spotify.com/v1/tracks/").append(trackId).append("\",\n");
+		sb.append("      \"id\" : \"").append(trackId).append("\",\n");
+		sb.append("      \"is_local\" : false,\n");
+		sb.append("      \"is_playable\" : true,\n");
+		sb.append("      \"name\" : ").append(quote(title)).append(",\n");
+		sb.append("      \"popularity\" : 74,\n");
+		sb.append("      \"preview_url\" : ").append(quote(previewLink)).append(",\n");
+		sb.append("      \"track_number\" : 7,\n");
+		sb.append("      \"type\" : \"track\",\n");
+		sb.append("      \"uri\" : \"spotify:track:").append(trackId).append("\"\n");
+		sb.append("    } ],\n");
+		sb.append("    \"limit\" : 1,\n");
+		sb.append("    \"next\" : \"https://api.spotify.com/v1/search?query=").append(trackId).append("&type=track&market=US&offset=1&limit=1\",\n");
+		sb.append("    \"offset\" : 0,\n");
+		sb.append("    \"previous\" : null,\n");
+		sb.append("    \"total\" : 212\n");
+		sb.append("  }\n}");
+		return sb.toString();
+	}
+
+	/**
+	 * Returns an artist search response with one artist in it.
+	 * @param artist The name of the artist.
+	 * @param genres The artist's genres.
+	 * @return The JSON.
+	 */
+	static String artistResponse(String artist, String[] genres) {
+		String artistId = id(artist);
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n  \"artists\" : {\n");
+		sb.append("    \"href\" : \"https://api.spotify.com/v1/search?query=").append(artistId).append("&type=artist&market=US&offset=0&limit=1\",\n");
+		sb.append("    \"items\" : [ {\n");
+		sb.append("      \"external_urls\" : {\n        \"spotify\" : \"https://open.spotify.com/artist/").append(artistId).append("\"\n      },\n");
+		sb.append("      \"followers\" : {\n        \"href\" : null,\n        \"total\" : 4468310\n      },\n");
+		sb.append("      \"genres\" : [ ");
+		for (int i = 0; i < genres.length; i++) {
+			sb.append(i > 0 ? ", " : "").append(quote(genres[i]));
+		}
+		sb.append(" ],\n");
+		sb.append("      \"href\" : \"https://api.spotify.com/v1/artists/").append(artistId).append("\",\n");
+		sb.append("      \"id\" : \"").append(artistId).append("\",\n");
+		sb.append("      \"images\" : [ {\n        \"height\" : 640,\n        \"url\" : \"https://i.scdn.co/image/ab6761610000e5eb").append(artistId).append("\",\n        \"width\" : 640\n      } ],\n");
+		sb.append("      \"name\" : ").append(quote(artist)).append(",\n");
+		sb.append("      \"popularity\" : 72,\n");
+		sb.append("      \"type\" : \"artist\",\n");
+		sb.append("      \"uri\" : \"spotify:artist:").append(artistId).append("\"\n");
+		sb.append("    } ],\n");
+		sb.append("    \"limit\" : 1,\n    \"next\" : null,\n    \"offset\" : 0,\n    \"previous\" : null,\n    \"total\" : 1\n");
+		sb.append("  }\n}");
+		return sb.toString();
+	}
+
+	private static void appendArtist(StringBuilder sb, String name, String id, int indent) {
+		String pad = " ".repeat(indent);
+		sb.append("{\n");
+		sb.append(pad).append("  \"external_urls\" : {\n").append(pad).append("    \"spotify\" : \"https://open.spotify.com/artist/").append(id).append("\"\n").append(pad).append("  },\n");
+		sb.append(pad).append("  \"href\" : \"https://api.spotify.com/v1/artists/").append(id).append("\",\n");
+		sb.append(pad).append("  \"id\" : \"").append(id).append("\",\n");
+		sb.append(pad).append("  \"name\" : ").append(quote(name)).append(",\n");
+		sb.append(pad).append("  \"type\" : \"artist\",\n");
+		sb.append(pad).append("  \"uri\" : \"spotify:artist:").append(id).append("\"\n");
+		sb.append(pad).append("}");
+	}
+
+	/**
+	 * Makes a Spotify looking 22 character id out of a name.
+	 */
+	private static String id(String name) {
+		String alphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+		Random random = new Random(name.hashCode());
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 22; i++) {
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return sb.toString();
+	}
+
+	private static String quote(String text) {
+		return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	/**
+	 * Starts a stub server and leaves it running.
+	 * @param args The port to listen on, 8888 if not given.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8888;
+		SpotifyStubServer stub = new SpotifyStubServer(port, 16);
+		stub.start();
+		System.out.println("stub server at " + stub.getBaseURL());
+		System.out.println("-Dspotify.search.url=" + stub.getBaseURL() + "/v1/search -Dspotify.token.url=" + stub.getBaseURL() + "/api/token");
+	}
+}
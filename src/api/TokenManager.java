@@ -0,0 +1,268 @@
+package api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import api.JsonScanner.Token;
+import utilities.SpotifyAPIInvalidStreamException;
+
+/**
+ * Gets and keeps the access token every request to Spotify's API needs.
+ *
+ * Spotify's tokens stop working after the number of seconds in the expires_in field of the
+ * token response, which is usually an hour. The manager remembers when the token expires and
+ * gets a new one on a background thread a little before that, so as long as the refreshes are
+ * working, asking for the token never waits on the network. If the token does run out, the first
+ * caller starts a refresh and everyone else who asks while it is happening gets the same future,
+ * so there is only ever one token request going at a time.
+ *
+ * Properties:
+ * client:
+ * The HttpClient token requests are sent with.
+ *
+ * endpoint:
+ * Where to ask for tokens.
+ *
+ * form:
+ * The body of a token request, which has the client ID and secret in it.
+ *
+ * current:
+ * The current Grant, the token and the System.nanoTime() it stops working at, which are always
+ * replaced together so nobody reads a new expiry with an old token. The token is "" before the first one.
+ *
+ * refreshing, epoch:
+ * The token request that is happening now, or null if there isn't one, and how many times the
+ * endpoint has changed. A request started before the endpoint changed doesn't save its token.
+ *
+ * scheduler, next:
+ * The thread that refreshes the token before it expires, and the refresh it has scheduled.
+ */
+public class TokenManager {
+
+	/**
+	 * How long before a token expires to start getting a new one. Tokens shorter
+	 * than twice this are refreshed halfway through instead.
+	 */
+	private static final Duration REFRESH_EARLY = Duration.ofMinutes(5);
+	/**
+	 * How long to wait before trying again after a background refresh fails.
+	 */
+	private static final Duration RETRY = Duration.ofSeconds(30);
+	private static final Duration TIMEOUT = Duration.ofSeconds(20);
+
+	/**
+	 * A token and the System.nanoTime() it stops working at.
+	 */
+	private static class Grant {
+
+		private final String token;
+		private final long expires;
+
+		private Grant(String token, long expires) {
+			this.token = token;
+			this.expires = expires;
+		}
+
+		private boolean isValid() {
+			return !token.isEmpty() && System.nanoTime() - expires < 0;
+		}
+	}
+
+	private static final Grant NONE = new Grant("", 0);
+
+	private final HttpClient client;
+	private volatile URI endpoint;
+	private final String form;
+	private volatile Grant current;
+	private CompletableFuture<String> refreshing;
+	private int epoch;
+	private final ScheduledExecutorService scheduler;
+	private ScheduledFuture<?> next;
+
+	/**
+	 * Creates a TokenManager. No token is asked for until the first call to getTokenAsync.
+	 * @param client The HttpClient to send token requests with.
+	 * @param endpoint The URL of the token endpoint.
+	 * @param clientID The app's client ID.
+	 * @param clientSecret The app's client secret.
+	 */
+	public TokenManager(HttpClient client, String endpoint, String clientID, String clientSecret) {
+		this.client = client;
+		this.endpoint = URI.create(endpoint);
+		this.form = "grant_type=client_credentials&client_id=" + URLEncoder.encode(clientID, StandardCharsets.UTF_8)
+				+ "&client_secret=" + URLEncoder.encode(clientSecret, StandardCharsets.UTF_8);
+		this.current = NONE;
+		this.refreshing = null;
+		this.epoch = 0;
+		this.next = null;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "token-refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Returns the token, getting a new one first if there isn't one or it has expired.
+	 * @return A CompletableFuture of the token, already complete if the current one still works.
+	 * It fails with a SpotifyAPIInvalidStreamException if a new token couldn't be had.
+	 */
+	public CompletableFuture<String> getTokenAsync() {
+		Grant grant = current;
+		if (grant.isValid()) {
+			return CompletableFuture.completedFuture(grant.token);
+		}
+		return refresh();
+	}
+
+	/**
+	 * Does the same thing as getTokenAsync, waiting for the token.
+	 * @return The token.
+	 * @throws SpotifyAPIInvalidStreamException If a new token couldn't be had.
+	 */
+	public String getToken() throws SpotifyAPIInvalidStreamException {
+		try {
+			return getTokenAsync().join();
+		} catch (CompletionException e) {
+			throw new SpotifyAPIInvalidStreamException();
+		}
+	}
+
+	/**
+	 * Forgets the current token, for when the API says it isn't valid anymore. The next call
+	 * to getTokenAsync gets a new one.
+	 * @param rejected The token that was rejected. If the token has already been replaced
+	 * since then, nothing happens.
+	 */
+	public synchronized void invalidate(String rejected) {
+		if (current.token.equals(rejected)) {
+			current = new Grant(rejected, System.nanoTime());
+		}
+	}
+
+	/**
+	 * Changes where tokens are asked for. The current token is forgotten, the scheduled refresh is
+	 * cancelled, and a token request already sent to the old endpoint is left to finish without
+	 * saving its token; anyone waiting on it gets one from the new endpoint instead.
+	 * @param endpoint The URL of the token endpoint.
+	 */
+	public synchronized void setEndpoint(String endpoint) {
+		this.endpoint = URI.create(endpoint);
+		current = NONE;
+		epoch += 1;
+		refreshing = null;
+		if (next != null) {
+			next.cancel(false);
+			next = null;
+		}
+	}
+
+	/**
+	 * Asks for a new token, unless a request for one is already happening, in which
+	 * case that request's future is returned.
+	 * @return A CompletableFuture of the new token.
+	 */
+	public synchronized CompletableFuture<String> refresh() {
+		if (refreshing != null) {
+			return refreshing;
+		}
+		int started = epoch;
+		HttpRequest request = HttpRequest.newBuilder(endpoint)
+				.timeout(TIMEOUT)
+				.header("Content-Type", "application/x-www-form-urlencoded")
+				.POST(HttpRequest.BodyPublishers.ofString(form, StandardCharsets.UTF_8))
+				.build();
+		CompletableFuture<String> pending = client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+				.thenCompose(response -> {
+					String tok = readToken(response, started);
+					// null if the endpoint changed while it was sent
+					return tok != null ? CompletableFuture.completedFuture(tok) : refresh();
+				});
+		refreshing = pending;
+		pending.whenComplete((tok, e) -> {
+			boolean retry;
+			synchronized (this) {
+				if (refreshing == pending) {
+					refreshing = null;
+				}
+				retry = e != null && started == epoch;
+			}
+			// keep trying in the background while the old token still works
+			if (retry && current.isValid()) {
+				schedule(RETRY.toNanos());
+			}
+		});
+		return pending;
+	}
+
+	/**
+	 * Reads the token and how long it lasts out of a token response, saves them,
+	 * and schedules the next refresh.
+	 * @param started The epoch the request was sent in.
+	 * @return The token, null if the endpoint changed since the request was sent, in which
+	 * case nothing is saved.
+	 */
+	private String readToken(HttpResponse<InputStream> response, int started) {
+		try (InputStream body = response.body()) {
+			if (response.statusCode() != 200) {
+				throw new CompletionException(new SpotifyAPIInvalidStreamException());
+			}
+			JsonScanner json = new JsonScanner(body);
+			String tok = "";
+			long seconds = 3600;
+			if (json.next() == Token.START_OBJECT) {
+				while (json.next() == Token.NAME) {
+					if (json.nameEquals("access_token")) {
+						json.next();
+						tok = json.text();
+					} else if (json.nameEquals("expires_in")) {
+						json.next();
+						seconds = Long.parseLong(json.text());
+					} else {
+						json.skipValue();
+					}
+				}
+			}
+			if (tok.isEmpty()) {
+				throw new CompletionException(new SpotifyAPIInvalidStreamException());
+			}
+			long lifetime = TimeUnit.SECONDS.toNanos(seconds);
+			synchronized (this) {
+				if (started != epoch) {
+					return null;
+				}
+				current = new Grant(tok, System.nanoTime() + lifetime);
+				long early = Math.min(REFRESH_EARLY.toNanos(), lifetime / 2);
+				schedule(lifetime - early);
+			}
+			return tok;
+		} catch (IOException | NumberFormatException e) {
+			throw new CompletionException(new SpotifyAPIInvalidStreamException());
+		}
+	}
+
+	/**
+	 * Schedules the next background refresh, replacing the one that was scheduled before.
+	 */
+	private synchronized void schedule(long delayNanos) {
+		if (next != null) {
+			next.cancel(false);
+		}
+		next = scheduler.schedule(() -> {
+			refresh();
+		}, delayNanos, TimeUnit.NANOSECONDS);
+	}
+}
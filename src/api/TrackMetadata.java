@@ -0,0 +1,77 @@
+package api;
+
+/**
+ * The pieces of a track search that SpotifyAPI needs to build a Song: 
+ * the album artwork link, the 30 second preview link and the release date.
+ */
+public class TrackMetadata {
+	
+	private final String coverLink;
+	private final String previewLink;
+	private final String releaseDate;
+	
+	/**
+	 * Creates the TrackMetadata
+	 * @param coverLink Link to the album artwork.
+	 * @param previewLink Link to the 30 second audio preview.
+	 * @param releaseDate Release date as Spotify gives it.
+	 */
+	public TrackMetadata(String coverLink, String previewLink, String releaseDate) {
+		this.coverLink = coverLink;
+		this.previewLink = previewLink;
+		this.releaseDate = releaseDate;
+	}
+	
+	/**
+	 * Returns the link to the album artwork.
+	 * @return The artwork link, "" if there was none.
+	 */
+	public String getCoverLink() {
+		return coverLink;
+	}
+	
+	/**
+	 * Returns the link to the 30 second audio preview.
+	 * @return The preview link, "" if there was none.
+	 */
+	public String getPreviewLink() {
+		return previewLink;
+	}
+	
+	/**
+	 * Returns the release date as Spotify gives it.
+	 * @return The release date, "" if there was none.
+	 */
+	public String getReleaseDate() {
+		return releaseDate;
+	}
+	
+	/**
+	 * Returns the TrackMetadata as one line of text, for saving in a LookupCache.
+	 * @return The links and release date separated by tabs.
+	 */
+	public String toRecord() {
+		return coverLink + "\t" + previewLink + "\t" + releaseDate;
+	}
+	
+	/**
+	 * Reads a TrackMetadata back from toRecord().
+	 * @param record A line made by toRecord().
+	 * @return The TrackMetadata, or null if record isn't in that form.
+	 */
+	public static TrackMetadata fromRecord(String record) {
+		String[] split = record.split("\t", -1);
+		if (split.length != 3) {
+			return null;
+		}
+		return new TrackMetadata(split[0], split[1], split[2]);
+	}
+	
+	/**
+	 * Returns if the track can be downloaded, which needs both a preview and artwork.
+	 * @return true if there is a preview link and an artwork link.
+	 */
+	public boolean isPlayable() {
+		return !previewLink.equals("") && !coverLink.equals("");
+	}
+}
@@ -0,0 +1,147 @@
+package audio;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Saves what has been worked out about each audio file, so it only has to
+ * be worked out once.
+ *
+ * The file sits next to data.txt and has one line per audio file, the
+ * file's path, a tab, and whatever the analysis saves about it. New
+ * results are added to the end, and when a path is in the file more than
+ * once the last line wins. Audio files are named by their hash, so a path
+ * always has the same audio in it and results never go stale.
+ *
+ * A record of "-" means the file was tried and couldn't be read, so it
+ * isn't tried again every time the library loads.
+ *
+ * Properties:
+ * path:
+ * The file the results are saved in.
+ *
+ * records:
+ * Every result, by the normalized path of its audio file.
+ */
+public class AnalysisStore {
+
+	/**
+	 * The record saved for a file that couldn't be read
+	 */
+	public static final String UNREADABLE = "-";
+
+	private final Path path;
+	private final Map<String, String> records;
+
+	/**
+	 * Creates an AnalysisStore, reading whatever results are already saved
+	 *
+	 * @param fileName, the file results are saved in
+	 */
+	public AnalysisStore(String fileName) {
+		this.path = Paths.get(fileName);
+		this.records = new HashMap<>();
+		if (Files.exists(path)) {
+			try {
+				for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+					int tab = line.indexOf('\t');
+					if (tab > 0) {
+						records.put(line.substring(0, tab), line.substring(tab + 1));
+					}
+				}
+			} catch (IOException e) {
+				// start over, everything will just be analyzed again
+				records.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the saved record for an audio file
+	 *
+	 * @param audioPath, the path of the audio file
+	 * @return the record, null if the file hasn't been analyzed
+	 */
+	public synchronized String get(String audioPath) {
+		return records.get(key(audioPath));
+	}
+
+	/**
+	 * Returns whether an audio file has been analyzed, whether or not it
+	 * could be read
+	 *
+	 * @param audioPath, the path of the audio file
+	 * @return true if there is a record for it
+	 */
+	public synchronized boolean contains(String audioPath) {
+		return records.containsKey(key(audioPath));
+	}
+
+	/**
+	 * Saves the records for a group of audio files with one write
+	 *
+	 * @param audioPaths, the paths of the audio files
+	 * @param results, the record for each path, in the same order
+	 */
+	public synchronized void putAll(List<String> audioPaths, List<String> results) {
+		if (audioPaths.isEmpty()) {
+			return;
+		}
+		try {
+			if (path.getParent() != null) {
+				Files.createDirectories(path.getParent());
+			}
+			try (BufferedWriter bw = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND)) {
+				for (int i = 0; i < audioPaths.size(); i++) {
+					String key = key(audioPaths.get(i));
+					records.put(key, results.get(i));
+					bw.write(key + "\t" + results.get(i));
+					bw.newLine();
+				}
+			}
+		} catch (IOException e) {
+			// the results are still kept for this run
+			for (int i = 0; i < audioPaths.size(); i++) {
+				records.put(key(audioPaths.get(i)), results.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Goes through every saved record
+	 *
+	 * @param action, given each audio file's normalized path and its record
+	 */
+	public synchronized void forEach(BiConsumer<String, String> action) {
+		records.forEach(action);
+	}
+
+	/**
+	 * Returns how many audio files have records
+	 *
+	 * @return the number of records
+	 */
+	public synchronized int size() {
+		return records.size();
+	}
+
+	/**
+	 * Returns the path an audio file's record is saved under
+	 *
+	 * @param audioPath, the path of the audio file
+	 * @return the path, normalized
+	 */
+	static String key(String audioPath) {
+		return Paths.get(audioPath).normalize().toString();
+	}
+}
@@ -0,0 +1,347 @@
+package audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * The length and format of an audio file, read from its header without
+ * reading the audio.
+ *
+ * For a WAV file only the RIFF chunk headers are read, jumping from one to
+ * the next by their sizes, and the length comes from the size of the data
+ * chunk. For an MP3 file (which is what Spotify previews are, even though
+ * they are saved with a .wav name) the ID3 tag is skipped by its size and
+ * the first frame header is read. If the first frame holds a Xing, Info
+ * or VBRI header, it says how many frames there are, otherwise the file is
+ * constant bitrate and the length comes from the file size. Either way no
+ * more than a few KB of the file is read, however long it is.
+ *
+ * Properties:
+ * format:
+ * "wav" or "mp3".
+ *
+ * duration:
+ * The length in milliseconds.
+ *
+ * sampleRate, channels, bitrate:
+ * The sample rate in Hz, how many channels, and the bitrate in kbps,
+ * averaged over the file for variable bitrate MP3s.
+ */
+public class AudioHeader {
+
+	/**
+	 * How much of the file is read at once looking for the first MP3 frame
+	 */
+	private static final int PROBE_SIZE = 16 * 1024;
+	private static final int[][] BITRATES = {
+			// MPEG 1 layer I, II, III
+			{0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+			{0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+			{0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+			// MPEG 2 and 2.5 layer I, then II and III
+			{0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+			{0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}};
+	private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+	private final String format;
+	private final long duration;
+	private final int sampleRate;
+	private final int channels;
+	private final int bitrate;
+
+	/**
+	 * Creates an AudioHeader
+	 *
+	 * @param format, "wav" or "mp3"
+	 * @param duration, the length in milliseconds
+	 * @param sampleRate, the sample rate in Hz
+	 * @param channels, how many channels
+	 * @param bitrate, the bitrate in kbps
+	 */
+	public AudioHeader(String format, long duration, int sampleRate, int channels, int bitrate) {
+		this.format = format;
+		this.duration = duration;
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+		this.bitrate = bitrate;
+	}
+
+	/**
+	 * Reads the header of a WAV or MP3 file
+	 *
+	 * @param path, the audio file
+	 * @return its AudioHeader
+	 * @throws IOException if the file can't be read or is neither a WAV nor
+	 * an MP3 file
+	 */
+	public static AudioHeader scan(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer start = read(channel, 0, 12).order(ByteOrder.LITTLE_ENDIAN);
+			if (start.remaining() >= 12 && start.getInt(0) == 0x46464952 /* RIFF */
+					&& start.getInt(8) == 0x45564157 /* WAVE */) {
+				return scanWav(channel);
+			}
+			return scanMp3(channel);
+		}
+	}
+
+	private static AudioHeader scanWav(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long position = 12;
+		int format = -1;
+		int channels = 0;
+		int sampleRate = 0;
+		int bitsPerSample = 0;
+		while (position + 8 <= size) {
+			ByteBuffer chunk = read(channel, position, 8).order(ByteOrder.LITTLE_ENDIAN);
+			int id = chunk.getInt(0);
+			long chunkSize = chunk.getInt(4) & 0xFFFFFFFFL;
+			if (id == 0x20746d66 /* fmt  */) {
+				ByteBuffer fmt = read(channel, position + 8, 16).order(ByteOrder.LITTLE_ENDIAN);
+				if (fmt.remaining() < 16) {
+					break;
+				}
+				format = fmt.getShort(0) & 0xFFFF;
+				channels = fmt.getShort(2) & 0xFFFF;
+				sampleRate = fmt.getInt(4);
+				bitsPerSample = fmt.getShort(14) & 0xFFFF;
+			} else if (id == 0x61746164 /* data */) {
+				if (format < 0 || channels <= 0 || sampleRate <= 0 || bitsPerSample <= 0) {
+					throw new IOException("WAV data before its format");
+				}
+				// streamed files leave the size as 0 or all ones
+				long available = size - position - 8;
+				long bytes = chunkSize == 0 || chunkSize == 0xFFFFFFFFL ? available : Math.min(chunkSize, available);
+				long bytesPerSecond = (long) sampleRate * channels * bitsPerSample / 8;
+				return new AudioHeader("wav", bytes * 1000 / bytesPerSecond, sampleRate, channels,
+						(int) (bytesPerSecond * 8 / 1000));
+			}
+			position += 8 + chunkSize + (chunkSize & 1);
+		}
+		throw new IOException("WAV file without a data chunk");
+	}
+
+	private static AudioHeader scanMp3(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long position = 0;
+		ByteBuffer probe = read(channel, 0, 10);
+		// an ID3v2 tag can hold cover art, so it is skipped by its size instead of read
+		if (probe.remaining() >= 10 && probe.get(0) == 'I' && probe.get(1) == 'D' && probe.get(2) == '3') {
+			int tagSize = (probe.get(6) & 0x7F) << 21 | (probe.get(7) & 0x7F) << 14 | (probe.get(8) & 0x7F) << 7
+					| (probe.get(9) & 0x7F);
+			boolean footer = (probe.get(5) & 0x10) != 0;
+			position = 10 + tagSize + (footer ? 10 : 0);
+		}
+		probe = read(channel, position, PROBE_SIZE);
+		for (int i = 0; i + 4 <= probe.limit(); i++) {
+			int header = probe.getInt(i);
+			int length = frameLength(header);
+			if (length <= 0) {
+				continue;
+			}
+			// a real frame is followed by another one, a stray sync word isn't
+			if (i + length + 4 <= probe.limit() && frameLength(probe.getInt(i + length)) <= 0) {
+				continue;
+			}
+			return mp3Header(probe, i, header, size - position - i - tagAtEnd(channel));
+		}
+		throw new IOException("not a WAV or MP3 file");
+	}
+
+	/**
+	 * Works out the AudioHeader from the first frame, using a Xing, Info or
+	 * VBRI header in it if there is one
+	 */
+	private static AudioHeader mp3Header(ByteBuffer probe, int offset, int header, long audioBytes) {
+		int version = header >>> 19 & 3;
+		int layer = header >>> 17 & 3;
+		boolean mono = (header >>> 6 & 3) == 3;
+		int sampleRate = sampleRate(header);
+		int samplesPerFrame = layer == 3 ? 384 : (layer == 1 && version != 3 ? 576 : 1152);
+		int channels = mono ? 1 : 2;
+		int sideInfo = version == 3 ? (mono ? 17 : 32) : (mono ? 9 : 17);
+		long frames = -1;
+		int xing = offset + 4 + sideInfo;
+		if (xing + 12 <= probe.limit()) {
+			int tag = probe.getInt(xing);
+			if ((tag == 0x58696e67 /* Xing */ || tag == 0x496e666f /* Info */) && (probe.getInt(xing + 4) & 1) != 0) {
+				frames = probe.getInt(xing + 8) & 0xFFFFFFFFL;
+			}
+		}
+		int vbri = offset + 4 + 32;
+		if (frames < 0 && vbri + 18 <= probe.limit() && probe.getInt(vbri) == 0x56425249 /* VBRI */) {
+			frames = probe.getInt(vbri + 14) & 0xFFFFFFFFL;
+		}
+		if (frames > 0) {
+			long duration = frames * samplesPerFrame * 1000 / sampleRate;
+			int bitrate = duration > 0 ? (int) (audioBytes * 8 / duration) : bitrate(header);
+			return new AudioHeader("mp3", duration, sampleRate, channels, bitrate);
+		}
+		int bitrate = bitrate(header);
+		return new AudioHeader("mp3", audioBytes * 8 / bitrate, sampleRate, channels, bitrate);
+	}
+
+	/**
+	 * Returns how long the MP3 frame starting with a header is in bytes, 0
+	 * if it isn't a frame header
+	 */
+	private static int frameLength(int header) {
+		if ((header & 0xFFE00000) != 0xFFE00000) {
+			return 0;
+		}
+		int version = header >>> 19 & 3;
+		int layer = header >>> 17 & 3;
+		if (version == 1 || layer == 0) {
+			return 0;
+		}
+		int bitrate = bitrate(header);
+		int sampleRate = sampleRate(header);
+		if (bitrate <= 0 || sampleRate <= 0) {
+			return 0;
+		}
+		int padding = header >>> 9 & 1;
+		if (layer == 3) {
+			return (12 * bitrate * 1000 / sampleRate + padding) * 4;
+		}
+		int samplesPerFrame = layer == 1 && version != 3 ? 576 : 1152;
+		return samplesPerFrame / 8 * bitrate * 1000 / sampleRate + padding;
+	}
+
+	/**
+	 * Returns the bitrate of an MP3 frame header in kbps, 0 or less if it
+	 * is free or not allowed
+	 */
+	private static int bitrate(int header) {
+		int version = header >>> 19 & 3;
+		int layer = header >>> 17 & 3;
+		int index = header >>> 12 & 15;
+		if (index == 15) {
+			return -1;
+		}
+		int table = version == 3 ? 3 - layer : (layer == 3 ? 3 : 4);
+		return BITRATES[table][index];
+	}
+
+	/**
+	 * Returns the sample rate of an MP3 frame header, 0 if it isn't allowed
+	 */
+	private static int sampleRate(int header) {
+		int version = header >>> 19 & 3;
+		int index = header >>> 10 & 3;
+		if (index == 3) {
+			return 0;
+		}
+		return SAMPLE_RATES[index] >> (version == 3 ? 0 : (version == 2 ? 1 : 2));
+	}
+
+	/**
+	 * Returns 128 if the file ends in an ID3v1 tag, which isn't audio
+	 */
+	private static long tagAtEnd(FileChannel channel) throws IOException {
+		if (channel.size() < 128) {
+			return 0;
+		}
+		ByteBuffer tag = read(channel, channel.size() - 128, 3);
+		return tag.remaining() == 3 && tag.get(0) == 'T' && tag.get(1) == 'A' && tag.get(2) == 'G' ? 128 : 0;
+	}
+
+	/**
+	 * Reads up to length bytes at a position, fewer at the end of the file,
+	 * big endian like MP3 headers
+	 */
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				break;
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Returns "wav" or "mp3"
+	 *
+	 * @return the format
+	 */
+	public String getFormat() {
+		return format;
+	}
+
+	/**
+	 * Returns the length
+	 *
+	 * @return the length in milliseconds
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Returns the sample rate
+	 *
+	 * @return the sample rate in Hz
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Returns how many channels there are
+	 *
+	 * @return the number of channels
+	 */
+	public int getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Returns the bitrate
+	 *
+	 * @return the bitrate in kbps
+	 */
+	public int getBitrate() {
+		return bitrate;
+	}
+
+	/**
+	 * Returns the AudioHeader as a record for an AnalysisStore
+	 *
+	 * @return the record
+	 */
+	public String toRecord() {
+		return String.format(Locale.ROOT, "%s,%d,%d,%d,%d", format, duration, sampleRate, channels, bitrate);
+	}
+
+	/**
+	 * Reads an AudioHeader back from a record made by toRecord
+	 *
+	 * @param record, the record
+	 * @return the AudioHeader, null if the record isn't one
+	 */
+	public static AudioHeader fromRecord(String record) {
+		String[] parts = record.split(",");
+		if (parts.length != 5) {
+			return null;
+		}
+		try {
+			return new AudioHeader(parts[0], Long.parseLong(parts[1]), Integer.parseInt(parts[2]),
+					Integer.parseInt(parts[3]), Integer.parseInt(parts[4]));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%s %d ms, %d Hz, %d ch, %d kbps", format, duration, sampleRate, channels,
+				bitrate);
+	}
+}
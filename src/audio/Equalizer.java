@@ -0,0 +1,262 @@
+package audio;
+
+import java.util.Arrays;
+
+/**
+ * A parametric equalizer for PCM, a chain of biquad filters, one per band.
+ *
+ * Every band is a peaking filter around its frequency, except the lowest
+ * and highest, which are shelves, using the formulas from Robert
+ * Bristow-Johnson's Audio EQ Cookbook. A band set to 0 dB does nothing and
+ * is skipped.
+ *
+ * Settings can be changed from any thread while another thread is
+ * processing audio, without locking. A change works out the coefficients
+ * of every band into a new array and publishes it with one volatile write.
+ * process reads that array once per block, so a block is always filtered
+ * with one whole set of coefficients and the audio thread never waits.
+ *
+ * process goes band by band over the whole block rather than sample by
+ * sample through every band. The recursion in a biquad makes each sample
+ * depend on the one before, so its loop can't be vectorized, but this way
+ * each band's five coefficients and two state values sit in registers for
+ * the whole block, and the loop is nothing but multiplies and adds on one
+ * float array.
+ *
+ * Properties:
+ * channels, rate:
+ * The layout and sample rate of the audio.
+ *
+ * frequencies, gains, qs:
+ * The settings of every band. Only changed while holding this object's
+ * lock.
+ *
+ * coefficients:
+ * b0, b1, b2, a1 and a2 of every band, divided by a0, replaced whole on
+ * every change.
+ *
+ * state:
+ * The two delayed values of every band for every channel, only used by
+ * the thread that processes.
+ */
+public class Equalizer {
+
+	/**
+	 * The centers of the bands of a default 10 band Equalizer, an octave
+	 * apart like a graphic equalizer's
+	 */
+	public static final double[] OCTAVES = {32, 64, 125, 250, 500, 1000, 2000, 4000, 8000, 16000};
+	private static final double DEFAULT_Q = Math.sqrt(2);
+	private static final float TINY = 1e-15f;
+
+	private final int channels;
+	private final int rate;
+	private final double[] frequencies;
+	private final double[] gains;
+	private final double[] qs;
+	private volatile float[] coefficients;
+	private final float[] state;
+
+	/**
+	 * Creates a flat 10 band Equalizer, with bands an octave apart
+	 *
+	 * @param channels, how many channels the audio has
+	 * @param rate, the sample rate of the audio
+	 */
+	public Equalizer(int channels, int rate) {
+		this(OCTAVES, channels, rate);
+	}
+
+	/**
+	 * Creates a flat Equalizer
+	 *
+	 * @param frequencies, the center of every band in Hz, lowest first
+	 * @param channels, how many channels the audio has
+	 * @param rate, the sample rate of the audio
+	 */
+	public Equalizer(double[] frequencies, int channels, int rate) {
+		this.channels = channels;
+		this.rate = rate;
+		this.frequencies = frequencies.clone();
+		this.gains = new double[frequencies.length];
+		this.qs = new double[frequencies.length];
+		Arrays.fill(qs, DEFAULT_Q);
+		this.state = new float[frequencies.length * channels * 2];
+		this.coefficients = design();
+	}
+
+	/**
+	 * Returns how many bands there are
+	 *
+	 * @return the number of bands
+	 */
+	public int getBands() {
+		return frequencies.length;
+	}
+
+	/**
+	 * Returns the center of a band
+	 *
+	 * @param band, the band
+	 * @return the frequency in Hz
+	 */
+	public synchronized double getFrequency(int band) {
+		return frequencies[band];
+	}
+
+	/**
+	 * Returns how much a band is turned up or down
+	 *
+	 * @param band, the band
+	 * @return the gain in dB
+	 */
+	public synchronized double getGain(int band) {
+		return gains[band];
+	}
+
+	/**
+	 * Turns a band up or down
+	 *
+	 * @param band, the band
+	 * @param gain, the gain in dB, 0 for no change
+	 */
+	public synchronized void setGain(int band, double gain) {
+		gains[band] = gain;
+		coefficients = design();
+	}
+
+	/**
+	 * Changes everything about a band
+	 *
+	 * @param band, the band
+	 * @param frequency, its center in Hz
+	 * @param gain, its gain in dB
+	 * @param q, how narrow it is, higher is narrower
+	 */
+	public synchronized void setBand(int band, double frequency, double gain, double q) {
+		frequencies[band] = frequency;
+		gains[band] = gain;
+		qs[band] = q;
+		coefficients = design();
+	}
+
+	/**
+	 * Works out the coefficients of every band from the settings
+	 *
+	 * @return a new array of five coefficients per band
+	 */
+	private float[] design() {
+		int bands = frequencies.length;
+		float[] c = new float[bands * 5];
+		for (int band = 0; band < bands; band++) {
+			double a = Math.pow(10, gains[band] / 40);
+			double w = 2 * Math.PI * Math.min(frequencies[band], rate * 0.49) / rate;
+			double cos = Math.cos(w);
+			double alpha = Math.sin(w) / (2 * qs[band]);
+			double b0, b1, b2, a0, a1, a2;
+			if (gains[band] == 0) {
+				b0 = 1;
+				b1 = 0;
+				b2 = 0;
+				a0 = 1;
+				a1 = 0;
+				a2 = 0;
+			} else if (band == 0 && bands > 1) {
+				double root = 2 * Math.sqrt(a) * alpha;
+				b0 = a * ((a + 1) - (a - 1) * cos + root);
+				b1 = 2 * a * ((a - 1) - (a + 1) * cos);
+				b2 = a * ((a + 1) - (a - 1) * cos - root);
+				a0 = (a + 1) + (a - 1) * cos + root;
+				a1 = -2 * ((a - 1) + (a + 1) * cos);
+				a2 = (a + 1) + (a - 1) * cos - root;
+			} else if (band == bands - 1 && bands > 1) {
+				double root = 2 * Math.sqrt(a) * alpha;
+				b0 = a * ((a + 1) + (a - 1) * cos + root);
+				b1 = -2 * a * ((a - 1) + (a + 1) * cos);
+				b2 = a * ((a + 1) + (a - 1) * cos - root);
+				a0 = (a + 1) - (a - 1) * cos + root;
+				a1 = 2 * ((a - 1) - (a + 1) * cos);
+				a2 = (a + 1) - (a - 1) * cos - root;
+			} else {
+				b0 = 1 + alpha * a;
+				b1 = -2 * cos;
+				b2 = 1 - alpha * a;
+				a0 = 1 + alpha / a;
+				a1 = -2 * cos;
+				a2 = 1 - alpha / a;
+			}
+			c[band * 5] = (float) (b0 / a0);
+			c[band * 5 + 1] = (float) (b1 / a0);
+			c[band * 5 + 2] = (float) (b2 / a0);
+			c[band * 5 + 3] = (float) (a1 / a0);
+			c[band * 5 + 4] = (float) (a2 / a0);
+		}
+		return c;
+	}
+
+	/**
+	 * Filters a block of audio in place. Only one thread should call this.
+	 *
+	 * @param samples, samples between -1 and 1, channels interleaved
+	 * @param frames, how many frames of samples to filter
+	 */
+	public void process(float[] samples, int frames) {
+		float[] c = coefficients;
+		int end = frames * channels;
+		for (int band = 0; band < c.length / 5; band++) {
+			float b0 = c[band * 5];
+			float b1 = c[band * 5 + 1];
+			float b2 = c[band * 5 + 2];
+			float a1 = c[band * 5 + 3];
+			float a2 = c[band * 5 + 4];
+			if (b0 == 1 && b1 == 0 && b2 == 0 && a1 == 0 && a2 == 0) {
+				continue;
+			}
+			for (int channel = 0; channel < channels; channel++) {
+				int s = (band * channels + channel) * 2;
+				float z1 = state[s];
+				float z2 = state[s + 1];
+				// transposed direct form II
+				for (int i = channel; i < end; i += channels) {
+					float in = samples[i];
+					float out = b0 * in + z1;
+					z1 = b1 * in - a1 * out + z2;
+					z2 = b2 * in - a2 * out;
+					samples[i] = out;
+				}
+				// let tails die instead of becoming denormals, which are slow
+				state[s] = Math.abs(z1) < TINY ? 0 : z1;
+				state[s + 1] = Math.abs(z2) < TINY ? 0 : z2;
+			}
+		}
+	}
+
+	/**
+	 * Forgets the audio filtered so far, for when playback jumps
+	 */
+	public void reset() {
+		Arrays.fill(state, 0);
+	}
+
+	/**
+	 * Returns how much the Equalizer turns a frequency up or down, from its
+	 * coefficients
+	 *
+	 * @param frequency, the frequency in Hz
+	 * @return the gain in dB
+	 */
+	public double response(double frequency) {
+		float[] c = coefficients;
+		double w = 2 * Math.PI * frequency / rate;
+		double db = 0;
+		for (int band = 0; band < c.length / 5; band++) {
+			// |H(e^jw)|^2 from the real and imaginary parts of the numerator and denominator
+			double nr = c[band * 5] + c[band * 5 + 1] * Math.cos(w) + c[band * 5 + 2] * Math.cos(2 * w);
+			double ni = -(c[band * 5 + 1] * Math.sin(w) + c[band * 5 + 2] * Math.sin(2 * w));
+			double dr = 1 + c[band * 5 + 3] * Math.cos(w) + c[band * 5 + 4] * Math.cos(2 * w);
+			double di = -(c[band * 5 + 3] * Math.sin(w) + c[band * 5 + 4] * Math.sin(2 * w));
+			db += 10 * Math.log10((nr * nr + ni * ni) / (dr * dr + di * di));
+		}
+		return db;
+	}
+}
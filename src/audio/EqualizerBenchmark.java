@@ -0,0 +1,94 @@
+package audio;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Times a 10 band Equalizer on stereo 48 kHz audio, the way a playback
+ * thread would run it, a block of 512 frames at a time. Run it with the
+ * main method.
+ *
+ * It prints the time per block, how much of one core it would take to
+ * keep up with playback, and the bytes allocated per block. The second
+ * run has another thread changing the gains the whole time, to show the
+ * changes don't slow the audio thread down.
+ */
+public class EqualizerBenchmark {
+
+	private static final int RATE = 48000;
+	private static final int CHANNELS = 2;
+	private static final int BLOCK = 512;
+	private static final int WARMUP = 20000;
+	private static final int ROUNDS = 50000;
+
+	// kept so the JIT can't throw the filtering away
+	private static float sink;
+
+	public static void main(String[] args) throws InterruptedException {
+		float[] noise = new float[BLOCK * CHANNELS * 16];
+		Random random = new Random(1);
+		for (int i = 0; i < noise.length; i++) {
+			noise[i] = (float) (random.nextGaussian() * 0.1);
+		}
+		float[] block = new float[BLOCK * CHANNELS];
+		Equalizer equalizer = new Equalizer(CHANNELS, RATE);
+		for (int band = 0; band < equalizer.getBands(); band++) {
+			equalizer.setGain(band, band % 2 == 0 ? 6 : -6);
+		}
+		for (double hz : new double[] {32, 100, 1000, 5000, 16000}) {
+			System.out.println(String.format("response at %5.0f Hz: %+.1f dB", hz, equalizer.response(hz)));
+		}
+
+		for (int pass = 0; pass < 2; pass++) {
+			// the first pass is warmup
+			boolean print = pass == 1;
+			run("10 bands", print, equalizer, noise, block);
+			Thread changer = new Thread(() -> {
+				int i = 0;
+				while (!Thread.currentThread().isInterrupted()) {
+					equalizer.setGain(i % 10, (i % 25) - 12);
+					i += 1;
+				}
+			});
+			changer.setDaemon(true);
+			changer.start();
+			run("10 bands, changing", print, equalizer, noise, block);
+			changer.interrupt();
+			changer.join();
+		}
+		System.out.println("checksum " + sink);
+	}
+
+	private static void run(String name, boolean print, Equalizer equalizer, float[] noise, float[] block) {
+		for (int i = 0; i < WARMUP; i++) {
+			next(equalizer, noise, block, i);
+		}
+		long bytesBefore = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			next(equalizer, noise, block, i);
+		}
+		long time = System.nanoTime() - start;
+		long bytes = allocatedBytes() - bytesBefore;
+		if (print) {
+			double perBlock = (double) time / ROUNDS;
+			double realTime = BLOCK * 1e9 / RATE;
+			String alloc = bytesBefore < 0 ? "" : String.format(", %d bytes/block", bytes / ROUNDS);
+			System.out.println(String.format("%-20s %8.0f ns/block, %5.2f%% of a core", name, perBlock,
+					perBlock / realTime * 100) + alloc);
+		}
+	}
+
+	private static void next(Equalizer equalizer, float[] noise, float[] block, int i) {
+		System.arraycopy(noise, (i % 16) * block.length, block, 0, block.length);
+		equalizer.process(block, BLOCK);
+		sink += block[i % block.length];
+	}
+
+	private static long allocatedBytes() {
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,114 @@
+package audio;
+
+import java.util.Arrays;
+
+/**
+ * A radix-2 fast Fourier transform of one fixed size, made once and reused
+ * for every frame.
+ *
+ * The sines, cosines and bit reversed order are worked out when the FFT
+ * is made, so a transform only does arithmetic on the arrays it is given.
+ *
+ * Properties:
+ * size:
+ * How many samples a transform takes, a power of two.
+ *
+ * cos, sin:
+ * The twiddle factors, cos(2 pi k / size) and -sin(2 pi k / size).
+ *
+ * reversed:
+ * Where each sample goes before the butterflies, its index with the bits
+ * reversed.
+ */
+public class FFT {
+
+	private final int size;
+	private final double[] cos;
+	private final double[] sin;
+	private final int[] reversed;
+
+	/**
+	 * Creates an FFT
+	 *
+	 * @param size, how many samples a transform takes, a power of two
+	 */
+	public FFT(int size) {
+		if (size < 2 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("FFT size has to be a power of two: " + size);
+		}
+		this.size = size;
+		this.cos = new double[size / 2];
+		this.sin = new double[size / 2];
+		for (int k = 0; k < size / 2; k++) {
+			cos[k] = Math.cos(2 * Math.PI * k / size);
+			sin[k] = -Math.sin(2 * Math.PI * k / size);
+		}
+		this.reversed = new int[size];
+		int bits = Integer.numberOfTrailingZeros(size);
+		for (int i = 0; i < size; i++) {
+			reversed[i] = Integer.reverse(i) >>> (32 - bits);
+		}
+	}
+
+	/**
+	 * Transforms in place
+	 *
+	 * @param real, the real parts, replaced by the real parts of the result
+	 * @param imag, the imaginary parts, replaced by the imaginary parts of
+	 * the result
+	 */
+	public void transform(double[] real, double[] imag) {
+		for (int i = 0; i < size; i++) {
+			int j = reversed[i];
+			if (j > i) {
+				double t = real[i];
+				real[i] = real[j];
+				real[j] = t;
+				t = imag[i];
+				imag[i] = imag[j];
+				imag[j] = t;
+			}
+		}
+		for (int half = 1; half < size; half <<= 1) {
+			int step = size / (half * 2);
+			for (int start = 0; start < size; start += half * 2) {
+				for (int k = 0; k < half; k++) {
+					double wr = cos[k * step];
+					double wi = sin[k * step];
+					int a = start + k;
+					int b = a + half;
+					double tr = wr * real[b] - wi * imag[b];
+					double ti = wr * imag[b] + wi * real[b];
+					real[b] = real[a] - tr;
+					imag[b] = imag[a] - ti;
+					real[a] += tr;
+					imag[a] += ti;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Transforms real samples and works out the power in each frequency bin
+	 *
+	 * @param samples, the samples, which are overwritten
+	 * @param scratch, an array of size doubles to use for the imaginary parts
+	 * @param power, filled with the squared magnitude of bins 0 to size / 2
+	 */
+	public void power(double[] samples, double[] scratch, double[] power) {
+		Arrays.fill(scratch, 0, size, 0);
+		transform(samples, scratch);
+		for (int k = 0; k <= size / 2; k++) {
+			power[k] = samples[k] * samples[k] + scratch[k] * scratch[k];
+		}
+	}
+
+	/**
+	 * Returns how many samples a transform takes
+	 *
+	 * @return the size
+	 */
+	public int getSize() {
+		return size;
+	}
+}
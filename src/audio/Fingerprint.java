@@ -0,0 +1,106 @@
+package audio;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * A compact summary of what a recording sounds like, made by a
+ * Fingerprinter, that two copies of the same recording share even when
+ * they were encoded differently.
+ *
+ * It is a list of hashes, each made from a pair of spectral peaks (the two
+ * frequencies and the time between them), and the frame the first peak of
+ * each pair is at. Two recordings are the same when many of their hashes
+ * match with the same difference in time.
+ *
+ * Properties:
+ * hashes:
+ * The hashes, in the order their first peaks happen.
+ *
+ * times:
+ * The frame the first peak of each hash is at.
+ */
+public class Fingerprint {
+
+	private final int[] hashes;
+	private final int[] times;
+
+	/**
+	 * Creates a Fingerprint
+	 *
+	 * @param hashes, the hashes
+	 * @param times, the frame of each hash
+	 */
+	public Fingerprint(int[] hashes, int[] times) {
+		this.hashes = hashes;
+		this.times = times;
+	}
+
+	/**
+	 * Returns the hashes
+	 *
+	 * @return the hashes
+	 */
+	public int[] getHashes() {
+		return hashes;
+	}
+
+	/**
+	 * Returns the frame the first peak of each hash is at
+	 *
+	 * @return the times
+	 */
+	public int[] getTimes() {
+		return times;
+	}
+
+	/**
+	 * Returns how many hashes there are
+	 *
+	 * @return the number of hashes
+	 */
+	public int size() {
+		return hashes.length;
+	}
+
+	/**
+	 * Returns the Fingerprint as one line for an AnalysisStore, each hash and
+	 * time packed into 6 bytes and the whole thing in Base64
+	 *
+	 * @return the record
+	 */
+	public String toRecord() {
+		ByteBuffer buffer = ByteBuffer.allocate(hashes.length * 6);
+		for (int i = 0; i < hashes.length; i++) {
+			buffer.putInt(hashes[i]);
+			buffer.putShort((short) Math.min(times[i], 0xFFFF));
+		}
+		return Base64.getEncoder().encodeToString(buffer.array());
+	}
+
+	/**
+	 * Reads a Fingerprint back from a record made by toRecord
+	 *
+	 * @param record, the record
+	 * @return the Fingerprint, null if the record isn't one
+	 */
+	public static Fingerprint fromRecord(String record) {
+		byte[] bytes;
+		try {
+			bytes = Base64.getDecoder().decode(record);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		if (bytes.length % 6 != 0) {
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		int[] hashes = new int[bytes.length / 6];
+		int[] times = new int[hashes.length];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = buffer.getInt();
+			times[i] = buffer.getShort() & 0xFFFF;
+		}
+		return new Fingerprint(hashes, times);
+	}
+}
@@ -0,0 +1,401 @@
+package audio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Finds recordings that are the same as each other from their Fingerprints,
+ * without comparing every pair of tracks.
+ *
+ * It is an inverted index: for every hash, the list of tracks that have it
+ * and the frame it is at in each. To find matches for a Fingerprint, the
+ * index looks up the tracks under each of its hashes and counts, for each
+ * track, how many hashes line up at the same difference in time. A track
+ * that has many hashes lined up at one difference is the same recording,
+ * maybe starting a little earlier or later. Most tracks never come up at
+ * all, so a lookup costs about the same with 100 tracks as with 100,000.
+ *
+ * The lists are kept in plain int arrays instead of collections of
+ * objects: every entry is a track, a time and the index of the next entry
+ * with the same hash, and an open addressing table gives the first entry
+ * for each hash. That is 12 bytes an entry, a few KB a track.
+ *
+ * Removed tracks are only marked, their entries are skipped from then on.
+ * Any number of threads can look tracks up at once, adding and removing
+ * waits for them.
+ *
+ * Properties:
+ * keys, heads:
+ * The open addressing table from a hash to its first entry, -1 for none.
+ *
+ * entryTrack, entryTime, entryNext, entryCount:
+ * The entries.
+ *
+ * paths, ids, sizes, removed:
+ * Each track's audio path, the id for each path, how many hashes each
+ * track has and which tracks have been removed.
+ *
+ * lock:
+ * Lets lookups share the index while adding and removing have it alone.
+ */
+public class FingerprintIndex {
+
+	/**
+	 * How many hashes have to line up for two tracks to be the same
+	 */
+	private static final int MIN_VOTES = 8;
+	/**
+	 * The share of the smaller track's hashes that have to line up
+	 */
+	private static final double MIN_SCORE = 0.2;
+	private static final int EMPTY = -1;
+
+	/**
+	 * A track that matched a Fingerprint
+	 */
+	public static class Match {
+
+		private final String audioPath;
+		private final int votes;
+		private final double score;
+
+		private Match(String audioPath, int votes, double score) {
+			this.audioPath = audioPath;
+			this.votes = votes;
+			this.score = score;
+		}
+
+		/**
+		 * Returns the matching track
+		 *
+		 * @return the path of its audio
+		 */
+		public String getAudioPath() {
+			return audioPath;
+		}
+
+		/**
+		 * Returns how many hashes lined up
+		 *
+		 * @return the number of hashes
+		 */
+		public int getVotes() {
+			return votes;
+		}
+
+		/**
+		 * Returns the share of the smaller of the two tracks' hashes that
+		 * lined up
+		 *
+		 * @return the score, from 0 to 1
+		 */
+		public double getScore() {
+			return score;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s (%d hashes, %.0f%%)", audioPath, votes, score * 100);
+		}
+	}
+
+	private int[] keys;
+	private int[] heads;
+	private int keyCount;
+	private int[] entryTrack;
+	private int[] entryTime;
+	private int[] entryNext;
+	private int entryCount;
+	private final List<String> paths;
+	private final Map<String, Integer> ids;
+	private int[] sizes;
+	private boolean[] removed;
+	private final ReadWriteLock lock;
+
+	/**
+	 * Creates an empty FingerprintIndex
+	 */
+	public FingerprintIndex() {
+		this.keys = new int[1024];
+		this.heads = new int[1024];
+		Arrays.fill(heads, EMPTY);
+		this.keyCount = 0;
+		this.entryTrack = new int[4096];
+		this.entryTime = new int[4096];
+		this.entryNext = new int[4096];
+		this.entryCount = 0;
+		this.paths = new ArrayList<>();
+		this.ids = new HashMap<>();
+		this.sizes = new int[64];
+		this.removed = new boolean[64];
+		this.lock = new ReentrantReadWriteLock();
+	}
+
+	/**
+	 * Adds a track. A track that is already in the index is left as it is.
+	 *
+	 * @param audioPath, the path of the track's audio
+	 * @param fingerprint, its Fingerprint
+	 */
+	public void add(String audioPath, Fingerprint fingerprint) {
+		lock.writeLock().lock();
+		try {
+			insert(audioPath, fingerprint);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a track after finding the tracks already in the index that are
+	 * the same recording, in one step so two copies added at the same time
+	 * still find each other
+	 *
+	 * @param audioPath, the path of the track's audio
+	 * @param fingerprint, its Fingerprint
+	 * @return the tracks it matched, best match first
+	 */
+	public List<Match> addAndMatch(String audioPath, Fingerprint fingerprint) {
+		lock.writeLock().lock();
+		try {
+			List<Match> matches = lookUp(fingerprint, ids.get(audioPath));
+			insert(audioPath, fingerprint);
+			return matches;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void insert(String audioPath, Fingerprint fingerprint) {
+		if (ids.containsKey(audioPath)) {
+			return;
+		}
+		int track = paths.size();
+		paths.add(audioPath);
+		ids.put(audioPath, track);
+		if (track == sizes.length) {
+			sizes = Arrays.copyOf(sizes, track * 2);
+			removed = Arrays.copyOf(removed, track * 2);
+		}
+		sizes[track] = fingerprint.size();
+		int[] hashes = fingerprint.getHashes();
+		int[] times = fingerprint.getTimes();
+		for (int i = 0; i < hashes.length; i++) {
+			int slot = slot(hashes[i], true);
+			if (entryCount == entryTrack.length) {
+				int grown = entryCount * 2;
+				entryTrack = Arrays.copyOf(entryTrack, grown);
+				entryTime = Arrays.copyOf(entryTime, grown);
+				entryNext = Arrays.copyOf(entryNext, grown);
+			}
+			entryTrack[entryCount] = track;
+			entryTime[entryCount] = times[i];
+			entryNext[entryCount] = heads[slot];
+			heads[slot] = entryCount;
+			entryCount += 1;
+		}
+	}
+
+	/**
+	 * Removes a track, so it doesn't match anything anymore
+	 *
+	 * @param audioPath, the path of the track's audio
+	 */
+	public void remove(String audioPath) {
+		lock.writeLock().lock();
+		try {
+			Integer track = ids.remove(audioPath);
+			if (track != null) {
+				removed[track] = true;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns every track in the index that is the same recording as a
+	 * Fingerprint, best match first
+	 *
+	 * @param fingerprint, the Fingerprint to look for
+	 * @param exclude, the path of a track to leave out, like the track the
+	 * Fingerprint is from, or null
+	 * @return the matches
+	 */
+	public List<Match> match(Fingerprint fingerprint, String exclude) {
+		lock.readLock().lock();
+		try {
+			return lookUp(fingerprint, exclude == null ? null : ids.get(exclude));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Counts, for every track, how many hashes line up at each difference in
+	 * time. Each hash found is one long, the track above the difference, so
+	 * sorting them puts the votes for each track and difference together.
+	 */
+	private List<Match> lookUp(Fingerprint fingerprint, Integer excluded) {
+		int[] hashes = fingerprint.getHashes();
+		int[] times = fingerprint.getTimes();
+		long[] votes = new long[Math.max(16, hashes.length * 4)];
+		int voteCount = 0;
+		for (int i = 0; i < hashes.length; i++) {
+			int slot = slot(hashes[i], false);
+			if (slot < 0) {
+				continue;
+			}
+			for (int e = heads[slot]; e != EMPTY; e = entryNext[e]) {
+				int track = entryTrack[e];
+				if (removed[track] || (excluded != null && track == excluded)) {
+					continue;
+				}
+				if (voteCount == votes.length) {
+					votes = Arrays.copyOf(votes, voteCount * 2);
+				}
+				votes[voteCount] = ((long) track << 32) | ((entryTime[e] - times[i]) & 0xFFFFFFFFL);
+				voteCount += 1;
+			}
+		}
+		Arrays.sort(votes, 0, voteCount);
+		List<Match> matches = new ArrayList<>();
+		int best = 0;
+		for (int start = 0, end; start < voteCount; start = end) {
+			end = start + 1;
+			while (end < voteCount && votes[end] == votes[start]) {
+				end += 1;
+			}
+			int track = (int) (votes[start] >>> 32);
+			best = Math.max(best, end - start);
+			if (end == voteCount || (int) (votes[end] >>> 32) != track) {
+				int smaller = Math.max(1, Math.min(sizes[track], fingerprint.size()));
+				double score = Math.min(1, best / (double) smaller);
+				if (best >= MIN_VOTES && score >= MIN_SCORE) {
+					matches.add(new Match(paths.get(track), best, score));
+				}
+				best = 0;
+			}
+		}
+		matches.sort((a, b) -> Integer.compare(b.votes, a.votes));
+		return matches;
+	}
+
+	/**
+	 * Finds every pair of tracks in the index that are the same recording,
+	 * looking up all the tracks in parallel
+	 *
+	 * @param fingerprints, the Fingerprint of each track, by audio path
+	 * @return each pair, as the two audio paths in the order they were
+	 * added, the earlier one first
+	 */
+	public List<String[]> findDuplicates(Map<String, Fingerprint> fingerprints) {
+		List<String> tracks;
+		lock.readLock().lock();
+		try {
+			tracks = new ArrayList<>(ids.keySet());
+		} finally {
+			lock.readLock().unlock();
+		}
+		return tracks.parallelStream().flatMap(track -> {
+			Fingerprint fingerprint = fingerprints.get(track);
+			if (fingerprint == null) {
+				return Stream.<String[]>empty();
+			}
+			int self = id(track);
+			return match(fingerprint, track).stream()
+					.filter(match -> id(match.getAudioPath()) < self)
+					.map(match -> new String[] {match.getAudioPath(), track});
+		}).collect(Collectors.toList());
+	}
+
+	private int id(String audioPath) {
+		lock.readLock().lock();
+		try {
+			Integer id = ids.get(audioPath);
+			return id == null ? Integer.MAX_VALUE : id;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns how many tracks are in the index
+	 *
+	 * @return the number of tracks
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return ids.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns how many entries the index holds, counting removed tracks'
+	 *
+	 * @return the number of entries
+	 */
+	public int getEntries() {
+		lock.readLock().lock();
+		try {
+			return entryCount;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds the slot of a hash in the table, adding it if asked to
+	 *
+	 * @return the slot, -1 if the hash isn't there and add is false
+	 */
+	private int slot(int hash, boolean add) {
+		int mask = keys.length - 1;
+		int slot = (hash * 0x9E3779B1) & mask;
+		while (heads[slot] != EMPTY) {
+			if (keys[slot] == hash) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (!add) {
+			return -1;
+		}
+		if ((keyCount + 1) * 4 > keys.length * 3) {
+			grow();
+			return slot(hash, true);
+		}
+		keys[slot] = hash;
+		keyCount += 1;
+		return slot;
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		int[] oldHeads = heads;
+		keys = new int[oldKeys.length * 2];
+		heads = new int[oldKeys.length * 2];
+		Arrays.fill(heads, EMPTY);
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldHeads[i] != EMPTY) {
+				int slot = (oldKeys[i] * 0x9E3779B1) & mask;
+				while (heads[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				heads[slot] = oldHeads[i];
+			}
+		}
+	}
+}
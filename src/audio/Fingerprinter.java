@@ -0,0 +1,285 @@
+package audio;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Makes the Fingerprint of a recording from its samples.
+ *
+ * The samples are mixed down to mono and brought down to 11025 Hz by
+ * averaging, whatever rate the track is at, so the same recording lands in
+ * the same frequency bins at any rate. That keeps the frequencies that
+ * tell recordings apart and makes every step after it about four times
+ * cheaper. Every 512 samples, the last 1024 are
+ * windowed and transformed, and the loudest bin in each of six frequency
+ * bands is a peak if it is louder than the average of the six. Each peak
+ * is paired with the next few peaks that come up to 31 frames after it,
+ * and each pair becomes a hash of the two bins and the frames between them.
+ *
+ * Only MAX_HASHES hashes are kept, the ones whose bits mix to the lowest
+ * numbers, so two copies of a recording keep the same ones no matter how
+ * long the track is. That is plenty to match on, and keeps a track to
+ * about 3 KB in the FingerprintIndex, small enough for a library of
+ * 100,000 tracks.
+ *
+ * Like LoudnessAnalyzer, samples are handed over a block at a time and one
+ * Fingerprinter is reused for track after track, so its buffers are only
+ * allocated once.
+ *
+ * Properties:
+ * fft, window, frame, scratch, power:
+ * The transform, the Hann window, and the arrays a frame is worked on in.
+ *
+ * ring, ringPos, filled:
+ * The last FRAME_SIZE mono samples and where the next one goes.
+ *
+ * step, next, position, channels, sum, summed:
+ * How many samples of the track make one at 11025 Hz, the position the
+ * next one is due at and has been reached, and the average in progress.
+ *
+ * peakBins, peakFrames, peakCount, frameCount:
+ * Every peak found so far, and how many frames there have been.
+ *
+ * hashes, times, hashCount:
+ * The hashes made in finish, reused from track to track.
+ */
+public class Fingerprinter {
+
+	private static final int TARGET_RATE = 11025;
+	private static final int FRAME_SIZE = 1024;
+	private static final int HOP = 512;
+	private static final int[] BANDS = {1, 10, 20, 40, 80, 160, 512};
+	private static final int FAN_OUT = 3;
+	private static final int MAX_DELTA = 31;
+	private static final int MAX_HASHES = 256;
+	private static final int BLOCK_FRAMES = 4096;
+
+	private final FFT fft;
+	private final double[] window;
+	private final double[] frame;
+	private final double[] scratch;
+	private final double[] power;
+	private final float[] ring;
+	private int ringPos;
+	private int filled;
+	private double step;
+	private double next;
+	private long position;
+	private int channels;
+	private double sum;
+	private int summed;
+	private int[] peakBins;
+	private int[] peakFrames;
+	private int peakCount;
+	private int frameCount;
+	private int[] hashes;
+	private int[] times;
+	private int hashCount;
+	private float[] samples;
+
+	/**
+	 * Creates a Fingerprinter
+	 */
+	public Fingerprinter() {
+		this.fft = new FFT(FRAME_SIZE);
+		this.window = new double[FRAME_SIZE];
+		for (int i = 0; i < FRAME_SIZE; i++) {
+			window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (FRAME_SIZE - 1));
+		}
+		this.frame = new double[FRAME_SIZE];
+		this.scratch = new double[FRAME_SIZE];
+		this.power = new double[FRAME_SIZE / 2 + 1];
+		this.ring = new float[FRAME_SIZE];
+		this.peakBins = new int[4096];
+		this.peakFrames = new int[4096];
+		this.hashes = new int[4096];
+		this.times = new int[4096];
+		this.samples = new float[BLOCK_FRAMES * 2];
+	}
+
+	/**
+	 * Fingerprints a whole track, reading it to the end
+	 *
+	 * @param reader, the track
+	 * @return the track's Fingerprint
+	 * @throws IOException if the track can't be read
+	 */
+	public Fingerprint fingerprint(PcmReader reader) throws IOException {
+		if (samples.length < BLOCK_FRAMES * reader.getChannels()) {
+			samples = new float[BLOCK_FRAMES * reader.getChannels()];
+		}
+		start(reader.getSampleRate(), reader.getChannels());
+		int frames;
+		while ((frames = reader.read(samples)) != -1) {
+			process(samples, frames);
+		}
+		return finish();
+	}
+
+	/**
+	 * Gets ready to fingerprint a new track
+	 *
+	 * @param rate, the track's sample rate
+	 * @param channels, how many channels the track has
+	 */
+	public void start(int rate, int channels) {
+		this.step = Math.max(1, rate / (double) TARGET_RATE);
+		this.next = step;
+		this.position = 0;
+		this.channels = channels;
+		this.sum = 0;
+		this.summed = 0;
+		this.ringPos = 0;
+		this.filled = 0;
+		this.peakCount = 0;
+		this.frameCount = 0;
+		this.hashCount = 0;
+	}
+
+	/**
+	 * Fingerprints the next block of the track
+	 *
+	 * @param block, samples between -1 and 1, channels interleaved
+	 * @param frames, how many frames of block to use
+	 */
+	public void process(float[] block, int frames) {
+		int end = frames * channels;
+		for (int i = 0; i < end; i += channels) {
+			double mono = 0;
+			for (int c = 0; c < channels; c++) {
+				mono += block[i + c];
+			}
+			sum += mono / channels;
+			summed += 1;
+			position += 1;
+			if (position < next) {
+				continue;
+			}
+			next += step;
+			ring[ringPos] = (float) (sum / summed);
+			ringPos = (ringPos + 1) % FRAME_SIZE;
+			sum = 0;
+			summed = 0;
+			filled += 1;
+			if (filled >= FRAME_SIZE && (filled - FRAME_SIZE) % HOP == 0) {
+				analyzeFrame();
+			}
+		}
+	}
+
+	/**
+	 * Finds the peaks of the FRAME_SIZE samples in the ring
+	 */
+	private void analyzeFrame() {
+		for (int i = 0; i < FRAME_SIZE; i++) {
+			frame[i] = ring[(ringPos + i) % FRAME_SIZE] * window[i];
+		}
+		fft.power(frame, scratch, power);
+		int bands = BANDS.length - 1;
+		double total = 0;
+		int first = peakCount;
+		for (int b = 0; b < bands; b++) {
+			int best = BANDS[b];
+			for (int k = BANDS[b] + 1; k < BANDS[b + 1]; k++) {
+				if (power[k] > power[best]) {
+					best = k;
+				}
+			}
+			total += power[best];
+			addPeak(best);
+		}
+		// keep only the peaks louder than the average peak of this frame
+		double average = total / bands;
+		int kept = first;
+		for (int p = first; p < peakCount; p++) {
+			if (power[peakBins[p]] > average && power[peakBins[p]] > 1e-10) {
+				peakBins[kept] = peakBins[p];
+				peakFrames[kept] = peakFrames[p];
+				kept += 1;
+			}
+		}
+		peakCount = kept;
+		frameCount += 1;
+	}
+
+	private void addPeak(int bin) {
+		if (peakCount == peakBins.length) {
+			peakBins = Arrays.copyOf(peakBins, peakBins.length * 2);
+			peakFrames = Arrays.copyOf(peakFrames, peakFrames.length * 2);
+		}
+		peakBins[peakCount] = bin;
+		peakFrames[peakCount] = frameCount;
+		peakCount += 1;
+	}
+
+	/**
+	 * Pairs up the peaks and makes the Fingerprint
+	 *
+	 * @return the track's Fingerprint
+	 */
+	public Fingerprint finish() {
+		for (int a = 0; a < peakCount; a++) {
+			int paired = 0;
+			for (int b = a + 1; b < peakCount && paired < FAN_OUT; b++) {
+				int delta = peakFrames[b] - peakFrames[a];
+				if (delta == 0) {
+					continue;
+				}
+				if (delta > MAX_DELTA) {
+					break;
+				}
+				paired += 1;
+				addHash(hash(peakBins[a], peakBins[b], delta), peakFrames[a]);
+			}
+		}
+		if (hashCount <= MAX_HASHES) {
+			return new Fingerprint(Arrays.copyOf(hashes, hashCount), Arrays.copyOf(times, hashCount));
+		}
+		// keep the hashes that mix lowest, then put them back in time order
+		long[] order = new long[hashCount];
+		for (int i = 0; i < hashCount; i++) {
+			order[i] = (long) mix(hashes[i]) << 32 | i;
+		}
+		Arrays.sort(order);
+		int[] kept = new int[MAX_HASHES];
+		for (int i = 0; i < MAX_HASHES; i++) {
+			kept[i] = (int) order[i];
+		}
+		Arrays.sort(kept);
+		int[] keptHashes = new int[MAX_HASHES];
+		int[] keptTimes = new int[MAX_HASHES];
+		for (int i = 0; i < MAX_HASHES; i++) {
+			keptHashes[i] = hashes[kept[i]];
+			keptTimes[i] = times[kept[i]];
+		}
+		return new Fingerprint(keptHashes, keptTimes);
+	}
+
+	/**
+	 * Packs a pair of peaks into 23 bits, 9 for each bin and 5 for the time
+	 * between them
+	 */
+	static int hash(int bin1, int bin2, int delta) {
+		return (bin1 << 14) | (bin2 << 5) | delta;
+	}
+
+	/**
+	 * Mixes the bits of a hash, so the hashes that are kept are spread over
+	 * every frequency
+	 *
+	 * @return the mixed bits, from 0 to 2^31 - 1
+	 */
+	private static int mix(int hash) {
+		return (hash * 0x9E3779B1) >>> 1;
+	}
+
+	private void addHash(int hash, int time) {
+		if (hashCount == hashes.length) {
+			hashes = Arrays.copyOf(hashes, hashes.length * 2);
+			times = Arrays.copyOf(times, times.length * 2);
+		}
+		hashes[hashCount] = hash;
+		times[hashCount] = time;
+		hashCount += 1;
+	}
+}
@@ -0,0 +1,111 @@
+package audio;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads the AudioHeader of every track in the library, saving them so each
+ * file's header is only read once.
+ *
+ * Headers already in the AnalysisStore are used as they are. The rest are
+ * read in parallel, which is fast even for thousands of tracks since only
+ * a few KB of each file is read, and saved with one write. This is quick
+ * enough to do while the library loads, so every Song has its length
+ * before anything is shown.
+ *
+ * Properties:
+ * store:
+ * Where the headers are saved.
+ */
+public class HeaderScanner {
+
+	private final AnalysisStore store;
+
+	/**
+	 * Creates a HeaderScanner
+	 *
+	 * @param fileName, the file headers are saved in
+	 */
+	public HeaderScanner(String fileName) {
+		this.store = new AnalysisStore(fileName);
+	}
+
+	/**
+	 * Returns the AudioHeader of every track, reading the ones that haven't
+	 * been read yet in parallel
+	 *
+	 * @param audioPaths, the paths of the tracks
+	 * @return the AudioHeader of each path, leaving out files that couldn't
+	 * be read
+	 */
+	public Map<String, AudioHeader> scan(Collection<String> audioPaths) {
+		List<String> todo = new ArrayList<>();
+		for (String audioPath : audioPaths) {
+			if (!store.contains(audioPath)) {
+				todo.add(audioPath);
+			}
+		}
+		List<String> records = todo.parallelStream().map(audioPath -> {
+			try {
+				return AudioHeader.scan(Paths.get(audioPath)).toRecord();
+			} catch (IOException e) {
+				return AnalysisStore.UNREADABLE;
+			}
+		}).collect(Collectors.toList());
+		store.putAll(todo, records);
+		Map<String, AudioHeader> headers = new HashMap<>();
+		for (String audioPath : audioPaths) {
+			AudioHeader header = get(audioPath);
+			if (header != null) {
+				headers.put(audioPath, header);
+			}
+		}
+		return headers;
+	}
+
+	/**
+	 * Returns the saved AudioHeader of a track
+	 *
+	 * @param audioPath, the path of the track
+	 * @return the AudioHeader, null if it hasn't been read or couldn't be
+	 */
+	public AudioHeader get(String audioPath) {
+		String record = store.get(audioPath);
+		return record == null ? null : AudioHeader.fromRecord(record);
+	}
+
+	/**
+	 * Reads the header of every audio file under Audios, or the folder
+	 * given, and prints how fast it went
+	 *
+	 * @param args, optionally the folder to look in and the file to save
+	 * headers in
+	 */
+	public static void main(String[] args) throws IOException {
+		Path root = Paths.get(args.length > 0 ? args[0] : "Audios");
+		String fileName = args.length > 1 ? args[1] : "headers.txt";
+		List<String> tracks;
+		try (Stream<Path> files = Files.walk(root)) {
+			tracks = files.filter(p -> p.toString().endsWith(".wav") || p.toString().endsWith(".mp3"))
+					.map(Path::toString).collect(Collectors.toList());
+		}
+		long start = System.nanoTime();
+		Map<String, AudioHeader> headers = new HeaderScanner(fileName).scan(tracks);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long total = 0;
+		for (AudioHeader header : headers.values()) {
+			total += header.getDuration();
+		}
+		System.out.println(String.format("%d tracks, %d headers in %.3f s, %d minutes of audio", tracks.size(),
+				headers.size(), seconds, total / 60000));
+	}
+}
@@ -0,0 +1,364 @@
+package audio;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measures the loudness of every track in the library, fingerprints it and
+ * finds the silence at its start and end, using every core.
+ *
+ * The list of tracks is split in half over and over by a fork/join pool
+ * until each task has only a few tracks, so idle threads steal work from
+ * busy ones and every core stays busy until the last track is done. Each
+ * thread keeps one LoudnessAnalyzer, one Fingerprinter and one
+ * SilenceDetector and reuses them for every track, and each track is read
+ * once for all three. Results are saved in three AnalysisStores a few at a
+ * time, and tracks that already have every result are skipped, so adding
+ * songs to the library only measures the new ones.
+ *
+ * Every fingerprint goes into a FingerprintIndex. A new track is looked up
+ * in it first, and if it is the same recording as a track already there,
+ * the duplicate listener is told.
+ *
+ * Only real WAV files can be measured. Files that can't be read, like MP3
+ * data saved with a .wav name, are saved as unreadable and play at the
+ * volume they are.
+ *
+ * Properties:
+ * store, fingerprints, trims:
+ * Where the loudness, the fingerprints and the Trims are saved.
+ *
+ * index:
+ * Every readable track's fingerprint, to look up duplicates in.
+ *
+ * duplicateListener:
+ * Told the original and the duplicate when a new track is a duplicate.
+ *
+ * pool:
+ * The fork/join pool the tracks are measured on.
+ *
+ * analyzers, fingerprinters, detectors:
+ * The LoudnessAnalyzer, Fingerprinter and SilenceDetector each thread
+ * reuses.
+ *
+ * measured:
+ * How many tracks have been measured, counting ones that couldn't be read.
+ */
+public class LibraryAnalyzer {
+
+	/**
+	 * How many tracks a task measures itself instead of splitting further
+	 */
+	private static final int TRACKS_PER_TASK = 4;
+	private static final int BLOCK_FRAMES = 4096;
+
+	private final AnalysisStore store;
+	private final AnalysisStore fingerprints;
+	private final AnalysisStore trims;
+	private final FingerprintIndex index;
+	private volatile BiConsumer<String, String> duplicateListener;
+	private final ForkJoinPool pool;
+	private final ThreadLocal<LoudnessAnalyzer> analyzers;
+	private final ThreadLocal<Fingerprinter> fingerprinters;
+	private final ThreadLocal<SilenceDetector> detectors;
+	private final AtomicInteger measured;
+
+	/**
+	 * Creates a LibraryAnalyzer with a thread for every core, putting every
+	 * fingerprint already saved into the index
+	 *
+	 * @param fileName, the file loudness is saved in
+	 * @param fingerprintFileName, the file fingerprints are saved in
+	 * @param trimFileName, the file Trims are saved in
+	 */
+	public LibraryAnalyzer(String fileName, String fingerprintFileName, String trimFileName) {
+		this.store = new AnalysisStore(fileName);
+		this.fingerprints = new AnalysisStore(fingerprintFileName);
+		this.trims = new AnalysisStore(trimFileName);
+		this.index = new FingerprintIndex();
+		fingerprints.forEach((audioPath, record) -> {
+			Fingerprint fingerprint = Fingerprint.fromRecord(record);
+			if (fingerprint != null && !AnalysisStore.UNREADABLE.equals(record)) {
+				index.add(audioPath, fingerprint);
+			}
+		});
+		this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("analyzer-" + thread.getPoolIndex());
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
+		this.analyzers = ThreadLocal.withInitial(LoudnessAnalyzer::new);
+		this.fingerprinters = ThreadLocal.withInitial(Fingerprinter::new);
+		this.detectors = ThreadLocal.withInitial(SilenceDetector::new);
+		this.measured = new AtomicInteger();
+	}
+
+	/**
+	 * Measures every track that hasn't been measured yet and waits for them
+	 *
+	 * @param audioPaths, the paths of the tracks
+	 * @return how many tracks were measured
+	 */
+	public int analyze(Collection<String> audioPaths) {
+		List<String> todo = todo(audioPaths);
+		if (!todo.isEmpty()) {
+			pool.invoke(new Measure(todo, 0, todo.size()));
+		}
+		return todo.size();
+	}
+
+	/**
+	 * Measures every track that hasn't been measured yet without waiting,
+	 * for when the library loads or songs are added
+	 *
+	 * @param audioPaths, the paths of the tracks
+	 */
+	public void analyzeInBackground(Collection<String> audioPaths) {
+		List<String> todo = todo(audioPaths);
+		if (!todo.isEmpty()) {
+			pool.execute(new Measure(todo, 0, todo.size()));
+		}
+	}
+
+	private List<String> todo(Collection<String> audioPaths) {
+		List<String> todo = new ArrayList<>();
+		for (String audioPath : audioPaths) {
+			if (!store.contains(audioPath) || !fingerprints.contains(audioPath) || !trims.contains(audioPath)) {
+				todo.add(audioPath);
+			}
+		}
+		return todo;
+	}
+
+	/**
+	 * Returns the measured Loudness of a track
+	 *
+	 * @param audioPath, the path of the track
+	 * @return the Loudness, null if it hasn't been measured or couldn't be
+	 */
+	public Loudness getLoudness(String audioPath) {
+		String record = store.get(audioPath);
+		return record == null ? null : Loudness.fromRecord(record);
+	}
+
+	/**
+	 * Returns where the sound in a track starts and ends
+	 *
+	 * @param audioPath, the path of the track
+	 * @return the Trim, null if the track hasn't been looked through or
+	 * couldn't be
+	 */
+	public Trim getTrim(String audioPath) {
+		String record = trims.get(audioPath);
+		return record == null ? null : Trim.fromRecord(record);
+	}
+
+	/**
+	 * Returns what to multiply the volume by when a track plays, so every
+	 * track plays at about the same loudness
+	 *
+	 * @param audioPath, the path of the track
+	 * @return the volume factor, 1 if the track hasn't been measured
+	 */
+	public double getVolume(String audioPath) {
+		Loudness loudness = getLoudness(audioPath);
+		return loudness == null ? 1 : loudness.getVolume();
+	}
+
+	/**
+	 * Sets what to tell when a newly measured track is the same recording as
+	 * a track that was already measured
+	 *
+	 * @param listener, given the audio path of the track that was already
+	 * there and then of the new one. It is called on an analyzer thread.
+	 */
+	public void setDuplicateListener(BiConsumer<String, String> listener) {
+		this.duplicateListener = listener;
+	}
+
+	/**
+	 * Finds every pair of tracks that are the same recording, looking up
+	 * every fingerprint in the index in parallel
+	 *
+	 * @return each pair of audio paths, the one measured first first
+	 */
+	public List<String[]> findDuplicates() {
+		Map<String, Fingerprint> all = new HashMap<>();
+		fingerprints.forEach((audioPath, record) -> {
+			Fingerprint fingerprint = Fingerprint.fromRecord(record);
+			if (fingerprint != null && !AnalysisStore.UNREADABLE.equals(record)) {
+				all.put(audioPath, fingerprint);
+			}
+		});
+		return index.findDuplicates(all);
+	}
+
+	/**
+	 * Takes a track out of the index, for when its audio is deleted
+	 *
+	 * @param audioPath, the path of the track
+	 */
+	public void remove(String audioPath) {
+		index.remove(AnalysisStore.key(audioPath));
+	}
+
+	/**
+	 * Returns how many tracks have been measured since this was created
+	 *
+	 * @return the number of tracks
+	 */
+	public int getMeasured() {
+		return measured.get();
+	}
+
+	/**
+	 * Measures part of a list of tracks, splitting it in half until it is
+	 * small enough to measure
+	 */
+	private class Measure extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<String> audioPaths;
+		private final int from;
+		private final int to;
+
+		private Measure(List<String> audioPaths, int from, int to) {
+			this.audioPaths = audioPaths;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > TRACKS_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Measure(audioPaths, from, middle), new Measure(audioPaths, middle, to));
+				return;
+			}
+			LoudnessAnalyzer analyzer = analyzers.get();
+			Fingerprinter fingerprinter = fingerprinters.get();
+			SilenceDetector detector = detectors.get();
+			List<String> done = audioPaths.subList(from, to);
+			List<String> results = new ArrayList<>(done.size());
+			List<String> prints = new ArrayList<>(done.size());
+			List<String> cuts = new ArrayList<>(done.size());
+			for (String audioPath : done) {
+				// tracks measured before Trims were saved are already in the index
+				boolean indexed = fingerprints.contains(audioPath);
+				Fingerprint fingerprint = null;
+				try (PcmReader reader = new PcmReader(Paths.get(audioPath))) {
+					fingerprint = read(reader, analyzer, fingerprinter, detector, results, cuts);
+					prints.add(fingerprint.toRecord());
+				} catch (IOException e) {
+					results.add(AnalysisStore.UNREADABLE);
+					prints.add(AnalysisStore.UNREADABLE);
+					cuts.add(AnalysisStore.UNREADABLE);
+				}
+				measured.incrementAndGet();
+				if (fingerprint != null && !indexed) {
+					lookUp(AnalysisStore.key(audioPath), fingerprint);
+				}
+			}
+			store.putAll(done, results);
+			fingerprints.putAll(done, prints);
+			trims.putAll(done, cuts);
+		}
+	}
+
+	/**
+	 * Reads a track once, handing every block to the LoudnessAnalyzer, the
+	 * Fingerprinter and the SilenceDetector
+	 *
+	 * @return the track's Fingerprint, after its loudness record is added to
+	 * results and its Trim record to cuts
+	 */
+	private static Fingerprint read(PcmReader reader, LoudnessAnalyzer analyzer, Fingerprinter fingerprinter,
+			SilenceDetector detector, List<String> results, List<String> cuts) throws IOException {
+		float[] samples = new float[BLOCK_FRAMES * reader.getChannels()];
+		analyzer.start(reader.getSampleRate(), reader.getChannels());
+		fingerprinter.start(reader.getSampleRate(), reader.getChannels());
+		detector.start(reader.getSampleRate(), reader.getChannels());
+		int frames;
+		while ((frames = reader.read(samples)) != -1) {
+			analyzer.process(samples, frames);
+			fingerprinter.process(samples, frames);
+			detector.process(samples, frames);
+		}
+		results.add(analyzer.finish().toRecord());
+		cuts.add(detector.finish().toRecord());
+		return fingerprinter.finish();
+	}
+
+	/**
+	 * Adds a new track's fingerprint to the index, telling the duplicate
+	 * listener about every track already there that it matches
+	 */
+	private void lookUp(String audioPath, Fingerprint fingerprint) {
+		List<FingerprintIndex.Match> matches = index.addAndMatch(audioPath, fingerprint);
+		BiConsumer<String, String> listener = duplicateListener;
+		if (listener != null) {
+			for (FingerprintIndex.Match match : matches) {
+				listener.accept(match.getAudioPath(), audioPath);
+			}
+		}
+	}
+
+	/**
+	 * Measures, fingerprints and trims every .wav file under Audios, or the
+	 * folder given, then finds every duplicate, printing how fast each went
+	 *
+	 * @param args, optionally the folder to look in and the files to save
+	 * loudness, fingerprints and Trims in
+	 */
+	public static void main(String[] args) throws IOException {
+		Path root = Paths.get(args.length > 0 ? args[0] : "Audios");
+		String fileName = args.length > 1 ? args[1] : "analysis.txt";
+		String fingerprintFileName = args.length > 2 ? args[2] : "fingerprints.txt";
+		String trimFileName = args.length > 3 ? args[3] : "silence.txt";
+		List<String> tracks;
+		try (Stream<Path> files = Files.walk(root)) {
+			tracks = files.filter(p -> p.toString().endsWith(".wav")).map(Path::toString).collect(Collectors.toList());
+		}
+		LibraryAnalyzer analyzer = new LibraryAnalyzer(fileName, fingerprintFileName, trimFileName);
+		long start = System.nanoTime();
+		int count = analyzer.analyze(tracks);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		int unreadable = 0;
+		int trimmed = 0;
+		for (String track : tracks) {
+			if (AnalysisStore.UNREADABLE.equals(analyzer.store.get(track))) {
+				unreadable += 1;
+			}
+			Trim trim = analyzer.getTrim(track);
+			if (trim != null && trim.isTrimmed()) {
+				trimmed += 1;
+			}
+		}
+		System.out.println(String.format("%d tracks, %d measured in %.2f s (%.1f tracks/s on %d threads), %d unreadable, %d with silence to skip",
+				tracks.size(), count, seconds, count / seconds, analyzer.pool.getParallelism(), unreadable, trimmed));
+		start = System.nanoTime();
+		List<String[]> duplicates = analyzer.findDuplicates();
+		seconds = (System.nanoTime() - start) / 1e9;
+		for (String[] pair : duplicates) {
+			System.out.println(pair[1] + " is a duplicate of " + pair[0]);
+		}
+		System.out.println(String.format("%d duplicates among %d fingerprinted tracks found in %.2f s",
+				duplicates.size(), analyzer.index.size(), seconds));
+	}
+}
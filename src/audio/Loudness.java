@@ -0,0 +1,114 @@
+package audio;
+
+import java.util.Locale;
+
+/**
+ * How loud a track is, as measured by a LoudnessAnalyzer, and how much it
+ * should be turned down to sound as loud as every other track.
+ *
+ * Properties:
+ * integrated:
+ * The loudness of the whole track in LUFS (loudness units relative to
+ * full scale), gated the way ITU-R BS.1770 says so quiet passages don't
+ * drag it down.
+ *
+ * peak:
+ * The largest sample in the track, 1 being full scale.
+ */
+public class Loudness {
+
+	/**
+	 * The loudness every track is turned to, the same reference level
+	 * ReplayGain 2.0 uses
+	 */
+	public static final double TARGET = -18.0;
+
+	private final double integrated;
+	private final double peak;
+
+	/**
+	 * Creates a Loudness
+	 *
+	 * @param integrated, the loudness of the whole track in LUFS
+	 * @param peak, the largest sample in the track
+	 */
+	public Loudness(double integrated, double peak) {
+		this.integrated = integrated;
+		this.peak = peak;
+	}
+
+	/**
+	 * Returns the loudness of the whole track
+	 *
+	 * @return the loudness in LUFS
+	 */
+	public double getIntegrated() {
+		return integrated;
+	}
+
+	/**
+	 * Returns the largest sample in the track
+	 *
+	 * @return the peak, 1 being full scale
+	 */
+	public double getPeak() {
+		return peak;
+	}
+
+	/**
+	 * Returns how many decibels the track has to be turned up or down to
+	 * reach TARGET, never so far up that its peak would clip
+	 *
+	 * @return the gain in dB
+	 */
+	public double getGain() {
+		double gain = TARGET - integrated;
+		if (peak > 0) {
+			gain = Math.min(gain, -20 * Math.log10(peak));
+		}
+		return gain;
+	}
+
+	/**
+	 * Returns what to multiply the volume by to play the track at TARGET.
+	 * A MediaPlayer can't play louder than its file, so tracks quieter than
+	 * TARGET are played as they are.
+	 *
+	 * @return the volume factor, between 0 and 1
+	 */
+	public double getVolume() {
+		return Math.min(1, Math.pow(10, getGain() / 20));
+	}
+
+	/**
+	 * Returns the Loudness as one line for an AnalysisStore
+	 *
+	 * @return the record
+	 */
+	public String toRecord() {
+		return String.format(Locale.ROOT, "%.2f\t%.5f", integrated, peak);
+	}
+
+	/**
+	 * Reads a Loudness back from a record made by toRecord
+	 *
+	 * @param record, the record
+	 * @return the Loudness, null if the record isn't one
+	 */
+	public static Loudness fromRecord(String record) {
+		String[] split = record.split("\t");
+		if (split.length != 2) {
+			return null;
+		}
+		try {
+			return new Loudness(Double.parseDouble(split[0]), Double.parseDouble(split[1]));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%.1f LUFS, peak %.3f, gain %+.1f dB", integrated, peak, getGain());
+	}
+}
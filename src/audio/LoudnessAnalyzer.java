@@ -0,0 +1,266 @@
+package audio;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Measures how loud a track sounds, the way ITU-R BS.1770 does it.
+ *
+ * Every channel goes through the K-weighting filter, a high shelf and a
+ * high pass that weight frequencies roughly the way ears do, and the
+ * squared samples are added up in 100 ms pieces. Each 400 ms block (four
+ * pieces, so blocks overlap by 75%) has a loudness, and the track's
+ * loudness is the average of the blocks that pass two gates: blocks quieter
+ * than -70 LUFS are silence and left out, and so are blocks more than
+ * 10 LU quieter than the average of what is left.
+ *
+ * Samples can be read by analyze or handed over a block at a time with
+ * start, process and finish, so one read of a file can feed other
+ * analysis too. One analyzer measures one track at a time and is reused
+ * for the next, so the filters, sample buffer and list of pieces are only
+ * ever allocated once per thread. Nothing is allocated per sample.
+ *
+ * Properties:
+ * samples:
+ * The block of samples read from the file, channels interleaved.
+ *
+ * shelf, pass:
+ * The coefficients of the two K-weighting filters (b0, b1, b2, a1, a2),
+ * worked out for the track's sample rate.
+ *
+ * state:
+ * The last two inputs and outputs of each filter for each channel.
+ *
+ * pieces, pieceCount:
+ * The weighted mean square of every 100 ms piece of the track.
+ *
+ * channels, pieceFrames, inPiece, sum, peak:
+ * Where the track being measured is up to.
+ */
+public class LoudnessAnalyzer {
+
+	private static final double ABSOLUTE_GATE = -70.0;
+	private static final double RELATIVE_GATE = -10.0;
+	private static final int BLOCK_FRAMES = 4096;
+
+	private float[] samples;
+	private final double[] shelf;
+	private final double[] pass;
+	private double[] state;
+	private double[] pieces;
+	private int pieceCount;
+	private int filterRate;
+	private int channels;
+	private int pieceFrames;
+	private int inPiece;
+	private double sum;
+	private double peak;
+
+	/**
+	 * Creates a LoudnessAnalyzer
+	 */
+	public LoudnessAnalyzer() {
+		this.samples = new float[BLOCK_FRAMES * 2];
+		this.shelf = new double[5];
+		this.pass = new double[5];
+		this.state = new double[2 * 8];
+		this.pieces = new double[512];
+		this.pieceCount = 0;
+		this.filterRate = 0;
+	}
+
+	/**
+	 * Measures a whole track, reading it to the end
+	 *
+	 * @param reader, the track
+	 * @return the track's Loudness
+	 * @throws IOException if the track can't be read
+	 */
+	public Loudness analyze(PcmReader reader) throws IOException {
+		int channels = reader.getChannels();
+		if (samples.length < BLOCK_FRAMES * channels) {
+			samples = new float[BLOCK_FRAMES * channels];
+		}
+		start(reader.getSampleRate(), channels);
+		int frames;
+		while ((frames = reader.read(samples)) != -1) {
+			process(samples, frames);
+		}
+		return finish();
+	}
+
+	/**
+	 * Gets ready to measure a new track, for when the samples are handed
+	 * over a block at a time with process instead of read by analyze
+	 *
+	 * @param rate, the track's sample rate
+	 * @param channels, how many channels the track has
+	 */
+	public void start(int rate, int channels) {
+		if (state.length < channels * 8) {
+			state = new double[channels * 8];
+		}
+		Arrays.fill(state, 0, channels * 8, 0);
+		if (rate != filterRate) {
+			filters(rate);
+		}
+		this.channels = channels;
+		pieceCount = 0;
+		pieceFrames = Math.max(1, rate / 10);
+		inPiece = 0;
+		sum = 0;
+		peak = 0;
+	}
+
+	/**
+	 * Measures the next block of the track
+	 *
+	 * @param block, samples between -1 and 1, channels interleaved
+	 * @param frames, how many frames of block to measure
+	 */
+	public void process(float[] block, int frames) {
+		for (int f = 0; f < frames; f++) {
+			int base = f * channels;
+			for (int c = 0; c < channels; c++) {
+				double x = block[base + c];
+				double magnitude = Math.abs(x);
+				if (magnitude > peak) {
+					peak = magnitude;
+				}
+				double weight = weight(c, channels);
+				if (weight == 0) {
+					continue;
+				}
+				int s = c * 8;
+				// high shelf
+				double y = shelf[0] * x + shelf[1] * state[s] + shelf[2] * state[s + 1] - shelf[3] * state[s + 2] - shelf[4] * state[s + 3];
+				state[s + 1] = state[s];
+				state[s] = x;
+				state[s + 3] = state[s + 2];
+				state[s + 2] = y;
+				// high pass
+				double z = pass[0] * y + pass[1] * state[s + 4] + pass[2] * state[s + 5] - pass[3] * state[s + 6] - pass[4] * state[s + 7];
+				state[s + 5] = state[s + 4];
+				state[s + 4] = y;
+				state[s + 7] = state[s + 6];
+				state[s + 6] = z;
+				sum += weight * z * z;
+			}
+			inPiece += 1;
+			if (inPiece == pieceFrames) {
+				addPiece(sum / pieceFrames);
+				sum = 0;
+				inPiece = 0;
+			}
+		}
+	}
+
+	/**
+	 * Finishes measuring the track
+	 *
+	 * @return the track's Loudness
+	 */
+	public Loudness finish() {
+		return new Loudness(integrated(), peak);
+	}
+
+	/**
+	 * Returns how much a channel counts towards the loudness. Surround
+	 * channels count more and the LFE channel of 5.1 not at all.
+	 */
+	private static double weight(int channel, int channels) {
+		if (channels == 6) {
+			if (channel == 3) {
+				return 0;
+			}
+			return channel >= 4 ? 1.41 : 1;
+		}
+		return channel >= 3 ? 1.41 : 1;
+	}
+
+	private void addPiece(double meanSquare) {
+		if (pieceCount == pieces.length) {
+			pieces = Arrays.copyOf(pieces, pieces.length * 2);
+		}
+		pieces[pieceCount++] = meanSquare;
+	}
+
+	/**
+	 * Gates the 400 ms blocks and averages what is left
+	 */
+	private double integrated() {
+		int blocks = pieceCount - 3;
+		if (blocks <= 0) {
+			return ABSOLUTE_GATE;
+		}
+		double absolute = power(ABSOLUTE_GATE);
+		double total = 0;
+		int count = 0;
+		for (int b = 0; b < blocks; b++) {
+			double z = block(b);
+			if (z > absolute) {
+				total += z;
+				count += 1;
+			}
+		}
+		if (count == 0) {
+			return ABSOLUTE_GATE;
+		}
+		double relative = Math.max(absolute, total / count * Math.pow(10, RELATIVE_GATE / 10));
+		total = 0;
+		count = 0;
+		for (int b = 0; b < blocks; b++) {
+			double z = block(b);
+			if (z > relative) {
+				total += z;
+				count += 1;
+			}
+		}
+		return count == 0 ? ABSOLUTE_GATE : loudness(total / count);
+	}
+
+	private double block(int b) {
+		return (pieces[b] + pieces[b + 1] + pieces[b + 2] + pieces[b + 3]) / 4;
+	}
+
+	private static double loudness(double meanSquare) {
+		return -0.691 + 10 * Math.log10(meanSquare);
+	}
+
+	/**
+	 * The mean square that has a given loudness
+	 */
+	private static double power(double lufs) {
+		return Math.pow(10, (lufs + 0.691) / 10);
+	}
+
+	/**
+	 * Works out the K-weighting filters for a sample rate, from the analog
+	 * prototypes in BS.1770 so rates other than 48 kHz are right too
+	 */
+	private void filters(int rate) {
+		double f0 = 1681.974450955533;
+		double gain = 3.999843853973347;
+		double q = 0.7071752369554196;
+		double k = Math.tan(Math.PI * f0 / rate);
+		double vh = Math.pow(10, gain / 20);
+		double vb = Math.pow(vh, 0.4996667741545416);
+		double a0 = 1 + k / q + k * k;
+		shelf[0] = (vh + vb * k / q + k * k) / a0;
+		shelf[1] = 2 * (k * k - vh) / a0;
+		shelf[2] = (vh - vb * k / q + k * k) / a0;
+		shelf[3] = 2 * (k * k - 1) / a0;
+		shelf[4] = (1 - k / q + k * k) / a0;
+
+		f0 = 38.13547087602444;
+		q = 0.5003270373238773;
+		k = Math.tan(Math.PI * f0 / rate);
+		a0 = 1 + k / q + k * k;
+		pass[0] = 1;
+		pass[1] = -2;
+		pass[2] = 1;
+		pass[3] = 2 * (k * k - 1) / a0;
+		pass[4] = (1 - k / q + k * k) / a0;
+		filterRate = rate;
+	}
+}
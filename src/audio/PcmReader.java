@@ -0,0 +1,278 @@
+package audio;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads the samples out of a WAV file a block at a time, without ever
+ * holding the whole file in memory.
+ *
+ * The RIFF header is read when the reader is made, skipping any chunks
+ * other than "fmt " and "data". After that, read fills a float array the
+ * caller owns with samples between -1 and 1, channels interleaved, so
+ * going through a whole file makes no garbage. 8, 16, 24 and 32 bit PCM
+ * and 32 bit float are understood, including WAVE_FORMAT_EXTENSIBLE files.
+ *
+ * Properties:
+ * in, buffer:
+ * The file and the bytes read from it that haven't been turned into samples.
+ *
+ * sampleRate, channels, bitsPerSample, floating:
+ * The format of the samples.
+ *
+ * remaining:
+ * How many bytes of the data chunk haven't been read, -1 if the header
+ * didn't say and the data runs to the end of the file.
+ *
+ * frames:
+ * How many frames (one sample for every channel) the data chunk holds,
+ * -1 if the header didn't say.
+ */
+public class PcmReader implements Closeable {
+
+	private static final int FORMAT_PCM = 1;
+	private static final int FORMAT_FLOAT = 3;
+	private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final InputStream in;
+	private final byte[] buffer;
+	private int bufferPos;
+	private int bufferEnd;
+	private int sampleRate;
+	private int channels;
+	private int bitsPerSample;
+	private boolean floating;
+	private long remaining;
+	private long frames;
+
+	/**
+	 * Opens a WAV file and reads its header
+	 *
+	 * @param path, the WAV file
+	 * @throws IOException if the file can't be read, isn't a WAV file, or
+	 * holds a kind of sample that isn't understood
+	 */
+	public PcmReader(Path path) throws IOException {
+		this.in = Files.newInputStream(path);
+		this.buffer = new byte[BUFFER_SIZE];
+		this.bufferPos = 0;
+		this.bufferEnd = 0;
+		try {
+			readHeader();
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	private void readHeader() throws IOException {
+		if (readInt() != 0x46464952 /* RIFF */) {
+			throw new IOException("not a WAV file");
+		}
+		readInt();
+		if (readInt() != 0x45564157 /* WAVE */) {
+			throw new IOException("not a WAV file");
+		}
+		boolean haveFormat = false;
+		while (true) {
+			int id = readInt();
+			long size = readInt() & 0xFFFFFFFFL;
+			if (id == 0x20746d66 /* fmt  */) {
+				int format = readShort();
+				channels = readShort();
+				sampleRate = readInt();
+				readInt();
+				readShort();
+				bitsPerSample = readShort();
+				long read = 16;
+				if (format == FORMAT_EXTENSIBLE && size >= 40) {
+					readShort();
+					readShort();
+					readInt();
+					format = readShort();
+					read = 26;
+				}
+				skip(size - read + (size & 1));
+				if (format != FORMAT_PCM && format != FORMAT_FLOAT) {
+					throw new IOException("unsupported WAV format " + format);
+				}
+				floating = format == FORMAT_FLOAT;
+				if (floating ? bitsPerSample != 32 : (bitsPerSample < 8 || bitsPerSample > 32 || bitsPerSample % 8 != 0)) {
+					throw new IOException("unsupported sample size " + bitsPerSample);
+				}
+				if (channels <= 0 || sampleRate <= 0) {
+					throw new IOException("bad WAV header");
+				}
+				haveFormat = true;
+			} else if (id == 0x61746164 /* data */) {
+				if (!haveFormat) {
+					throw new IOException("WAV data before its format");
+				}
+				// streamed files leave the size as 0 or all ones
+				remaining = size == 0 || size == 0xFFFFFFFFL ? -1 : size;
+				frames = remaining < 0 ? -1 : remaining / (channels * (bitsPerSample / 8));
+				return;
+			} else {
+				skip(size + (size & 1));
+			}
+		}
+	}
+
+	/**
+	 * Reads the next block of samples
+	 *
+	 * @param samples, filled with samples between -1 and 1, channels
+	 * interleaved. Only whole frames are read, so at most
+	 * samples.length / getChannels() of them.
+	 * @return how many frames were read, -1 at the end of the data
+	 * @throws IOException if the file can't be read
+	 */
+	public int read(float[] samples) throws IOException {
+		int bytesPerSample = bitsPerSample / 8;
+		int frameBytes = bytesPerSample * channels;
+		int maxFrames = samples.length / channels;
+		int count = 0;
+		while (count < maxFrames) {
+			if (remaining == 0) {
+				break;
+			}
+			if (bufferEnd - bufferPos < frameBytes && !fill(frameBytes)) {
+				break;
+			}
+			int available = (bufferEnd - bufferPos) / frameBytes;
+			if (remaining > 0) {
+				available = (int) Math.min(available, remaining / frameBytes);
+				if (available == 0) {
+					// a partial frame at the end of the data
+					remaining = 0;
+					break;
+				}
+			}
+			int n = Math.min(available, maxFrames - count);
+			int out = count * channels;
+			int pos = bufferPos;
+			for (int i = 0; i < n * channels; i++) {
+				samples[out + i] = sample(pos);
+				pos += bytesPerSample;
+			}
+			bufferPos = pos;
+			if (remaining > 0) {
+				remaining -= (long) n * frameBytes;
+			}
+			count += n;
+		}
+		return count == 0 ? -1 : count;
+	}
+
+	private float sample(int pos) {
+		byte[] b = buffer;
+		switch (bitsPerSample) {
+		case 8:
+			return ((b[pos] & 0xFF) - 128) / 128f;
+		case 16:
+			return (short) ((b[pos] & 0xFF) | (b[pos + 1] << 8)) / 32768f;
+		case 24:
+			return ((b[pos] & 0xFF) | ((b[pos + 1] & 0xFF) << 8) | (b[pos + 2] << 16)) / 8388608f;
+		default:
+			int bits = (b[pos] & 0xFF) | ((b[pos + 1] & 0xFF) << 8) | ((b[pos + 2] & 0xFF) << 16) | (b[pos + 3] << 24);
+			return floating ? Float.intBitsToFloat(bits) : bits / 2147483648f;
+		}
+	}
+
+	/**
+	 * Moves what is left in the buffer to the front and reads more after it
+	 *
+	 * @return false if the file ended before there were at least need bytes
+	 */
+	private boolean fill(int need) throws IOException {
+		int left = bufferEnd - bufferPos;
+		System.arraycopy(buffer, bufferPos, buffer, 0, left);
+		bufferPos = 0;
+		bufferEnd = left;
+		while (bufferEnd < need) {
+			int read = in.read(buffer, bufferEnd, buffer.length - bufferEnd);
+			if (read == -1) {
+				return false;
+			}
+			bufferEnd += read;
+		}
+		return true;
+	}
+
+	private int readByte() throws IOException {
+		if (bufferPos == bufferEnd && !fill(1)) {
+			throw new EOFException("WAV header cut off");
+		}
+		return buffer[bufferPos++] & 0xFF;
+	}
+
+	private int readShort() throws IOException {
+		return readByte() | (readByte() << 8);
+	}
+
+	private int readInt() throws IOException {
+		return readShort() | (readShort() << 16);
+	}
+
+	private void skip(long count) throws IOException {
+		long inBuffer = Math.min(count, bufferEnd - bufferPos);
+		bufferPos += (int) inBuffer;
+		count -= inBuffer;
+		while (count > 0) {
+			long skipped = in.skip(count);
+			if (skipped <= 0) {
+				if (in.read() == -1) {
+					throw new EOFException("WAV header cut off");
+				}
+				skipped = 1;
+			}
+			count -= skipped;
+		}
+	}
+
+	/**
+	 * Returns how many frames a second the file has
+	 *
+	 * @return the sample rate
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Returns how many channels the file has
+	 *
+	 * @return the number of channels
+	 */
+	public int getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Returns how many bits each sample is stored in
+	 *
+	 * @return the bits per sample
+	 */
+	public int getBitsPerSample() {
+		return bitsPerSample;
+	}
+
+	/**
+	 * Returns how many frames the file holds, from its header
+	 *
+	 * @return the number of frames, -1 if the header doesn't say
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,186 @@
+package audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads the files of the tracks coming up next so the operating system has
+ * them in its page cache before they play, which keeps the start of a
+ * track from stalling on slow or network storage.
+ *
+ * The bytes are read with a FileChannel into one buffer that is reused and
+ * thrown away, since all that matters is that the reads happened. Nothing
+ * is kept in the Java heap, so it works for any file, including ones
+ * PcmReader can't decode, and helps the MediaPlayer as much as anything
+ * else that reads the file.
+ *
+ * One background thread at the lowest priority does the reading, a chunk
+ * at a time, sleeping between chunks so it never reads faster than its
+ * budget and leaves the disk to the track that is playing. When the tracks
+ * coming up change, whatever it was reading is given up and it starts on
+ * the new ones. Files that were read recently, and haven't changed since,
+ * aren't read again.
+ *
+ * Properties:
+ * bytesPerSecond:
+ * The most it reads a second.
+ *
+ * queue, generation, wanted:
+ * The files waiting to be read, each with the generation it was queued
+ * in, how many times the files were replaced, and the files wanted now,
+ * so the thread can tell the file it is on is no longer wanted.
+ *
+ * warmed:
+ * The files read last, with their size and modification time when they
+ * were read.
+ *
+ * bytesRead:
+ * How many bytes were read in all.
+ */
+public class Prefetcher {
+
+	private static final int CHUNK = 256 * 1024;
+	private static final int REMEMBERED = 64;
+
+	/**
+	 * A file waiting to be read, and which call to follow asked for it
+	 */
+	private static class Read {
+
+		private final String audioPath;
+		private final long generation;
+
+		private Read(String audioPath, long generation) {
+			this.audioPath = audioPath;
+			this.generation = generation;
+		}
+	}
+
+	private final long bytesPerSecond;
+	private final LinkedBlockingDeque<Read> queue;
+	private final AtomicLong generation;
+	private volatile Set<String> wanted;
+	private final Map<String, String> warmed;
+	private final AtomicLong bytesRead;
+
+	/**
+	 * Creates a Prefetcher and starts its background thread
+	 *
+	 * @param bytesPerSecond, the most it may read a second
+	 */
+	public Prefetcher(long bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+		this.queue = new LinkedBlockingDeque<>();
+		this.generation = new AtomicLong();
+		this.wanted = Collections.emptySet();
+		this.warmed = Collections.synchronizedMap(new LinkedHashMap<String, String>(REMEMBERED, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > REMEMBERED;
+			}
+		});
+		this.bytesRead = new AtomicLong();
+		Thread worker = new Thread(this::work, "prefetch");
+		worker.setDaemon(true);
+		worker.setPriority(Thread.MIN_PRIORITY);
+		worker.start();
+	}
+
+	/**
+	 * Replaces the files waiting to be read, giving up on the one being
+	 * read if it isn't among them
+	 *
+	 * @param audioPaths, the paths of the tracks coming up, the next one
+	 * first
+	 */
+	public void follow(List<String> audioPaths) {
+		Set<String> keys = new HashSet<>();
+		for (String audioPath : audioPaths) {
+			keys.add(AnalysisStore.key(audioPath));
+		}
+		synchronized (queue) {
+			long current = generation.incrementAndGet();
+			wanted = keys;
+			queue.clear();
+			for (String audioPath : audioPaths) {
+				queue.add(new Read(AnalysisStore.key(audioPath), current));
+			}
+		}
+	}
+
+	/**
+	 * Reads files for as long as the program runs
+	 */
+	private void work() {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK);
+		while (true) {
+			Read read;
+			try {
+				read = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			try {
+				warm(Paths.get(read.audioPath), read.audioPath, buffer, read.generation);
+			} catch (IOException e) {
+				// not there or not readable, playing it will say so
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private void warm(Path path, String key, ByteBuffer buffer, long started) throws IOException, InterruptedException {
+		String stamp = Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis();
+		if (stamp.equals(warmed.get(key))) {
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long start = System.nanoTime();
+			long done = 0;
+			int read;
+			while (true) {
+				if (generation.get() != started && !wanted.contains(key)) {
+					// the tracks coming up changed and this isn't one of them anymore
+					return;
+				}
+				buffer.clear();
+				read = channel.read(buffer);
+				if (read < 0) {
+					break;
+				}
+				done += read;
+				bytesRead.addAndGet(read);
+				// sleep until the bytes read so far are within the budget
+				long due = start + done * 1_000_000_000L / bytesPerSecond;
+				long wait = due - System.nanoTime();
+				if (wait > 0) {
+					Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+				}
+			}
+		}
+		warmed.put(key, stamp);
+	}
+
+	/**
+	 * Returns how many bytes have been read ahead in all
+	 *
+	 * @return the number of bytes
+	 */
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+}
@@ -0,0 +1,159 @@
+package audio;
+
+import java.io.IOException;
+
+/**
+ * Finds the silence at the start and end of a track, so it can be skipped
+ * and one Song runs into the next without a gap.
+ *
+ * The track is cut into 10 ms windows, and a window is sound if any sample
+ * in it is louder than THRESHOLD. The sound starts at the first such
+ * window and ends at the last, with a little kept either side so a soft
+ * attack isn't cut off and a note is left to ring out. Silence in the
+ * middle of a track is left alone. A track that is silent all the way
+ * through isn't trimmed at all.
+ *
+ * Like the LoudnessAnalyzer, samples can be read by detect or handed over a
+ * block at a time with start, process and finish, so one read of a file
+ * feeds every analysis. Nothing is allocated per sample, and one detector
+ * is reused for track after track.
+ *
+ * Properties:
+ * samples:
+ * The block of samples read by detect.
+ *
+ * rate, channels, windowFrames:
+ * The format of the track and how many frames a window has.
+ *
+ * frames, inWindow, loud:
+ * How many frames have been handed over, how far into the window they
+ * are, and if the window has had a sample above THRESHOLD yet.
+ *
+ * first, last:
+ * The first and last window with sound in it, -1 if there hasn't been one.
+ */
+public class SilenceDetector {
+
+	/**
+	 * The loudest a sample can be and still be silence, -50 dBFS
+	 */
+	public static final float THRESHOLD = 0.00316f;
+	private static final int WINDOW_MILLIS = 10;
+	private static final int LEAD_MILLIS = 20;
+	private static final int TAIL_MILLIS = 150;
+	private static final int BLOCK_FRAMES = 4096;
+
+	private float[] samples;
+	private int rate;
+	private int channels;
+	private int windowFrames;
+	private long frames;
+	private int inWindow;
+	private boolean loud;
+	private long window;
+	private long first;
+	private long last;
+
+	/**
+	 * Creates a SilenceDetector
+	 */
+	public SilenceDetector() {
+		this.samples = new float[BLOCK_FRAMES * 2];
+	}
+
+	/**
+	 * Finds the silence in a whole track, reading it to the end
+	 *
+	 * @param reader, the track
+	 * @return the track's Trim
+	 * @throws IOException if the track can't be read
+	 */
+	public Trim detect(PcmReader reader) throws IOException {
+		int channels = reader.getChannels();
+		if (samples.length < BLOCK_FRAMES * channels) {
+			samples = new float[BLOCK_FRAMES * channels];
+		}
+		start(reader.getSampleRate(), channels);
+		int read;
+		while ((read = reader.read(samples)) != -1) {
+			process(samples, read);
+		}
+		return finish();
+	}
+
+	/**
+	 * Gets ready for a new track, for when the samples are handed over a
+	 * block at a time with process instead of read by detect
+	 *
+	 * @param rate, the track's sample rate
+	 * @param channels, how many channels the track has
+	 */
+	public void start(int rate, int channels) {
+		this.rate = rate;
+		this.channels = channels;
+		this.windowFrames = Math.max(1, rate * WINDOW_MILLIS / 1000);
+		this.frames = 0;
+		this.inWindow = 0;
+		this.loud = false;
+		this.window = 0;
+		this.first = -1;
+		this.last = -1;
+	}
+
+	/**
+	 * Looks through the next block of the track
+	 *
+	 * @param block, samples between -1 and 1, channels interleaved
+	 * @param count, how many frames of block to look through
+	 */
+	public void process(float[] block, int count) {
+		int i = 0;
+		for (int f = 0; f < count; f++) {
+			if (!loud) {
+				for (int c = 0; c < channels; c++) {
+					float x = block[i + c];
+					if (x > THRESHOLD || x < -THRESHOLD) {
+						loud = true;
+						break;
+					}
+				}
+			}
+			i += channels;
+			inWindow += 1;
+			if (inWindow == windowFrames) {
+				endWindow();
+			}
+		}
+		frames += count;
+	}
+
+	private void endWindow() {
+		if (loud) {
+			if (first < 0) {
+				first = window;
+			}
+			last = window;
+		}
+		window += 1;
+		inWindow = 0;
+		loud = false;
+	}
+
+	/**
+	 * Finishes looking through the track
+	 *
+	 * @return the track's Trim
+	 */
+	public Trim finish() {
+		if (inWindow > 0) {
+			endWindow();
+		}
+		long length = frames * 1000 / Math.max(1, rate);
+		if (first < 0) {
+			return new Trim(0, length, length);
+		}
+		long start = Math.max(0, first * windowFrames * 1000 / rate - LEAD_MILLIS);
+		long end = Math.min(length, (last + 1) * windowFrames * 1000 / rate + TAIL_MILLIS);
+		return new Trim(start, end, length);
+	}
+}
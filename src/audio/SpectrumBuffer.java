@@ -0,0 +1,84 @@
+package audio;
+
+import java.util.Arrays;
+
+/**
+ * Holds the spectrum of what is playing between the callback that gets it
+ * and the view that draws it, without allocating.
+ *
+ * The levels of every band, from 0 for silence to 1 for full scale, are
+ * kept in one float array made up front. JavaFX calls its audio spectrum
+ * listener and its AnimationTimers on the FX Application Thread, so the
+ * writer and the reader never run at the same time and there is nothing
+ * to lock. Every write bumps a sequence number, so the reader can tell
+ * when nothing new has been written since last time and skip drawing.
+ *
+ * JavaFX gives magnitudes in decibels, which only have to be scaled.
+ *
+ * Properties:
+ * levels, sequence:
+ * The level of every band and how many writes there have been.
+ */
+public class SpectrumBuffer {
+
+	private final float[] levels;
+	private int sequence;
+
+	/**
+	 * Creates a SpectrumBuffer
+	 *
+	 * @param bands, how many bands there are
+	 */
+	public SpectrumBuffer(int bands) {
+		this.levels = new float[bands];
+	}
+
+	/**
+	 * Returns how many bands there are
+	 *
+	 * @return the number of bands
+	 */
+	public int getBands() {
+		return levels.length;
+	}
+
+	/**
+	 * Writes magnitudes in decibels, like JavaFX's AudioSpectrumListener is
+	 * given
+	 *
+	 * @param magnitudes, the magnitude of every band in dB, at least the
+	 * threshold and at most 0
+	 * @param threshold, the magnitude of silence, like -60
+	 */
+	public void writeDecibels(float[] magnitudes, float threshold) {
+		int count = Math.min(magnitudes.length, levels.length);
+		for (int i = 0; i < count; i++) {
+			levels[i] = Math.max(0, Math.min(1, (magnitudes[i] - threshold) / -threshold));
+		}
+		sequence += 1;
+	}
+
+	/**
+	 * Copies the levels into an array the reader owns, if anything was
+	 * written since the last read
+	 *
+	 * @param into, where the levels go, as long as there are bands
+	 * @param lastSequence, what the last read returned, or 0
+	 * @return the sequence read, the same as lastSequence if nothing new
+	 * was written and into wasn't touched
+	 */
+	public int read(float[] into, int lastSequence) {
+		if (sequence != lastSequence) {
+			System.arraycopy(levels, 0, into, 0, levels.length);
+		}
+		return sequence;
+	}
+
+	/**
+	 * Sets every band back to silence, for when playback stops
+	 */
+	public void clear() {
+		Arrays.fill(levels, 0);
+		sequence += 1;
+	}
+}
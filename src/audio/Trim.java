@@ -0,0 +1,104 @@
+package audio;
+
+import java.util.Locale;
+
+/**
+ * Where the sound in a track starts and ends, as found by a
+ * SilenceDetector, so playback can skip the silence before and after it.
+ *
+ * Properties:
+ * start, end:
+ * Where the sound starts and ends, in milliseconds from the start of the
+ * track.
+ *
+ * length:
+ * How long the whole track is, in milliseconds.
+ */
+public class Trim {
+
+	private final long start;
+	private final long end;
+	private final long length;
+
+	/**
+	 * Creates a Trim
+	 *
+	 * @param start, where the sound starts in milliseconds
+	 * @param end, where the sound ends in milliseconds
+	 * @param length, how long the whole track is in milliseconds
+	 */
+	public Trim(long start, long end, long length) {
+		this.start = start;
+		this.end = end;
+		this.length = length;
+	}
+
+	/**
+	 * Returns where the sound starts
+	 *
+	 * @return the start in milliseconds
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * Returns where the sound ends
+	 *
+	 * @return the end in milliseconds
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * Returns how long the whole track is
+	 *
+	 * @return the length in milliseconds
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns if there is any silence to skip
+	 *
+	 * @return true if the sound starts after the track does or ends before
+	 * it does
+	 */
+	public boolean isTrimmed() {
+		return start > 0 || end < length;
+	}
+
+	/**
+	 * Returns the Trim as one line for an AnalysisStore
+	 *
+	 * @return the record
+	 */
+	public String toRecord() {
+		return String.format(Locale.ROOT, "%d\t%d\t%d", start, end, length);
+	}
+
+	/**
+	 * Reads a Trim back from a record made by toRecord
+	 *
+	 * @param record, the record
+	 * @return the Trim, null if the record isn't one
+	 */
+	public static Trim fromRecord(String record) {
+		String[] split = record.split("\t");
+		if (split.length != 3) {
+			return null;
+		}
+		try {
+			return new Trim(Long.parseLong(split[0]), Long.parseLong(split[1]), Long.parseLong(split[2]));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("sound from %.2f s to %.2f s of %.2f s", start / 1000.0, end / 1000.0, length / 1000.0);
+	}
+}
@@ -0,0 +1,287 @@
+package audio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * An overview of a track's waveform, the lowest and highest sample in
+ * every bucket of frames, at several zoom levels, small enough to draw the
+ * whole track from without touching its audio.
+ *
+ * Level 0 has a bucket for every BASE_FRAMES frames, and every level after
+ * it has buckets FACTOR times wider, down to a few hundred buckets for the
+ * whole track. A view picks the level with the fewest buckets that still
+ * has one for every pixel. Samples are kept as bytes, -127 to 127, so a
+ * four minute track is about 110 KB for every level together.
+ *
+ * Waveforms are saved as small binary files, see write for the layout.
+ *
+ * Properties:
+ * sampleRate, frames:
+ * The sample rate of the track and how many frames it has.
+ *
+ * bucketFrames:
+ * How many frames each bucket covers, for every level.
+ *
+ * peaks:
+ * For every level, the lowest and then the highest sample of each bucket.
+ */
+public class Waveform {
+
+	/**
+	 * How many frames a bucket covers at level 0
+	 */
+	public static final int BASE_FRAMES = 256;
+	/**
+	 * How many times wider the buckets of each level are than the level
+	 * before
+	 */
+	public static final int FACTOR = 4;
+	private static final int MIN_BUCKETS = 256;
+	private static final int MAGIC = 0x57464d31; // WFM1
+
+	private final int sampleRate;
+	private final long frames;
+	private final int[] bucketFrames;
+	private final byte[][] peaks;
+
+	private Waveform(int sampleRate, long frames, int[] bucketFrames, byte[][] peaks) {
+		this.sampleRate = sampleRate;
+		this.frames = frames;
+		this.bucketFrames = bucketFrames;
+		this.peaks = peaks;
+	}
+
+	/**
+	 * Makes the Waveform of a track in one pass, reading it to the end
+	 *
+	 * @param reader, the track
+	 * @return the Waveform
+	 * @throws IOException if the track can't be read
+	 */
+	public static Waveform of(PcmReader reader) throws IOException {
+		int channels = reader.getChannels();
+		float[] samples = new float[4096 * channels];
+		long expected = reader.getFrames() > 0 ? reader.getFrames() : 0;
+		byte[] base = new byte[(int) Math.max(2, (expected / BASE_FRAMES + 1) * 2)];
+		int buckets = 0;
+		float min = 0;
+		float max = 0;
+		int inBucket = 0;
+		long frames = 0;
+		int read;
+		while ((read = reader.read(samples)) != -1) {
+			int end = read * channels;
+			for (int i = 0; i < end; i += channels) {
+				for (int c = i; c < i + channels; c++) {
+					min = Math.min(min, samples[c]);
+					max = Math.max(max, samples[c]);
+				}
+				inBucket += 1;
+				if (inBucket == BASE_FRAMES) {
+					base = put(base, buckets++, min, max);
+					min = 0;
+					max = 0;
+					inBucket = 0;
+				}
+			}
+			frames += read;
+		}
+		if (inBucket > 0) {
+			base = put(base, buckets++, min, max);
+		}
+		return fromBase(reader.getSampleRate(), frames, Arrays.copyOf(base, buckets * 2));
+	}
+
+	private static byte[] put(byte[] peaks, int bucket, float min, float max) {
+		if (bucket * 2 + 2 > peaks.length) {
+			peaks = Arrays.copyOf(peaks, peaks.length * 2);
+		}
+		peaks[bucket * 2] = toByte(min);
+		peaks[bucket * 2 + 1] = toByte(max);
+		return peaks;
+	}
+
+	private static byte toByte(float sample) {
+		return (byte) Math.round(Math.max(-1, Math.min(1, sample)) * 127);
+	}
+
+	/**
+	 * Builds every coarser level from level 0
+	 */
+	private static Waveform fromBase(int sampleRate, long frames, byte[] base) {
+		int levels = 1;
+		for (int buckets = base.length / 2; buckets > MIN_BUCKETS * FACTOR; buckets = (buckets + FACTOR - 1) / FACTOR) {
+			levels += 1;
+		}
+		int[] bucketFrames = new int[levels];
+		byte[][] peaks = new byte[levels][];
+		bucketFrames[0] = BASE_FRAMES;
+		peaks[0] = base;
+		for (int level = 1; level < levels; level++) {
+			byte[] finer = peaks[level - 1];
+			int finerBuckets = finer.length / 2;
+			byte[] coarser = new byte[(finerBuckets + FACTOR - 1) / FACTOR * 2];
+			for (int b = 0; b < coarser.length / 2; b++) {
+				byte min = Byte.MAX_VALUE;
+				byte max = Byte.MIN_VALUE;
+				for (int f = b * FACTOR; f < Math.min(finerBuckets, (b + 1) * FACTOR); f++) {
+					min = (byte) Math.min(min, finer[f * 2]);
+					max = (byte) Math.max(max, finer[f * 2 + 1]);
+				}
+				coarser[b * 2] = min;
+				coarser[b * 2 + 1] = max;
+			}
+			bucketFrames[level] = bucketFrames[level - 1] * FACTOR;
+			peaks[level] = coarser;
+		}
+		return new Waveform(sampleRate, frames, bucketFrames, peaks);
+	}
+
+	/**
+	 * Returns the level with the fewest buckets that still has at least as
+	 * many as asked for, or level 0 if none do
+	 *
+	 * @param buckets, how many buckets are needed, like the width of a view
+	 * in pixels
+	 * @return the level
+	 */
+	public int levelFor(int buckets) {
+		for (int level = peaks.length - 1; level > 0; level--) {
+			if (getBuckets(level) >= buckets) {
+				return level;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns how many levels there are
+	 *
+	 * @return the number of levels
+	 */
+	public int getLevels() {
+		return peaks.length;
+	}
+
+	/**
+	 * Returns how many buckets a level has
+	 *
+	 * @param level, the level
+	 * @return the number of buckets
+	 */
+	public int getBuckets(int level) {
+		return peaks[level].length / 2;
+	}
+
+	/**
+	 * Returns how many frames each bucket of a level covers
+	 *
+	 * @param level, the level
+	 * @return the number of frames
+	 */
+	public int getBucketFrames(int level) {
+		return bucketFrames[level];
+	}
+
+	/**
+	 * Returns the lowest sample in a bucket
+	 *
+	 * @param level, the level
+	 * @param bucket, the bucket
+	 * @return the sample, from -127 to 127
+	 */
+	public int getMin(int level, int bucket) {
+		return peaks[level][bucket * 2];
+	}
+
+	/**
+	 * Returns the highest sample in a bucket
+	 *
+	 * @param level, the level
+	 * @param bucket, the bucket
+	 * @return the sample, from -127 to 127
+	 */
+	public int getMax(int level, int bucket) {
+		return peaks[level][bucket * 2 + 1];
+	}
+
+	/**
+	 * Returns the sample rate of the track
+	 *
+	 * @return the sample rate in Hz
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Returns how many frames the track has
+	 *
+	 * @return the number of frames
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * Saves the Waveform. The file is "WFM1", the sample rate, the number of
+	 * frames and the number of levels, then for every level the frames per
+	 * bucket, the number of buckets and the peaks, all big endian.
+	 *
+	 * @param path, the file to save to
+	 * @throws IOException if it can't be written
+	 */
+	public void write(Path path) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(sampleRate);
+			out.writeLong(frames);
+			out.writeInt(peaks.length);
+			for (int level = 0; level < peaks.length; level++) {
+				out.writeInt(bucketFrames[level]);
+				out.writeInt(peaks[level].length / 2);
+				out.write(peaks[level]);
+			}
+		}
+	}
+
+	/**
+	 * Reads a Waveform saved by write
+	 *
+	 * @param path, the file
+	 * @return the Waveform
+	 * @throws IOException if it can't be read or isn't a saved Waveform
+	 */
+	public static Waveform read(Path path) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("not a waveform file");
+			}
+			int sampleRate = in.readInt();
+			long frames = in.readLong();
+			int levels = in.readInt();
+			if (levels <= 0 || levels > 32) {
+				throw new IOException("bad waveform file");
+			}
+			int[] bucketFrames = new int[levels];
+			byte[][] peaks = new byte[levels][];
+			for (int level = 0; level < levels; level++) {
+				bucketFrames[level] = in.readInt();
+				int buckets = in.readInt();
+				if (buckets < 0 || buckets > Integer.MAX_VALUE / 2) {
+					throw new IOException("bad waveform file");
+				}
+				peaks[level] = new byte[buckets * 2];
+				in.readFully(peaks[level]);
+			}
+			return new Waveform(sampleRate, frames, bucketFrames, peaks);
+		}
+	}
+}
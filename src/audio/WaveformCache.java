@@ -0,0 +1,306 @@
+package audio;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Makes and keeps the Waveform of every track, so the view can draw it
+ * without touching the audio.
+ *
+ * Each Waveform is saved in a small file of its own, named after the
+ * track, and the last few that were used are kept in memory. Waveforms
+ * that aren't saved yet are made by one background thread, one track at a
+ * time in one pass over its audio. The track that is playing is asked for
+ * as urgent and goes ahead of everything else, so the bar under it fills
+ * in within a moment. Tracks imported into the library are asked for
+ * without hurry and made when nothing urgent is waiting.
+ *
+ * A track is only ever waiting once. Asking again for a track that is
+ * waiting or being made doesn't add another job, except that asking
+ * urgently for a track that is waiting without hurry moves it ahead once.
+ * Whoever needs a Waveform that isn't ready can pass a callback, which is
+ * called once it is made, instead of asking over and over.
+ *
+ * Properties:
+ * directory:
+ * The folder Waveforms are saved in.
+ *
+ * loaded:
+ * The Waveforms used last, by the normalized path of their tracks.
+ *
+ * queue, queued:
+ * The tracks waiting to be made, urgent ones first, and their paths, each
+ * mapped to whether it is waiting urgently.
+ *
+ * building:
+ * The track the background thread is making, null if none.
+ *
+ * waiting:
+ * The callbacks to call when a track's Waveform is made. Guarded by its
+ * own lock.
+ *
+ * unreadable:
+ * Tracks that couldn't be read, like MP3 data saved with a .wav name,
+ * which aren't tried again.
+ */
+public class WaveformCache {
+
+	/**
+	 * How many Waveforms are kept in memory
+	 */
+	private static final int LOADED = 16;
+
+	/**
+	 * A track waiting to have its Waveform made
+	 */
+	private static class Job implements Comparable<Job> {
+
+		private final String audioPath;
+		private final boolean urgent;
+		private final long order;
+
+		private Job(String audioPath, boolean urgent, long order) {
+			this.audioPath = audioPath;
+			this.urgent = urgent;
+			this.order = order;
+		}
+
+		/**
+		 * Urgent jobs first, the newest urgent one first since it is the
+		 * track that is playing, then the rest in the order asked for
+		 */
+		@Override
+		public int compareTo(Job other) {
+			if (urgent != other.urgent) {
+				return urgent ? -1 : 1;
+			}
+			return urgent ? Long.compare(other.order, order) : Long.compare(order, other.order);
+		}
+	}
+
+	private final Path directory;
+	private final Map<String, Waveform> loaded;
+	private final PriorityBlockingQueue<Job> queue;
+	private final Map<String, Boolean> queued;
+	private volatile String building;
+	private final Map<String, List<Consumer<Waveform>>> waiting;
+	private final Set<String> unreadable;
+	private final AtomicLong order;
+
+	/**
+	 * Creates a WaveformCache and starts its background thread
+	 *
+	 * @param directory, the folder Waveforms are saved in
+	 */
+	public WaveformCache(String directory) {
+		this.directory = Paths.get(directory);
+		this.loaded = Collections.synchronizedMap(new LinkedHashMap<String, Waveform>(LOADED, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Waveform> eldest) {
+				return size() > LOADED;
+			}
+		});
+		this.queue = new PriorityBlockingQueue<>();
+		this.queued = new ConcurrentHashMap<>();
+		this.waiting = new HashMap<>();
+		this.unreadable = Collections.synchronizedSet(new HashSet<>());
+		this.order = new AtomicLong();
+		Thread worker = new Thread(this::work, "waveforms");
+		worker.setDaemon(true);
+		worker.setPriority(Thread.MIN_PRIORITY);
+		worker.start();
+	}
+
+	/**
+	 * Returns the Waveform of a track if it has been made, asking for it to
+	 * be made urgently if it hasn't
+	 *
+	 * @param audioPath, the path of the track
+	 * @return the Waveform, null if it isn't ready yet or the track can't be
+	 * read
+	 */
+	public Waveform get(String audioPath) {
+		String key = AnalysisStore.key(audioPath);
+		Waveform waveform = find(key);
+		if (waveform == null) {
+			request(key, true);
+		}
+		return waveform;
+	}
+
+	/**
+	 * Hands over the Waveform of a track, right away if it has been made,
+	 * or from the background thread once it is, asking for it to be made
+	 * urgently. If the track can't be read the callback is never called.
+	 *
+	 * @param audioPath, the path of the track
+	 * @param whenReady, given the Waveform
+	 */
+	public void get(String audioPath, Consumer<Waveform> whenReady) {
+		String key = AnalysisStore.key(audioPath);
+		Waveform waveform = find(key);
+		if (waveform == null) {
+			synchronized (waiting) {
+				// checked again, in case it was made since
+				waveform = loaded.get(key);
+				if (waveform == null && !unreadable.contains(key)) {
+					waiting.computeIfAbsent(key, k -> new ArrayList<>()).add(whenReady);
+				}
+			}
+		}
+		if (waveform != null) {
+			whenReady.accept(waveform);
+		} else {
+			request(key, true);
+		}
+	}
+
+	/**
+	 * Returns a Waveform from memory or from its file
+	 *
+	 * @return the Waveform, null if it isn't made or the track can't be read
+	 */
+	private Waveform find(String key) {
+		Waveform waveform = loaded.get(key);
+		if (waveform != null || unreadable.contains(key)) {
+			return waveform;
+		}
+		Path file = fileOf(key);
+		if (Files.exists(file)) {
+			try {
+				waveform = Waveform.read(file);
+				loaded.put(key, waveform);
+				return waveform;
+			} catch (IOException e) {
+				// made again
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Asks for the Waveforms of tracks to be made whenever nothing urgent is
+	 * waiting, for songs that were just imported
+	 *
+	 * @param audioPaths, the paths of the tracks
+	 */
+	public void requestAll(Collection<String> audioPaths) {
+		for (String audioPath : audioPaths) {
+			String key = AnalysisStore.key(audioPath);
+			if (!Files.exists(fileOf(key))) {
+				request(key, false);
+			}
+		}
+	}
+
+	private void request(String key, boolean urgent) {
+		if (unreadable.contains(key) || key.equals(building)) {
+			return;
+		}
+		Boolean before = queued.putIfAbsent(key, urgent);
+		// an urgent request for a track waiting without hurry jumps it ahead, once
+		if (before == null || (urgent && queued.replace(key, false, true))) {
+			queue.add(new Job(key, urgent, order.incrementAndGet()));
+		}
+	}
+
+	/**
+	 * Makes Waveforms for as long as the program runs
+	 */
+	private void work() {
+		while (true) {
+			Job job;
+			try {
+				job = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			String key = job.audioPath;
+			building = key;
+			if (queued.remove(key) == null) {
+				// a second job for a track that was moved ahead, and already made
+				building = null;
+				continue;
+			}
+			Waveform waveform = find(key);
+			if (waveform == null && !unreadable.contains(key)) {
+				waveform = make(key);
+			}
+			building = null;
+			List<Consumer<Waveform>> callbacks;
+			synchronized (waiting) {
+				callbacks = waiting.remove(key);
+			}
+			if (waveform != null && callbacks != null) {
+				for (Consumer<Waveform> callback : callbacks) {
+					callback.accept(waveform);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Makes and saves a track's Waveform in one pass over its audio
+	 *
+	 * @return the Waveform, null if the track can't be read
+	 */
+	private Waveform make(String key) {
+		try (PcmReader reader = new PcmReader(Paths.get(key))) {
+			Waveform waveform = Waveform.of(reader);
+			save(key, waveform);
+			loaded.put(key, waveform);
+			return waveform;
+		} catch (IOException e) {
+			unreadable.add(key);
+			return null;
+		}
+	}
+
+	/**
+	 * Saves a Waveform through a temporary file, so a file that is there is
+	 * always whole
+	 */
+	private void save(String key, Waveform waveform) {
+		try {
+			Files.createDirectories(directory);
+			Path temp = Files.createTempFile(directory, "waveform", ".tmp");
+			try {
+				waveform.write(temp);
+				Files.move(temp, fileOf(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {
+			// kept in memory for now, made again next time
+		}
+	}
+
+	/**
+	 * Returns the file a track's Waveform is saved in, named after the
+	 * track and a hash of its whole path
+	 */
+	private Path fileOf(String key) {
+		String name = Paths.get(key).getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0) {
+			name = name.substring(0, dot);
+		}
+		return directory.resolve(name + "-" + Integer.toHexString(key.hashCode()) + ".wfm");
+	}
+}
@@ -1,11 +1,17 @@
 package controller;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+import audio.Trim;
+import audio.Waveform;
 import model.MusicPlayerModel;
 import song.Song;
+import utilities.PlayCursor;
 import utilities.PlayList;
+import utilities.ShuffleMode;
 
 
 
@@ -55,16 +61,34 @@ public class MusicPlayerController {
 	 * @param song, The Song a user wants to start with
 	 */
 	public void playPlaylist(PlayList playlist, Boolean shuffle, Song song) {
-		if(shuffle) {
-			model.shufflePlayList(playlist);
+		if (shuffle) {
+			playPlaylist(playlist, ShuffleMode.RANDOM, song);
+		} else {
+			playPlaylist(playlist, ShuffleMode.OFF, song);
+		}
+	}
+	
+	/**
+	 * Starts playing a Playlist with a specific kind of shuffle.
+	 * 
+	 * Works like the Boolean version, but SMART can be picked to 
+	 * keep Songs by the same artist from playing back to back.
+	 * 
+	 * @param playlist, the PlayList to be played
+	 * @param shuffle, how to shuffle the PlayList, OFF to play it in order
+	 * @param song, The Song a user wants to start with
+	 */
+	public void playPlaylist(PlayList playlist, ShuffleMode shuffle, Song song) {
+		if (shuffle != ShuffleMode.OFF) {
+			model.shufflePlayList(playlist, shuffle);
 		} else {
 			model.unShuffle(playlist);
 		}
 		
 		if (song == null) {
 			model.playPlaylist(playlist);
-		} else if (shuffle){
-			model.playPlaylist(playlist, shuffle, song);
+		} else if (shuffle != ShuffleMode.OFF){
+			model.playPlaylist(playlist, true, song);
 		} else {
 			model.playPlaylist(playlist, song);
 		}
@@ -96,6 +120,34 @@ public class MusicPlayerController {
 		model.changeSong(song);
 	}	
 	
+	/**
+	 * Moves the playing PlayList on to its next Song
+	 * 
+	 * @return the next Song, null if the PlayList is over
+	 */
+	public Song nextSong() {
+		return model.nextSong();
+	}
+	
+	/**
+	 * Moves the playing PlayList back to the previous Song
+	 * 
+	 * @return the previous Song, null if there isn't one
+	 */
+	public Song previousSong() {
+		return model.previousSong();
+	}
+	
+	/**
+	 * Returns the PlayCursor of the playing PlayList, which can be used
+	 * to look at what plays next without moving.
+	 * 
+	 * @return the PlayCursor, null if no PlayList is playing
+	 */
+	public PlayCursor getCursor() {
+		return model.getCursor();
+	}
+	
 	
 	/* 
 	 * all of the getters that will be needed for the controller to call to
@@ -231,6 +283,85 @@ public class MusicPlayerController {
 		model.removeFromFavorites(song);
 	}
 	
+	/**
+	 * Adds a batch of imported Songs to the library
+	 * 
+	 * @param songs, the Songs to be added
+	 */
+	public void addSongs(List<Song> songs) {
+		model.addSongs(songs);
+	}
+	
+	/**
+	 * Returns what to multiply the volume by while a Song plays, so every
+	 * Song plays at about the same loudness
+	 * 
+	 * @param song, the Song that is playing
+	 * @return the volume factor, between 0 and 1
+	 */
+	public double getVolume(Song song) {
+		return model.getVolume(song);
+	}
+	
+	/**
+	 * Returns where the sound in a Song's audio starts and ends, so
+	 * playback can skip the silence around it
+	 * 
+	 * @param song, the Song
+	 * @return the Trim, null if it isn't known yet
+	 */
+	public Trim getTrim(Song song) {
+		return model.getTrim(song);
+	}
+	
+	/**
+	 * Hands over the Waveform of a Song's audio once it is ready
+	 * 
+	 * @param song, the Song
+	 * @param whenReady, given the Waveform, maybe on a background thread
+	 */
+	public void getWaveform(Song song, Consumer<Waveform> whenReady) {
+		model.getWaveform(song, whenReady);
+	}
+	
+	/**
+	 * Returns every pair of Songs that are the same recording
+	 * 
+	 * @param wholeLibrary, true to look the whole library over again
+	 * instead of only returning the pairs flagged at import
+	 * @return each pair, the Song that was in the library first first
+	 */
+	public List<Song[]> getDuplicates(boolean wholeLibrary) {
+		return model.getDuplicates(wholeLibrary);
+	}
+	
+	/**
+	 * Removes the later Song of every pair of duplicates, putting the kept
+	 * Song in its place in every PlayList
+	 * 
+	 * @return the Songs that were removed
+	 */
+	public List<Song> mergeDuplicates() {
+		return model.mergeDuplicates();
+	}
+	
+	/**
+	 * Forgets the flagged pairs of duplicates, keeping both Songs of each
+	 */
+	public void keepDuplicates() {
+		model.keepDuplicates();
+	}
+	
+	/**
+	 * Sets what to tell when a newly imported Song is flagged as a duplicate
+	 * 
+	 * @param listener, run on a background thread every time a pair is
+	 * flagged
+	 */
+	public void setDuplicateListener(Runnable listener) {
+		model.setDuplicateListener(listener);
+	}
+	
 	/**
 	 * Adds a song to a PlayList
 	 * 
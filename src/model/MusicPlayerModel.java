@@ -7,14 +7,20 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import javafx.application.Platform;
 
+import audio.Trim;
+import audio.Waveform;
 import song.Song;
+import utilities.PlayCursor;
 import utilities.PlayList;
+import utilities.ShuffleMode;
 import utilities.SongLibrary;
 
 /**
@@ -44,6 +50,10 @@ import utilities.SongLibrary;
  * playingPlaylist: 
  * Boolean value for if PlayList is playing, null when initialized.
  * 
+ * cursor:
+ * The PlayCursor of the PlayList that is playing, which knows the 
+ * position of curSong and what plays next. null until a PlayList plays.
+ * 
  * 
  * metadata:
  * A Map of Strings mapped to integers of genre's of Songs in a user's 
@@ -61,6 +71,11 @@ public class MusicPlayerModel extends Observable{
 	
 	private PlayList currentPlaylist;
 	
+	private PlayCursor cursor;
+	
+	// how many Songs after curSong are read ahead of time
+	private static final int READ_AHEAD = 3;
+	
 	//features maybe?
 	private static ArrayList<PlayList> allPlaylists; 
 	private PlayList favorites; 
@@ -116,9 +131,11 @@ public class MusicPlayerModel extends Observable{
 	public void playPlaylist(PlayList playlist) {
 		currentPlaylist = playlist;
 		playingPlaylist = true;
-		curSong = playlist.getPlayOrder().get(0);
+		cursor = playlist.cursor(null);
+		curSong = cursor.current();
 		
 
+		readAhead();
 		setChanged();
 		notifyObservers();
 	}
@@ -133,7 +150,9 @@ public class MusicPlayerModel extends Observable{
 	public void playPlaylist(PlayList playlist, Song song) {
 		currentPlaylist = playlist;
 		playingPlaylist = true;
+		cursor = playlist.cursor(song);
 		curSong = song;
+		readAhead();
 		setChanged();
 		notifyObservers();
 	}
@@ -150,8 +169,9 @@ public class MusicPlayerModel extends Observable{
 		currentPlaylist = playlist;
 		playingPlaylist = true;
 		curSong = song;
-		playlist.playFirst(song); //sets first song
+		cursor = playlist.cursor(song); //sets first song
 		// plays entire playlist
+		readAhead();
 		setChanged();
 		notifyObservers();
 	}
@@ -164,6 +184,16 @@ public class MusicPlayerModel extends Observable{
 		playlist.shuffle();
 	}
 	
+	/**
+	 * Shuffles a PlayList with a specific kind of shuffle
+	 * 
+	 * @param playlist, the PlayList to be shuffled
+	 * @param mode, the kind of shuffle
+	 */
+	public void shufflePlayList(PlayList playlist, ShuffleMode mode) {
+		playlist.shuffle(mode);
+	}
+	
 	/**
 	 * Un-Shuffles a PlayList
 	 * 
@@ -194,12 +224,73 @@ public class MusicPlayerModel extends Observable{
 		// if a song is playing, stop it
 		// if in Playlist, and playlist is currently being played
 		if (playingPlaylist && currentPlaylist.contains(song)) {
+			if (song != cursor.current() && !cursor.jumpTo(song)) {
+				// added since the cursor was made, so it isn't in the Songs the cursor plays
+				cursor = currentPlaylist.cursor(song);
+			}
 			curSong = song;
-			playPlaylist(currentPlaylist, song);
-			
+			readAhead();
+			setChanged();
+			notifyObservers();
 		} 
 	}	
 	
+	/**
+	 * Moves the playing PlayList on to its next Song
+	 * 
+	 * @return the next Song, null if the PlayList is over
+	 */
+	public Song nextSong() {
+		if (cursor == null || !cursor.hasNext()) {
+			return null;
+		}
+		curSong = cursor.next();
+		readAhead();
+		setChanged();
+		notifyObservers();
+		return curSong;
+	}
+	
+	/**
+	 * Moves the playing PlayList back to the Song played before this one
+	 * 
+	 * @return the previous Song, null if there isn't one
+	 */
+	public Song previousSong() {
+		if (cursor == null || !cursor.hasPrevious()) {
+			return null;
+		}
+		curSong = cursor.previous();
+		readAhead();
+		setChanged();
+		notifyObservers();
+		return curSong;
+	}
+	
+	/**
+	 * Tells the SongLibrary which Songs come next in the play order, so
+	 * their audio is read before it is needed
+	 */
+	private void readAhead() {
+		List<Song> next = new ArrayList<>();
+		if (cursor != null) {
+			int end = Math.min(cursor.size(), cursor.getPosition() + 1 + READ_AHEAD);
+			for (int position = cursor.getPosition() + 1; position < end; position++) {
+				next.add(cursor.getSongAt(position));
+			}
+		}
+		songLibrary.readAhead(next);
+	}
+	
+	/**
+	 * Returns the PlayCursor of the playing PlayList
+	 * 
+	 * @return the PlayCursor, null if no PlayList is playing
+	 */
+	public PlayCursor getCursor() {
+		return cursor;
+	}
+	
 	
 	/* 
 	 * all of the getters that will be needed for the controller to call to
@@ -335,6 +426,116 @@ public class MusicPlayerModel extends Observable{
 		}
 	}
 	
+	/**
+	 * Adds a batch of imported Songs to the library and the Song Library
+	 * PlayList, then updates the view once for the whole batch
+	 * 
+	 * @param songs, the Songs to be added
+	 */
+	public void addSongs(List<Song> songs) {
+		List<Song> added = songLibrary.addSongs(songs);
+		PlayList library = getPlaylist("Song Library");
+		if (library != null) {
+			for (Song song : added) {
+				library.addSong(song);
+			}
+		}
+		setChanged();
+		notifyObservers();
+	}
+	
+	/**
+	 * Returns what to multiply the volume by while a Song plays, so every
+	 * Song plays at about the same loudness
+	 * 
+	 * @param song, the Song that is playing
+	 * @return the volume factor, between 0 and 1
+	 */
+	public double getVolume(Song song) {
+		return songLibrary.getVolume(song);
+	}
+	
+	/**
+	 * Returns where the sound in a Song's audio starts and ends
+	 * 
+	 * @param song, the Song
+	 * @return the Trim, null if it isn't known yet
+	 */
+	public Trim getTrim(Song song) {
+		return songLibrary.getTrim(song);
+	}
+	
+	/**
+	 * Hands over the Waveform of a Song's audio once it is ready, for
+	 * drawing it under the Song that is playing
+	 * 
+	 * @param song, the Song
+	 * @param whenReady, given the Waveform, maybe on a background thread
+	 */
+	public void getWaveform(Song song, Consumer<Waveform> whenReady) {
+		songLibrary.getWaveform(song, whenReady);
+	}
+	
+	/**
+	 * Returns every pair of Songs that are the same recording, found by
+	 * fingerprinting their audio
+	 * 
+	 * @param wholeLibrary, true to look the whole library over again
+	 * instead of only returning the pairs flagged at import
+	 * @return each pair, the Song that was in the library first first
+	 */
+	public List<Song[]> getDuplicates(boolean wholeLibrary) {
+		return wholeLibrary ? songLibrary.findDuplicates() : songLibrary.getDuplicates();
+	}
+	
+	/**
+	 * Removes the later Song of every pair of duplicates from the library,
+	 * putting the Song that is kept in its place in every PlayList. A
+	 * PlayList that is playing carries on, since its PlayCursor plays a
+	 * copy of the Songs that doesn't change.
+	 * 
+	 * @return the Songs that were removed
+	 */
+	public List<Song> mergeDuplicates() {
+		List<Song> removed = new ArrayList<>();
+		for (Song[] pair : songLibrary.getDuplicates()) {
+			if (removed.contains(pair[0]) || removed.contains(pair[1])) {
+				// one of them went with an earlier pair
+				continue;
+			}
+			// before the library removes it, which would take it out of the PlayLists
+			for (PlayList playlist : allPlaylists) {
+				playlist.replaceSong(pair[1], pair[0]);
+			}
+			if (pair[1].isFavorite()) {
+				pair[0].makeFavorite();
+			}
+			songLibrary.removeSong(pair[1]);
+			removed.add(pair[1]);
+		}
+		songLibrary.clearDuplicates();
+		updateData();
+		return removed;
+	}
+	
+	/**
+	 * Forgets the flagged pairs of duplicates, keeping both Songs of each
+	 */
+	public void keepDuplicates() {
+		songLibrary.clearDuplicates();
+	}
+	
+	/**
+	 * Sets what to tell when a newly imported Song is flagged as the same
+	 * recording as one already in the library
+	 * 
+	 * @param listener, run on a background thread every time a pair is
+	 * flagged
+	 */
+	public void setDuplicateListener(Runnable listener) {
+		songLibrary.setDuplicateListener(listener);
+	}
+	
 	/**
 	 * Adds a song to a PlayList
 	 * 
@@ -0,0 +1,176 @@
+package song;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Turns release dates into a single packed int so that they can be sorted
+ * and filtered without touching Strings.
+ *
+ * Spotify gives release dates as "2001-07-17", "2001-07" or "2001"
+ * depending on how much it knows about the release. The packed value keeps
+ * the day since the epoch in the high bits and the precision in the low two
+ * bits, so ordering the ints orders the dates, and a year-only date sorts
+ * right before every full date in that year.
+ *
+ * Dates that can't be parsed are UNKNOWN, which sorts before every real date.
+ */
+public class ReleaseDate {
+
+	/**
+	 * Precision for a date with a day, month and year
+	 */
+	public static final int DAY = 2;
+	/**
+	 * Precision for a date with only a month and year
+	 */
+	public static final int MONTH = 1;
+	/**
+	 * Precision for a date with only a year
+	 */
+	public static final int YEAR = 0;
+	/**
+	 * Packed value of a missing or unreadable date
+	 */
+	public static final int UNKNOWN = Integer.MIN_VALUE;
+
+	private static final int PRECISION_BITS = 2;
+	private static final int PRECISION_MASK = 3;
+
+	private ReleaseDate() {
+	}
+
+	/**
+	 * Parses a release date into its packed form. Only the leading
+	 * "yyyy", "yyyy-mm" or "yyyy-mm-dd" part of the String is read.
+	 *
+	 * @param date, the release date as a String
+	 * @return the packed date, UNKNOWN if it can't be parsed
+	 */
+	public static int parse(String date) {
+		if (date == null) {
+			return UNKNOWN;
+		}
+		date = date.strip();
+		int year = digits(date, 0, 4);
+		if (year < 0) {
+			return UNKNOWN;
+		}
+		int month = 1;
+		int day = 1;
+		int precision = YEAR;
+		if (date.length() >= 7 && date.charAt(4) == '-') {
+			month = digits(date, 5, 2);
+			if (month < 0) {
+				return UNKNOWN;
+			}
+			precision = MONTH;
+			if (date.length() >= 10 && date.charAt(7) == '-') {
+				day = digits(date, 8, 2);
+				if (day < 0) {
+					return UNKNOWN;
+				}
+				precision = DAY;
+			}
+		}
+		try {
+			return pack(LocalDate.of(year, month, day).toEpochDay(), precision);
+		} catch (DateTimeException e) {
+			return UNKNOWN;
+		}
+	}
+
+	/**
+	 * Packs a day since the epoch and a precision into one int
+	 *
+	 * @param epochDay, the day since 1970-01-01
+	 * @param precision, DAY, MONTH or YEAR
+	 * @return the packed date
+	 */
+	public static int pack(long epochDay, int precision) {
+		return (int) (epochDay << PRECISION_BITS) | precision;
+	}
+
+	/**
+	 * Returns the day since the epoch of a packed date
+	 *
+	 * @param packed, a packed date
+	 * @return the day since 1970-01-01
+	 */
+	public static int epochDay(int packed) {
+		return packed >> PRECISION_BITS;
+	}
+
+	/**
+	 * Returns the precision of a packed date
+	 *
+	 * @param packed, a packed date
+	 * @return DAY, MONTH or YEAR
+	 */
+	public static int precision(int packed) {
+		return packed & PRECISION_MASK;
+	}
+
+	/**
+	 * Returns the smallest packed value that falls on or after a day. Any
+	 * packed date d is on or after the day exactly when d >= lowerBound(day),
+	 * which is what lets range filters compare ints.
+	 *
+	 * @param epochDay, the day since 1970-01-01
+	 * @return the lowest packed value for that day
+	 */
+	public static int lowerBound(long epochDay) {
+		return (int) (epochDay << PRECISION_BITS);
+	}
+
+	/**
+	 * Returns the packed value that starts a year
+	 *
+	 * @param year, the year
+	 * @return the lowest packed value in that year
+	 */
+	public static int startOfYear(int year) {
+		return lowerBound(LocalDate.of(year, 1, 1).toEpochDay());
+	}
+
+	/**
+	 * Formats a packed date back into the form Spotify uses
+	 *
+	 * @param packed, a packed date
+	 * @return the date as "yyyy-mm-dd", "yyyy-mm" or "yyyy", "" if UNKNOWN
+	 */
+	public static String format(int packed) {
+		if (packed == UNKNOWN) {
+			return "";
+		}
+		String date = LocalDate.ofEpochDay(epochDay(packed)).toString();
+		switch (precision(packed)) {
+		case YEAR:
+			return date.substring(0, 4);
+		case MONTH:
+			return date.substring(0, 7);
+		default:
+			return date;
+		}
+	}
+
+	/**
+	 * Reads count decimal digits starting at from
+	 *
+	 * @return the number, -1 if there aren't enough digits
+	 */
+	private static int digits(String s, int from, int count) {
+		if (s.length() < from + count) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = from; i < from + count; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+}
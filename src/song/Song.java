@@ -26,6 +26,10 @@ import utilities.PlayList;
  * Metadata: 
  * favorite used in model as special PlayList
  * genre used as recommended songs metadata
+ * 
+ * Format:
+ * duration, sample rate, channels and bitrate, read from the audio file's 
+ * header when the library loads. Duration is -1 until it is known.
  *
  */
 
@@ -45,6 +49,14 @@ public class Song {
 	private String art;
 	private String audioPath; 
 	private String songDate;
+	private int releaseDate;
+	
+	//format
+	private String format;
+	private long duration;
+	private int sampleRate;
+	private int channels;
+	private int bitrate;
 
 	
 	/**
@@ -66,6 +78,8 @@ public class Song {
 		this.art = artPath;
 		this.audioPath = audioPath; 
 		this.songDate = songDate; 
+		this.releaseDate = ReleaseDate.parse(songDate);
+		this.duration = -1;
 	}
 	
 	
@@ -79,6 +93,16 @@ public class Song {
 		return songDate;
 	}
 	
+	/**
+	 * Returns the release date parsed into a packed int, which is what 
+	 * date sorting and filtering compare. See ReleaseDate.
+	 * 
+	 * @return the packed release date, ReleaseDate.UNKNOWN if it couldn't be parsed
+	 */
+	public int getReleaseDate() {
+		return releaseDate;
+	}
+	
 	
 	/**
 	 * Returns the path of the artwork for the Song
@@ -127,6 +151,68 @@ public class Song {
 		return genre;
 	}
 	
+	/**
+	 * Sets what the audio file's header says about it
+	 * 
+	 * @param format, "wav" or "mp3"
+	 * @param duration, the length in milliseconds
+	 * @param sampleRate, the sample rate in Hz
+	 * @param channels, how many channels
+	 * @param bitrate, the bitrate in kbps
+	 */
+	public void setFormat(String format, long duration, int sampleRate, int channels, int bitrate) {
+		this.format = format;
+		this.duration = duration;
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+		this.bitrate = bitrate;
+	}
+	
+	/**
+	 * Returns the format of the audio file
+	 * 
+	 * @return "wav" or "mp3", null if it isn't known
+	 */
+	public String getFormat() {
+		return format;
+	}
+	
+	/**
+	 * Returns the length of the Song
+	 * 
+	 * @return the length in milliseconds, -1 if it isn't known
+	 */
+	public long getDuration() {
+		return duration;
+	}
+	
+	/**
+	 * Returns the sample rate of the audio
+	 * 
+	 * @return the sample rate in Hz, 0 if it isn't known
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+	
+	/**
+	 * Returns how many channels the audio has
+	 * 
+	 * @return the number of channels, 0 if it isn't known
+	 */
+	public int getChannels() {
+		return channels;
+	}
+	
+	/**
+	 * Returns the bitrate of the audio
+	 * 
+	 * @return the bitrate in kbps, 0 if it isn't known
+	 */
+	public int getBitrate() {
+		return bitrate;
+	}
+	
 	/**
 	 * Sets the cover Image URL
 	 * 
@@ -171,6 +257,10 @@ public class Song {
 	/**
 	 * Returns the Song's index
 	 * 
+	 * Playing a PlayList doesn't use this anymore, the position of the 
+	 * current Song is kept by a PlayCursor since a Song can be in more 
+	 * than one PlayList.
+	 * 
 	 * @return the Song's index
 	 */
 	public int getIndex() {
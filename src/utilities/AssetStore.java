@@ -0,0 +1,206 @@
+package utilities;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A folder of files that are named by what is in them, so the same file is
+ * only ever stored once.
+ *
+ * Each file is named by the SHA-256 hash of its bytes and put in a
+ * subfolder named after the first two characters of the hash, so no one
+ * folder ends up with thousands of files in it, like
+ * Audios/3f/3f9a...c2.wav. Every track from the same album downloads the
+ * same cover, and now all of them point at one file instead of each
+ * having its own copy, and two songs with the same name can't overwrite
+ * each other's files.
+ *
+ * Because one file can belong to many Songs, the store counts how many
+ * Songs are using each of its files. A file is only deleted when the last
+ * Song using it is released.
+ *
+ * Files are downloaded into the .staging folder first, named after the
+ * link they came from, and moved to their real name once the hash of the
+ * whole file is known.
+ *
+ * Properties:
+ * root:
+ * The folder the files are stored under.
+ *
+ * extension:
+ * What every file's name ends with, like ".wav".
+ *
+ * references:
+ * How many Songs are using each file, by the file's absolute path.
+ */
+public class AssetStore {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Path root;
+	private final String extension;
+	private final Map<String, Integer> references;
+
+	/**
+	 * Creates an AssetStore, the folder is made when the first file is stored
+	 *
+	 * @param root, the folder to store files under
+	 * @param extension, what every file's name ends with, like ".wav"
+	 */
+	public AssetStore(String root, String extension) {
+		this.root = Paths.get(root);
+		this.extension = extension;
+		this.references = new HashMap<>();
+	}
+
+	/**
+	 * Returns where a file downloaded from a link is written while it is
+	 * downloading, which is always the same for the same link so a cut off
+	 * download can be picked up again
+	 *
+	 * @param link, the link the file is downloaded from
+	 * @return the path in the .staging folder
+	 */
+	public Path stagingPath(String link) {
+		return root.resolve(".staging").resolve(hash(link.getBytes(StandardCharsets.UTF_8)) + extension);
+	}
+
+	/**
+	 * Returns where the file with a given hash is stored, whether or not it
+	 * is there yet
+	 *
+	 * @param hash, the SHA-256 hash of the file as hex
+	 * @return the path of the file
+	 */
+	public Path pathOf(String hash) {
+		return root.resolve(hash.substring(0, 2)).resolve(hash + extension);
+	}
+
+	/**
+	 * Returns whether the file with a given hash is already stored
+	 *
+	 * @param hash, the SHA-256 hash of the file as hex
+	 * @return true if it is stored
+	 */
+	public boolean contains(String hash) {
+		return Files.exists(pathOf(hash));
+	}
+
+	/**
+	 * Moves a finished download to its real name. If the same file is
+	 * already stored, the download is deleted instead.
+	 *
+	 * @param staged, the downloaded file
+	 * @param hash, the SHA-256 hash of the downloaded file as hex
+	 * @return the path of the stored file
+	 * @throws IOException if the file can't be moved
+	 */
+	public Path commit(Path staged, String hash) throws IOException {
+		Path target = pathOf(hash);
+		if (Files.exists(target)) {
+			Files.deleteIfExists(staged);
+			return target;
+		}
+		Files.createDirectories(target.getParent());
+		Files.move(staged, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return target;
+	}
+
+	/**
+	 * Counts one more Song as using a file
+	 *
+	 * @param path, the path of the file, as a Song has it
+	 */
+	public synchronized void retain(String path) {
+		references.merge(key(path), 1, Integer::sum);
+	}
+
+	/**
+	 * Counts one less Song as using a file, and deletes the file if no Song
+	 * is using it anymore. Only files under the store's folder are ever
+	 * deleted.
+	 *
+	 * @param path, the path of the file, as a Song has it
+	 * @return true if the file was deleted
+	 */
+	public synchronized boolean release(String path) {
+		String key = key(path);
+		Integer count = references.get(key);
+		if (count != null && count > 1) {
+			references.put(key, count - 1);
+			return false;
+		}
+		references.remove(key);
+		Path file = Paths.get(key);
+		if (!file.startsWith(root.toAbsolutePath().normalize())) {
+			return false;
+		}
+		try {
+			return Files.deleteIfExists(file);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns how many Songs are using a file
+	 *
+	 * @param path, the path of the file, as a Song has it
+	 * @return the number of Songs
+	 */
+	public synchronized int references(String path) {
+		return references.getOrDefault(key(path), 0);
+	}
+
+	private static String key(String path) {
+		return Paths.get(path).toAbsolutePath().normalize().toString();
+	}
+
+	/**
+	 * Returns a new SHA-256 MessageDigest, for hashing a file as it is
+	 * downloaded
+	 *
+	 * @return the MessageDigest
+	 */
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every JVM has to have SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the SHA-256 hash of some bytes as hex
+	 *
+	 * @param bytes, the bytes to hash
+	 * @return the hash
+	 */
+	public static String hash(byte[] bytes) {
+		return hex(newDigest().digest(bytes));
+	}
+
+	/**
+	 * Turns a finished digest into lowercase hex
+	 *
+	 * @param digest, the digest's bytes
+	 * @return the hex
+	 */
+	public static String hex(byte[] digest) {
+		char[] chars = new char[digest.length * 2];
+		for (int i = 0; i < digest.length; i++) {
+			chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+			chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+		}
+		return new String(chars);
+	}
+}
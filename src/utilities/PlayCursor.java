@@ -0,0 +1,241 @@
+package utilities;
+
+import java.util.List;
+
+import song.Song;
+
+/**
+ * Keeps track of where a PlayList is while it is being played.
+ * 
+ * Before this, the position of the current Song was written into 
+ * Song.index, which broke as soon as a Song was in two PlayLists and meant 
+ * every reorder rewrote every Song. A PlayCursor keeps the position itself, 
+ * so Songs are never touched and any number of cursors can play the same 
+ * Songs in different orders at the same time.
+ * 
+ * Properties:
+ * songs:
+ * The list of Songs being played. It is never changed, since adding or
+ * removing a Song would shift the Songs under the order, so every cursor
+ * of a PlayList can share the same list. The PlayList makes a new one the
+ * next time a cursor is asked for after its Songs change.
+ * 
+ * order:
+ * The PlayOrder that maps positions to Songs in songs.
+ * 
+ * position:
+ * The position of the current Song in order.
+ * 
+ * history:
+ * The positions played before the current one, newest last, so going back
+ * after a jump returns to where the user jumped from. Only the last 
+ * HISTORY_SIZE positions are kept.
+ */
+public class PlayCursor {
+	
+	private static final int HISTORY_SIZE = 256;
+
+	private List<Song> songs;
+	private PlayOrder order;
+	private int position;
+	
+	private int[] history;
+	private int historyStart;
+	private int historySize;
+	
+	/**
+	 * Creates a PlayCursor at the first position of an order
+	 * 
+	 * @param songs, the Songs to play, which must not change
+	 * @param order, the order to play them in
+	 */
+	public PlayCursor(List<Song> songs, PlayOrder order) {
+		this(songs, order, 0);
+	}
+	
+	/**
+	 * Creates a PlayCursor at a position of an order
+	 * 
+	 * @param songs, the Songs to play, which must not change
+	 * @param order, the order to play them in
+	 * @param position, the position to start at
+	 */
+	public PlayCursor(List<Song> songs, PlayOrder order, int position) {
+		this.songs = songs;
+		this.order = order;
+		this.position = position;
+		this.history = new int[HISTORY_SIZE];
+		this.historyStart = 0;
+		this.historySize = 0;
+	}
+	
+	/**
+	 * Returns the number of Songs the cursor plays through
+	 * 
+	 * @return the number of Songs
+	 */
+	public int size() {
+		return order.size();
+	}
+	
+	/**
+	 * Returns the current position in the order
+	 * 
+	 * @return the current position
+	 */
+	public int getPosition() {
+		return position;
+	}
+	
+	/**
+	 * Returns the order the cursor plays in
+	 * 
+	 * @return the PlayOrder
+	 */
+	public PlayOrder getOrder() {
+		return order;
+	}
+	
+	/**
+	 * Returns the current Song
+	 * 
+	 * @return the current Song, null if there are no Songs
+	 */
+	public Song current() {
+		if (order.size() == 0) {
+			return null;
+		}
+		return songs.get(order.get(position));
+	}
+	
+	/**
+	 * Returns the Song at any position without moving the cursor
+	 * 
+	 * @param position, the position in the order
+	 * @return the Song at that position
+	 */
+	public Song getSongAt(int position) {
+		return songs.get(order.get(position));
+	}
+	
+	/**
+	 * Returns if there is a Song after the current one
+	 * 
+	 * @return true if there is a next Song
+	 */
+	public boolean hasNext() {
+		return position + 1 < order.size();
+	}
+	
+	/**
+	 * Returns the next Song without moving the cursor
+	 * 
+	 * @return the next Song, null if at the end
+	 */
+	public Song peekNext() {
+		if (!hasNext()) {
+			return null;
+		}
+		return getSongAt(position + 1);
+	}
+	
+	/**
+	 * Moves to the next Song
+	 * 
+	 * @return the next Song, null if at the end
+	 */
+	public Song next() {
+		if (!hasNext()) {
+			return null;
+		}
+		pushHistory(position);
+		position += 1;
+		return current();
+	}
+	
+	/**
+	 * Returns if there is a Song to go back to
+	 * 
+	 * @return true if there is a previous Song
+	 */
+	public boolean hasPrevious() {
+		return historySize > 0 || position > 0;
+	}
+	
+	/**
+	 * Returns the Song previous() would move to without moving the cursor
+	 * 
+	 * @return the previous Song, null if there isn't one
+	 */
+	public Song peekPrevious() {
+		if (historySize > 0) {
+			return getSongAt(history[(historyStart + historySize - 1) % HISTORY_SIZE]);
+		}
+		if (position > 0) {
+			return getSongAt(position - 1);
+		}
+		return null;
+	}
+	
+	/**
+	 * Moves back to the Song played before the current one
+	 * 
+	 * @return the previous Song, null if there isn't one
+	 */
+	public Song previous() {
+		if (historySize > 0) {
+			historySize -= 1;
+			position = history[(historyStart + historySize) % HISTORY_SIZE];
+			return current();
+		}
+		if (position > 0) {
+			position -= 1;
+			return current();
+		}
+		return null;
+	}
+	
+	/**
+	 * Jumps straight to a position in the order
+	 * 
+	 * @param newPosition, the position to jump to
+	 * @return the Song at that position
+	 */
+	public Song jumpTo(int newPosition) {
+		if (newPosition < 0 || newPosition >= order.size()) {
+			throw new IndexOutOfBoundsException(newPosition);
+		}
+		if (newPosition != position) {
+			pushHistory(position);
+			position = newPosition;
+		}
+		return current();
+	}
+	
+	/**
+	 * Jumps to a Song. This has to look the Song up in the list, so 
+	 * it is meant for when the user clicks a Song, not for playing 
+	 * through the order.
+	 * 
+	 * @param song, the Song to jump to
+	 * @return true if the Song is played by this cursor
+	 */
+	public boolean jumpTo(Song song) {
+		int index = songs.indexOf(song);
+		if (index < 0 || index >= order.size()) {
+			return false;
+		}
+		jumpTo(order.positionOf(index));
+		return true;
+	}
+	
+	private void pushHistory(int played) {
+		if (historySize == HISTORY_SIZE) {
+			// drops the oldest position
+			historyStart = (historyStart + 1) % HISTORY_SIZE;
+			historySize -= 1;
+		}
+		history[(historyStart + historySize) % HISTORY_SIZE] = played;
+		historySize += 1;
+	}
+}
@@ -1,24 +1,27 @@
 package utilities;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
+import song.ReleaseDate;
 import song.Song;
 
 /**
  *	A data structure used to hold Song objects in a list that 
- *	can be shuffle played. Utilizes indexing feature of Song 
- *	in order to play PlayList Songs. 
+ *	can be shuffle played. 
  *	
- *	NOTE: This class doesn't actually use indexing to go 
- *	through the Songs, it uses a for each loop. To be able to 
- *	play a PlayList from a specific Song, Song.getIndex() is 
- *	required, but is handled in the Model.
+ *	NOTE: Playing a PlayList is done with a PlayCursor from 
+ *	cursor(), which keeps its own position. Songs don't store
+ *	where they are in a PlayList, since the same Song can be in 
+ *	more than one.
  *	
  *	
  *	Properties: 
@@ -39,10 +42,26 @@ import song.Song;
  *	in playFirst() but I really don't think I need that function.
  *
  *	playOrder:
- *	The order in which the songs will be played. It is used in
- *	shuffle because playOrder will be the random order for the 
- *	PlayList. Also in playFirst() but again, don't think we 
+ *	The order in which the songs will be played when the PlayList
+ *	isn't shuffled. Also in playFirst() but again, don't think we 
  *	need it.
+ *
+ *	shuffleOrder:
+ *	The random order of the PlayList while it is shuffled, null 
+ *	otherwise. It is a PlayOrder over the positions of shuffleBase,
+ *	so shuffling never copies the Songs. shuffleMode says which kind
+ *	of order it is and shuffleSeed is the seed it was made from, so
+ *	the same order can be remade to start at a chosen Song.
+ *	shuffleBase is the songList 
+ *	at the time of the shuffle, which keeps sorting the view from 
+ *	changing what plays next.
+ *	
+ *	snapshot:
+ *	A copy of the list PlayCursors play, shared by every cursor made
+ *	until the Songs change, so starting to play doesn't copy the
+ *	PlayList. snapshotOf is the list it was copied from. Adding, 
+ *	removing or replacing a Song drops it, and a new one is made the 
+ *	next time a cursor is asked for.
  *	
  *	genres:
  *	A HashMap of Strings mapped to Integers, for how many songs
@@ -59,7 +78,13 @@ public class PlayList {
 	// playing songs;
 	private ArrayList<Song> shuffle;
 	private ArrayList<Song> playOrder;
+	private PlayOrder shuffleOrder;
+	private ShuffleMode shuffleMode;
+	private long shuffleSeed;
+	private ArrayList<Song> shuffleBase;
 	private ArrayList<Song> originalOrder;
+	private List<Song> snapshot;
+	private ArrayList<Song> snapshotOf;
 	
 	// metadata
 	// HashMap that allows person to know what dominant genre a PlayList is
@@ -139,10 +164,11 @@ public class PlayList {
 	 */
 	public void addSong(Song song) {
 		playOrder = songList;
+		shuffleOrder = null;
 		songList.add(song);
 		originalOrder.add(song);
+		snapshot = null;
 		this.size += 1;
-		song.setIndex(this.size - 1);
 		
 		//metadata
         String genre = song.getGenre();
@@ -164,6 +190,8 @@ public class PlayList {
 		}
 		songList.remove(song);
 		originalOrder.remove(song);
+		shuffleOrder = null;
+		snapshot = null;
 		this.size -= 1;
 		
 		//metadata removes number from genre or removes it completely
@@ -171,6 +199,35 @@ public class PlayList {
 	     PlayList.decrementValue(genres, genre);
 	}
 	
+	/**
+	 * Puts a Song in the place of another one, for when two Songs turn out
+	 * to be the same recording and only one is kept. If the replacement is
+	 * already in the PlayList the other Song is just removed, so it isn't
+	 * there twice.
+	 * 
+	 * @param song, the Song to take out
+	 * @param replacement, the Song to put in its place
+	 */
+	public void replaceSong(Song song, Song replacement) {
+		if (!songList.contains(song)) {
+			return;
+		}
+		if (songList.contains(replacement)) {
+			removeSong(song);
+			return;
+		}
+		// the same position in every list, so the shuffle order still fits
+		for (ArrayList<Song> list : List.of(songList, originalOrder, shuffle, playOrder)) {
+			int index = list.indexOf(song);
+			if (index >= 0) {
+				list.set(index, replacement);
+			}
+		}
+		snapshot = null;
+		PlayList.decrementValue(genres, song.getGenre());
+		PlayList.incrementValue(genres, replacement.getGenre());
+	}
+	
 	/**
 	 * Returns if the PlayList contains the Song
 	 * 
@@ -185,6 +242,22 @@ public class PlayList {
 		}
 	}
 	
+	/**
+	 * Returns how long the PlayList is, counting only Songs whose length
+	 * is known
+	 * 
+	 * @return the length in milliseconds
+	 */
+	public long getDuration() {
+		long duration = 0;
+		for (Song song : songList) {
+			if (song.getDuration() > 0) {
+				duration += song.getDuration();
+			}
+		}
+		return duration;
+	}
+	
 	/**
 	 * Returns the genre metadata about the PlayList
 	 * 
@@ -197,37 +270,78 @@ public class PlayList {
 	
 	/**
 	 * Puts the Songs in a random Play Order
+	 * 
+	 * Only a random seed is picked here, the Song at each position is 
+	 * worked out when it is asked for with getSongAt(). This makes 
+	 * shuffling instant no matter how long the PlayList is.
 	 */
 	public void shuffle() {
-		//shuffles using randomInt()
-		playOrder = new ArrayList<Song>();
-		shuffle = new ArrayList<Song>();
-		for (Song song : songList) {
-			shuffle.add(song);
+		shuffle(ShuffleMode.RANDOM);
+	}
+	
+	/**
+	 * Puts the Songs in a Play Order picked by mode. RANDOM works like 
+	 * shuffle(), SMART also keeps Songs by the same artist apart, and 
+	 * OFF is the same as unshuffle().
+	 * 
+	 * @param mode, the kind of shuffle
+	 */
+	public void shuffle(ShuffleMode mode) {
+		if (mode == ShuffleMode.OFF) {
+			unshuffle();
+			return;
 		}
-		
 		Random random = new Random();
-		int index = 0;
-		while (shuffle.size() > 0) {
-			int i = random.nextInt(shuffle.size());
-			Song song = shuffle.get(i);
-			song.setIndex(index);
-			index += 1;
-			playOrder.add(song);
-			shuffle.remove(i);
-		}		
+		shuffleMode = mode;
+		shuffleSeed = random.nextLong();
+		shuffleBase = songList;
+		shuffleOrder = makeShuffleOrder(-1);
+	}
+	
+	/**
+	 * Makes the shuffled order for the current mode and seed
+	 * 
+	 * @param start, the index in shuffleBase to play first, -1 for none
+	 * @return the shuffled PlayOrder
+	 */
+	private PlayOrder makeShuffleOrder(int start) {
+		if (shuffleMode == ShuffleMode.SMART) {
+			return new SmartShuffleOrder(shuffleBase, shuffleSeed, start);
+		}
+		ShuffleOrder order = new ShuffleOrder(shuffleBase.size(), shuffleSeed);
+		if (start >= 0) {
+			return order.startingWith(start);
+		}
+		return order;
+	}
+	
+	/**
+	 * Returns how the PlayList is shuffled
+	 * 
+	 * @return the ShuffleMode, OFF if it isn't shuffled
+	 */
+	public ShuffleMode getShuffleMode() {
+		if (shuffleOrder == null) {
+			return ShuffleMode.OFF;
+		}
+		return shuffleMode;
+	}
+	
+	/**
+	 * Returns if the PlayList is currently shuffled
+	 * 
+	 * @return true if the PlayList is shuffled
+	 */
+	public boolean isShuffled() {
+		return shuffleOrder != null;
 	}
 	
 	/**
 	 * Unshuffles the current playlist
 	 */
 	public void unshuffle() {
+		shuffleOrder = null;
 		playOrder = songList;
-		int count = 0;
-		for (Song song : songList) {
-			song.setIndex(count);
-			count += 1;
-		}
 	}
 	
 	
@@ -242,31 +356,93 @@ public class PlayList {
 	 * @param song, the song select to be first
 	 */
 	public void playFirst(Song song) {
+		if (shuffleOrder != null) {
+			int index = shuffleBase.indexOf(song);
+			if (index >= 0) {
+				shuffleOrder = makeShuffleOrder(index);
+				return;
+			}
+		}
 		shuffle = new ArrayList<Song>();
 		shuffle.add(song);
-		song.setIndex(0);
-		
-		int index = 1;
 		for (Song s: playOrder) {
 			if (s != song) {
 				shuffle.add(s);
-				s.setIndex(index);
-				index += 1;
 			}
 		}
 		playOrder = shuffle;
-		for (Song s: playOrder) {
-			System.out.println(s.getName());
+	}
+	
+	/**
+	 * Returns a PlayCursor for playing the PlayList in its current 
+	 * Play Order. Each call makes a new cursor, so the same PlayList 
+	 * can be played more than once at a time.
+	 * 
+	 * If the PlayList is shuffled and start is given, the random order 
+	 * is rotated so that start plays first, like playFirst().
+	 * 
+	 * @param start, the Song to start at, or null to start at the beginning
+	 * @return a PlayCursor on the current Song
+	 */
+	public PlayCursor cursor(Song start) {
+		if (shuffleOrder != null) {
+			PlayOrder order = shuffleOrder;
+			int index = start == null ? -1 : shuffleBase.indexOf(start);
+			if (index >= 0) {
+				order = makeShuffleOrder(index);
+			}
+			return new PlayCursor(snapshot(shuffleBase), order);
+		}
+		ArrayList<Song> order = getPlayOrder();
+		int position = start == null ? 0 : Math.max(order.indexOf(start), 0);
+		return new PlayCursor(snapshot(order), PlayOrder.sequential(order.size()), position);
+	}
+	
+	/**
+	 * Returns the copy of a list that cursors share, making it only if the 
+	 * list changed since the last one
+	 * 
+	 * @param list, the list the cursor plays
+	 * @return a List that never changes with the same Songs
+	 */
+	private List<Song> snapshot(ArrayList<Song> list) {
+		if (snapshot == null || snapshotOf != list) {
+			snapshot = Collections.unmodifiableList(new ArrayList<Song>(list));
+			snapshotOf = list;
 		}
+		return snapshot;
 	}
 	
 	
+	/**
+	 * Returns the Song that plays at a position of the Play Order
+	 * 
+	 * @param position, the position in the Play Order
+	 * @return the Song that plays at that position
+	 */
+	public Song getSongAt(int position) {
+		if (shuffleOrder != null) {
+			return shuffleBase.get(shuffleOrder.get(position));
+		}
+		return getPlayOrder().get(position);
+	}
+	
 	/**
 	 * Returns the order in which to play the songs
 	 * 
+	 * While shuffled this has to build the whole list, so getSongAt() 
+	 * should be used to walk through the Play Order instead.
+	 * 
 	 * @return a List of Songs to play
 	 */
 	public ArrayList<Song> getPlayOrder(){
+		if (shuffleOrder != null) {
+			ArrayList<Song> order = new ArrayList<Song>(shuffleOrder.size());
+			for (int i = 0; i < shuffleOrder.size(); i++) {
+				order.add(shuffleBase.get(shuffleOrder.get(i)));
+			}
+			return order;
+		}
 		if (this.playOrder.size() == 0) {
 			return this.songList;
 		} else {
@@ -275,6 +451,7 @@ public class PlayList {
 	}
 	
 	public void resetPlayOrder(){
+		this.shuffleOrder = null;
 		this.playOrder = this.songList;
 	}
 	
@@ -284,6 +461,7 @@ public class PlayList {
 	public void sortPlaylist(ArrayList<Song> list) {
 		this.songList = list;
 		this.playOrder = list;
+		this.shuffleOrder = null;
 	}
 	
 	/**
@@ -334,28 +512,72 @@ public class PlayList {
 	
 	/**
 	 * Sorts the songLibrary by song release Date, Newest First.
+	 * 
+	 * Dates are parsed once when a Song is made, so this sorts packed ints 
+	 * rather than Strings. Songs with the same date keep their order.
 	 */
 	public void sortDate(){
-		ArrayList<String> dateList = new ArrayList<String>();
-		for (Song song : songList) {
-			dateList.add(song.getSongDate());
+		long[] keys = new long[songList.size()];
+		for (int i = 0; i < keys.length; i++) {
+			// ~date flips the order so the newest date comes first
+			keys[i] = ((long) ~songList.get(i).getReleaseDate() << 32) | i;
 		}
+		Arrays.sort(keys);
 		
-		Collections.sort(dateList);
-		
-		
-		ArrayList<Song> sortedOrder = new ArrayList<Song>();
-		for (int i = dateList.size() - 1; i >= 0; i--) {
-			String date = dateList.get(i);
-			for (Song song : songList) {
-				if (song.getSongDate().equals(date)) {
-					sortedOrder.add(song);
-				}
-			}
+		ArrayList<Song> sortedOrder = new ArrayList<Song>(keys.length);
+		for (long key : keys) {
+			sortedOrder.add(songList.get((int) key));
 		}
 		songList = sortedOrder;
 	}
 	
+	/**
+	 * Returns the Songs released in a year
+	 * 
+	 * @param year, the year
+	 * @return the Songs released in that year, in PlayList order
+	 */
+	public ArrayList<Song> filterYear(int year) {
+		return filterDates(ReleaseDate.startOfYear(year), ReleaseDate.startOfYear(year + 1));
+	}
+	
+	/**
+	 * Returns the Songs released in a decade
+	 * 
+	 * @param decade, the first year of the decade, like 1990
+	 * @return the Songs released in that decade, in PlayList order
+	 */
+	public ArrayList<Song> filterDecade(int decade) {
+		int start = decade - Math.floorMod(decade, 10);
+		return filterDates(ReleaseDate.startOfYear(start), ReleaseDate.startOfYear(start + 10));
+	}
+	
+	/**
+	 * Returns the Songs released between two dates, including both of them
+	 * 
+	 * @param from, the first day of the range
+	 * @param to, the last day of the range
+	 * @return the Songs released in the range, in PlayList order
+	 */
+	public ArrayList<Song> filterDateRange(LocalDate from, LocalDate to) {
+		return filterDates(ReleaseDate.lowerBound(from.toEpochDay()), 
+				ReleaseDate.lowerBound(to.toEpochDay() + 1));
+	}
+	
+	/**
+	 * Returns the Songs whose packed release date is in [start, end)
+	 */
+	private ArrayList<Song> filterDates(int start, int end) {
+		ArrayList<Song> matches = new ArrayList<Song>();
+		for (Song song : songList) {
+			int date = song.getReleaseDate();
+			if (date != ReleaseDate.UNKNOWN && date >= start && date < end) {
+				matches.add(song);
+			}
+		}
+		return matches;
+	}
+	
 	/**
 	 * Changes the PlayList's songList to the original order of the PlayList
 	 * 
@@ -0,0 +1,111 @@
+package utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import song.Song;
+
+/**
+ * Plays PlayLists with PlayCursors while Songs are added and removed, like
+ * unfavoriting the Song that is playing while Favorites plays, and checks
+ * the cursor keeps playing every Song it started with in order, and that
+ * merging a duplicate puts the kept Song in its place. Run it with
+ * the main method; it prints what it checked and throws if a check fails.
+ */
+public class PlayListTester {
+
+	public static void main(String[] args) {
+		removeWhilePlaying(false);
+		removeWhilePlaying(true);
+		addWhilePlaying();
+		replaceDuplicate();
+		System.out.println("all checks passed");
+	}
+
+	/**
+	 * Plays a PlayList from the start, removing the current Song and the
+	 * last Song on the way, then plays the rest to the end
+	 */
+	private static void removeWhilePlaying(boolean shuffled) {
+		PlayList playlist = new PlayList("Favorites");
+		for (int i = 0; i < 6; i++) {
+			playlist.addSong(new Song("Song " + i, "Artist", "Genre", null, "2022", "Audios/" + i + ".wav"));
+		}
+		if (shuffled) {
+			playlist.shuffle();
+		}
+		PlayCursor cursor = playlist.cursor(null);
+		List<Song> expected = new ArrayList<>();
+		for (int i = 0; i < cursor.size(); i++) {
+			expected.add(cursor.getSongAt(i));
+		}
+
+		List<Song> played = new ArrayList<>();
+		played.add(cursor.current());
+		played.add(cursor.next());
+		playlist.removeSong(cursor.current());
+		playlist.removeSong(expected.get(expected.size() - 1));
+		check(cursor.peekNext() == expected.get(2), "peekNext after removing the current Song");
+		while (cursor.hasNext()) {
+			played.add(cursor.next());
+		}
+		check(played.equals(expected), "every Song plays once, in order");
+		check(cursor.previous() == expected.get(expected.size() - 2), "previous after removing");
+
+		// a cursor made after the removals only plays what is left
+		check(playlist.cursor(null).size() == expected.size() - 2, "new cursor sees the removals");
+		System.out.println((shuffled ? "shuffled" : "in order") + ": removing while playing is fine");
+	}
+
+	/**
+	 * Adds a Song to a PlayList that is playing, which the cursor can't jump
+	 * to, and checks a new cursor starts at it, like changeSong makes
+	 */
+	private static void addWhilePlaying() {
+		PlayList playlist = new PlayList("Favorites");
+		for (int i = 0; i < 3; i++) {
+			playlist.addSong(new Song("Song " + i, "Artist", "Genre", null, "2022", "Audios/" + i + ".wav"));
+		}
+		PlayCursor cursor = playlist.cursor(null);
+		Song added = new Song("Added", "Artist", "Genre", null, "2022", "Audios/added.wav");
+		playlist.addSong(added);
+		check(!cursor.jumpTo(added), "a cursor can't jump to a Song added after it was made");
+		check(cursor.size() == 3, "the playing cursor keeps its Songs");
+		PlayCursor replaced = playlist.cursor(added);
+		check(replaced.current() == added && replaced.size() == 4, "a new cursor starts at the added Song");
+		check(replaced.previous() == playlist.getSongAt(2), "and goes back through the PlayList");
+		System.out.println("adding while playing is fine");
+	}
+
+	/**
+	 * Replaces a Song with the copy that is kept, like merging duplicates
+	 * does, in a PlayList that has only the duplicate and in one that has
+	 * both
+	 */
+	private static void replaceDuplicate() {
+		Song original = new Song("Song", "Artist", "Genre", null, "2022", "Audios/original.wav");
+		Song duplicate = new Song("Song (Remastered)", "Artist", "Genre", null, "2022", "Audios/duplicate.wav");
+		Song other = new Song("Other", "Artist", "Genre", null, "2022", "Audios/other.wav");
+		PlayList onlyDuplicate = new PlayList("Mix");
+		onlyDuplicate.addSong(other);
+		onlyDuplicate.addSong(duplicate);
+		PlayCursor cursor = onlyDuplicate.cursor(null);
+		onlyDuplicate.replaceSong(duplicate, original);
+		check(onlyDuplicate.getSongList().equals(List.of(other, original)), "kept Song takes the duplicate's place");
+		check(cursor.next() == duplicate, "a playing cursor carries on with what it started with");
+
+		PlayList both = new PlayList("Library");
+		both.addSong(original);
+		both.addSong(other);
+		both.addSong(duplicate);
+		both.replaceSong(duplicate, original);
+		check(both.getSongList().equals(List.of(original, other)), "kept Song isn't added twice");
+		System.out.println("merging a duplicate keeps the playlists whole");
+	}
+
+	private static void check(boolean passed, String what) {
+		if (!passed) {
+			throw new AssertionError(what);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package utilities;
+
+/**
+ * The order a PlayCursor walks through a list of Songs in. Positions are
+ * where a Song plays, indexes are where the Song sits in the list.
+ * 
+ * An order only maps numbers, it never holds or changes the Songs, which 
+ * is why the same Songs can be played in several orders at once.
+ */
+public interface PlayOrder {
+
+	/**
+	 * Returns the number of positions in the order
+	 * 
+	 * @return the number of positions
+	 */
+	int size();
+	
+	/**
+	 * Returns the index of the Song that plays at a position
+	 * 
+	 * @param position, a position from 0 to size() - 1
+	 * @return the index in the list of the Song at that position
+	 */
+	int get(int position);
+	
+	/**
+	 * Returns the position that the Song at an index plays at. 
+	 * This is the opposite of get().
+	 * 
+	 * @param index, an index in the list
+	 * @return the position that index plays at
+	 */
+	int positionOf(int index);
+	
+	/**
+	 * Returns an order that plays the list from start to end
+	 * 
+	 * @param size, the length of the list
+	 * @return the in order PlayOrder
+	 */
+	static PlayOrder sequential(int size) {
+		return new PlayOrder() {
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public int get(int position) {
+				return position;
+			}
+
+			@Override
+			public int positionOf(int index) {
+				return index;
+			}
+		};
+	}
+}
@@ -0,0 +1,13 @@
+package utilities;
+
+/**
+ * The ways a PlayList can be shuffled.
+ * 
+ * OFF plays the PlayList in order.
+ * RANDOM plays it in a random order, see ShuffleOrder.
+ * SMART plays it in a random order that spreads out Songs by the same 
+ * artist, see SmartShuffleOrder.
+ */
+public enum ShuffleMode {
+	OFF, RANDOM, SMART
+}
@@ -0,0 +1,181 @@
+package utilities;
+
+/**
+ * A random order of the positions 0 to size - 1 that is worked out one
+ * position at a time instead of being stored.
+ *
+ * The order is a keyed Feistel network, which scrambles numbers but can
+ * always be undone, so no two positions ever land on the same Song. The
+ * network works on a range that is a power of 4, so values that fall
+ * outside of [0, size) are put through it again until they land inside
+ * ("cycle walking"). The range is less than 4 times size, so that takes
+ * a couple of rounds at most on average.
+ *
+ * This means shuffling any number of Songs is one random seed, getting the
+ * Song at any position is a handful of multiplications, and nothing is
+ * copied or rewritten.
+ *
+ * Properties:
+ * size:
+ * The number of positions being shuffled.
+ *
+ * halfBits, halfMask:
+ * The width of each half of the Feistel network, in bits.
+ *
+ * keys:
+ * One key per round, all taken from the seed.
+ *
+ * offset:
+ * How far the order is rotated, used to make a chosen Song play first.
+ */
+public class ShuffleOrder implements PlayOrder {
+
+	private static final int ROUNDS = 4;
+
+	private final int size;
+	private final int halfBits;
+	private final long halfMask;
+	private final long[] keys;
+	private final int offset;
+
+	/**
+	 * Creates a random order of size positions
+	 *
+	 * @param size, the number of positions to shuffle
+	 * @param seed, the random seed the order is made from
+	 */
+	public ShuffleOrder(int size, long seed) {
+		this.size = size;
+		int bits = 2;
+		while ((1L << bits) < size) {
+			bits += 2;
+		}
+		this.halfBits = bits / 2;
+		this.halfMask = (1L << halfBits) - 1;
+		this.keys = new long[ROUNDS];
+		long state = seed;
+		for (int i = 0; i < ROUNDS; i++) {
+			state += 0x9E3779B97F4A7C15L;
+			keys[i] = mix(state);
+		}
+		this.offset = 0;
+	}
+
+	/**
+	 * Returns the number of positions in the order
+	 *
+	 * @return the number of positions
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns what is at a position of the shuffled order
+	 *
+	 * @param position, a position from 0 to size - 1
+	 * @return the index in the original order that plays at that position
+	 */
+	@Override
+	public int get(int position) {
+		if (position < 0 || position >= size) {
+			throw new IndexOutOfBoundsException(position);
+		}
+		int rotated = position + offset;
+		if (rotated >= size) {
+			rotated -= size;
+		}
+		long value = rotated;
+		do {
+			value = encrypt(value);
+		} while (value >= size);
+		return (int) value;
+	}
+
+	/**
+	 * Returns the position an index of the original order plays at.
+	 * This is the opposite of get().
+	 *
+	 * @param index, an index in the original order
+	 * @return the position it plays at in the shuffled order
+	 */
+	@Override
+	public int positionOf(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(index);
+		}
+		long value = index;
+		do {
+			value = decrypt(value);
+		} while (value >= size);
+		int position = (int) value - offset;
+		if (position < 0) {
+			position += size;
+		}
+		return position;
+	}
+
+	/**
+	 * Returns the same order, rotated so that index plays first. The Songs
+	 * after it keep the same random order they already had.
+	 *
+	 * @param index, the index in the original order to play first
+	 * @return a ShuffleOrder that starts with index
+	 */
+	public ShuffleOrder startingWith(int index) {
+		int position = positionOf(index);
+		int newOffset = offset + position;
+		if (newOffset >= size) {
+			newOffset -= size;
+		}
+		return new ShuffleOrder(size, keys, halfBits, halfMask, newOffset);
+	}
+
+	private ShuffleOrder(int size, long[] keys, int halfBits, long halfMask, int offset) {
+		this.size = size;
+		this.keys = keys;
+		this.halfBits = halfBits;
+		this.halfMask = halfMask;
+		this.offset = offset;
+	}
+
+	/*
+	 * Feistel network
+	 */
+
+	private long encrypt(long value) {
+		long left = value >>> halfBits;
+		long right = value & halfMask;
+		for (int i = 0; i < ROUNDS; i++) {
+			long next = left ^ round(right, keys[i]);
+			left = right;
+			right = next;
+		}
+		return (left << halfBits) | right;
+	}
+
+	private long decrypt(long value) {
+		long left = value >>> halfBits;
+		long right = value & halfMask;
+		for (int i = ROUNDS - 1; i >= 0; i--) {
+			long prev = right ^ round(left, keys[i]);
+			right = left;
+			left = prev;
+		}
+		return (left << halfBits) | right;
+	}
+
+	private long round(long half, long key) {
+		return mix(half ^ key) & halfMask;
+	}
+
+	/**
+	 * The SplitMix64 finalizer, scrambles every bit of a long
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
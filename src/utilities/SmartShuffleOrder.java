@@ -0,0 +1,274 @@
+package utilities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import song.Song;
+
+/**
+ * A random PlayOrder that keeps Songs by the same artist apart.
+ * 
+ * Songs are put into one bucket per artist and each bucket is shuffled. 
+ * A bucket with c Songs spreads them evenly over the whole PlayList, 
+ * at slots (j + offset) / c for its j-th Song, where the offset is 
+ * random for each bucket and each slot gets a little jitter. Merging 
+ * the buckets by slot with a heap gives an order where an artist with 
+ * a quarter of the Songs shows up about every fourth Song, instead of 
+ * in random clumps.
+ * 
+ * The order is made one position at a time as it is asked for, each 
+ * step costing O(log k) for k artists, so the first Song is ready right 
+ * away even on a huge PlayList. Before a Song is picked, the next few 
+ * buckets on the heap are checked so that the same artist, or failing 
+ * that the same genre, doesn't play twice in a row when it can be avoided.
+ * 
+ * Properties:
+ * songs:
+ * The Songs being ordered.
+ * 
+ * heap:
+ * The artist buckets that still have Songs, ordered by their next slot.
+ * 
+ * order, positions:
+ * The part of the order made so far, and the position of each index 
+ * that has been placed (-1 if it hasn't yet).
+ */
+public class SmartShuffleOrder implements PlayOrder {
+	
+	/**
+	 * How many buckets are looked at to avoid repeating an artist or genre
+	 */
+	private static final int LOOKAHEAD = 4;
+	/**
+	 * How far a slot can move from its even spacing, as a fraction of the spacing
+	 */
+	private static final double JITTER = 0.2;
+
+	private List<Song> songs;
+	private Random random;
+	private PriorityQueue<Bucket> heap;
+	private Bucket[] looked;
+	
+	private int[] order;
+	private int[] positions;
+	private int made;
+	
+	private String lastArtist;
+	private String lastGenre;
+	
+	/**
+	 * Creates a SmartShuffleOrder of songs
+	 * 
+	 * @param songs, the Songs to shuffle
+	 * @param seed, the random seed the order is made from
+	 */
+	public SmartShuffleOrder(List<Song> songs, long seed) {
+		this(songs, seed, -1);
+	}
+	
+	/**
+	 * Creates a SmartShuffleOrder of songs that starts with one of them
+	 * 
+	 * @param songs, the Songs to shuffle
+	 * @param seed, the random seed the order is made from
+	 * @param start, the index of the Song to play first, -1 for none
+	 */
+	public SmartShuffleOrder(List<Song> songs, long seed, int start) {
+		this.songs = songs;
+		this.random = new Random(seed);
+		this.order = new int[songs.size()];
+		this.positions = new int[songs.size()];
+		this.made = 0;
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = -1;
+		}
+		
+		// one bucket per artist
+		HashMap<String, Bucket> buckets = new HashMap<String, Bucket>();
+		ArrayList<Bucket> bucketList = new ArrayList<Bucket>();
+		for (int i = 0; i < songs.size(); i++) {
+			String artist = artistKey(songs.get(i));
+			Bucket bucket = buckets.get(artist);
+			if (bucket == null) {
+				bucket = new Bucket(artist);
+				buckets.put(artist, bucket);
+				bucketList.add(bucket);
+			}
+			bucket.add(i);
+		}
+		
+		looked = new Bucket[LOOKAHEAD];
+		heap = new PriorityQueue<Bucket>(Math.max(1, bucketList.size()));
+		for (Bucket bucket : bucketList) {
+			bucket.shuffle(start);
+			if (start >= 0 && bucket.items[0] == start) {
+				// the chosen Song is placed first, its artist keeps its spacing
+				place(bucket.take());
+			}
+			if (bucket.hasNext()) {
+				heap.add(bucket);
+			}
+		}
+	}
+	
+	@Override
+	public int size() {
+		return order.length;
+	}
+	
+	@Override
+	public int get(int position) {
+		if (position < 0 || position >= order.length) {
+			throw new IndexOutOfBoundsException(position);
+		}
+		while (made <= position) {
+			makeNext();
+		}
+		return order[position];
+	}
+	
+	@Override
+	public int positionOf(int index) {
+		if (index < 0 || index >= order.length) {
+			throw new IndexOutOfBoundsException(index);
+		}
+		while (positions[index] < 0) {
+			makeNext();
+		}
+		return positions[index];
+	}
+	
+	/**
+	 * Places the next Song in the order
+	 */
+	private void makeNext() {
+		int count = 0;
+		while (count < LOOKAHEAD && !heap.isEmpty()) {
+			looked[count] = heap.poll();
+			count += 1;
+		}
+		
+		// first choice is a new artist and genre, then just a new artist
+		int pick = -1;
+		int fallback = -1;
+		for (int i = 0; i < count; i++) {
+			Song song = songs.get(looked[i].peek());
+			boolean newArtist = !looked[i].artist.equals(lastArtist);
+			if (newArtist && !Objects.equals(song.getGenre(), lastGenre)) {
+				pick = i;
+				break;
+			}
+			if (newArtist && fallback < 0) {
+				fallback = i;
+			}
+		}
+		if (pick < 0) {
+			pick = fallback >= 0 ? fallback : 0;
+		}
+		
+		for (int i = 0; i < count; i++) {
+			if (i != pick) {
+				heap.add(looked[i]);
+			}
+		}
+		Bucket chosen = looked[pick];
+		place(chosen.take());
+		if (chosen.hasNext()) {
+			heap.add(chosen);
+		}
+	}
+	
+	private void place(int index) {
+		Song song = songs.get(index);
+		order[made] = index;
+		positions[index] = made;
+		made += 1;
+		lastArtist = artistKey(song);
+		lastGenre = song.getGenre();
+	}
+	
+	private static String artistKey(Song song) {
+		return song.getArtist().strip().toLowerCase();
+	}
+	
+	/**
+	 * The Songs by one artist, shuffled and spread out by slot
+	 */
+	private class Bucket implements Comparable<Bucket> {
+		private String artist;
+		private int[] items;
+		private int size;
+		private int next;
+		private double offset;
+		private double slot;
+		
+		private Bucket(String artist) {
+			this.artist = artist;
+			this.items = new int[4];
+			this.size = 0;
+			this.next = 0;
+		}
+		
+		private void add(int index) {
+			if (size == items.length) {
+				int[] bigger = new int[size * 2];
+				System.arraycopy(items, 0, bigger, 0, size);
+				items = bigger;
+			}
+			items[size] = index;
+			size += 1;
+		}
+		
+		/**
+		 * Fisher-Yates shuffles the bucket, putting start first if it is in it
+		 */
+		private void shuffle(int start) {
+			for (int i = size - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int tmp = items[i];
+				items[i] = items[j];
+				items[j] = tmp;
+			}
+			for (int i = 0; i < size; i++) {
+				if (items[i] == start) {
+					items[i] = items[0];
+					items[0] = start;
+					break;
+				}
+			}
+			offset = random.nextDouble();
+			updateSlot();
+		}
+		
+		private boolean hasNext() {
+			return next < size;
+		}
+		
+		private int peek() {
+			return items[next];
+		}
+		
+		private int take() {
+			int index = items[next];
+			next += 1;
+			if (hasNext()) {
+				updateSlot();
+			}
+			return index;
+		}
+		
+		private void updateSlot() {
+			double jitter = (random.nextDouble() - 0.5) * JITTER;
+			slot = (next + offset + jitter) / size;
+		}
+
+		@Override
+		public int compareTo(Bucket other) {
+			return Double.compare(slot, other.slot);
+		}
+	}
+}
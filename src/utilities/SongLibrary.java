@@ -5,11 +5,24 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.function.Consumer;
 
+import audio.AudioHeader;
+import audio.HeaderScanner;
+import audio.LibraryAnalyzer;
+import audio.Prefetcher;
+import audio.Trim;
+import audio.Waveform;
+import audio.WaveformCache;
 import song.Song;
 
 /**
@@ -27,6 +40,35 @@ import song.Song;
  * songLibrary:
  * An ArrayList of all the Songs created when this class is initialized. 
  * 
+ * audioStore, artStore:
+ * Count how many Songs are using each audio and art file, so a file
+ * shared by several Songs is only deleted along with the last of them.
+ * 
+ * analyzer:
+ * Measures the loudness of every Song's audio, fingerprints it and finds
+ * the silence at its start and end in the background, saving them to
+ * analysis.txt, fingerprints.txt and silence.txt next to data.txt.
+ * 
+ * headers:
+ * Reads each Song's length and format from its audio file's header, in
+ * parallel while the library loads, saving them to headers.txt next to
+ * data.txt so each file is only read once.
+ * 
+ * waveforms:
+ * Makes the Waveform of each Song's audio in the background and saves it
+ * in the waveforms folder, for the bar under the Song that is playing.
+ * 
+ * prefetcher:
+ * Reads the files of the next few Songs ahead of time, at most
+ * PREFETCH_RATE bytes a second, so they are in the operating system's
+ * cache when they start, even on slow network storage.
+ * 
+ * duplicates:
+ * Pairs of audio paths that are the same recording, found by their
+ * fingerprints, the one already in the library first. Songs imported
+ * under a different title or from a different copy are still caught.
+ * Each pair is printed as it is flagged and duplicateListener is told.
+ * 
  * @author Leighanna/Jackson/Paris
  */
 public class SongLibrary {
@@ -34,6 +76,20 @@ public class SongLibrary {
 	ArrayList<Song> songLibrary;
 	ArrayList<String> songTitleArtist;
 	ArrayList<PlayList> playlists;
+	AssetStore audioStore;
+	AssetStore artStore;
+	HeaderScanner headers;
+	LibraryAnalyzer analyzer;
+	WaveformCache waveforms;
+	Prefetcher prefetcher;
+	List<String[]> duplicates;
+	volatile Runnable duplicateListener;
+	
+	/**
+	 * How fast the next Songs' files are read ahead, slow enough to leave
+	 * the disk to the Song that is playing
+	 */
+	private static final long PREFETCH_RATE = 8L * 1024 * 1024;
 	
 
 	/**
@@ -42,8 +98,24 @@ public class SongLibrary {
 	public SongLibrary() {
 		songLibrary = new ArrayList<>();
 		playlists = new ArrayList<>();
+		audioStore = new AssetStore("Audios", ".wav");
+		artStore = new AssetStore("src/images", ".jpg");
+		headers = new HeaderScanner("headers.txt");
+		analyzer = new LibraryAnalyzer("analysis.txt", "fingerprints.txt", "silence.txt");
+		prefetcher = new Prefetcher(PREFETCH_RATE);
+		waveforms = new WaveformCache("waveforms");
+		duplicates = Collections.synchronizedList(new ArrayList<>());
+		analyzer.setDuplicateListener((original, duplicate) -> {
+			duplicates.add(new String[] {original, duplicate});
+			Runnable listener = duplicateListener;
+			if (listener != null) {
+				listener.run();
+			}
+		});
 		try {
 			addSongs();
+			readHeaders(songLibrary);
+			analyzer.analyzeInBackground(audioPaths(songLibrary));
 			loadPlaylists();
 		} catch (IOException e) {
 			
@@ -57,22 +129,18 @@ public class SongLibrary {
 	 */
 	private void addSongs() throws IOException {
 		List<String> dataList = Files.readAllLines(Paths.get("data.txt"), StandardCharsets.UTF_8);
-		File dir = new File("Audios");
-		File[] paths = dir.listFiles();
-		if (paths != null) {
-			for (File p : paths) {
-				if (p.toString().endsWith(".wav")) {
-					for (String data : dataList) {
-						if (data.contains(p.toString())) {
-							String[] info = data.split(",");
-							Song song = new Song(info[0].trim(), info[1].trim(), info[2].trim(), info[3].trim(), info[4].trim(), info[5].trim());
-							songLibrary.add(song);
-							song.setCover(info[3].trim());
-						} 
-					}			
-				}
+		// audio is stored in subfolders of Audios now, so each line is checked
+		// for its own file instead of matching lines against a listing of Audios
+		for (String data : dataList) {
+			String[] info = data.split(",");
+			if (info.length < 6 || !info[5].trim().endsWith(".wav") || !Files.exists(Paths.get(info[5].trim()))) {
+				continue;
 			}
-		} 
+			Song song = new Song(info[0].trim(), info[1].trim(), info[2].trim(), info[3].trim(), info[4].trim(), info[5].trim());
+			songLibrary.add(song);
+			song.setCover(info[3].trim());
+			retain(song);
+		}
 		
 		// this works, arts have to have the name formatted to match the name 
 		// of the song, including spaces and weird stuff
@@ -80,6 +148,9 @@ public class SongLibrary {
 		File[] paths2 = dir2.listFiles();
 		if (paths2 != null) {
 			for (File p : paths2) {
+				if (!p.isFile()) {
+					continue;
+				}
 				for (Song song : songLibrary) {
 					if (p.toString().contains(song.getName())){
 						song.setCover(p.toString());
@@ -98,6 +169,17 @@ public class SongLibrary {
 		return songLibrary;
 	}
 	
+	/**
+	 * Builds a SongTable out of every Song in the library. The table keeps
+	 * the metadata in off-heap columns, which is what very large libraries
+	 * should sort and filter over instead of the ArrayList.
+	 * 
+	 * @return a SongTable of the library
+	 */
+	public SongTable toSongTable() {
+		return new SongTable(songLibrary);
+	}
+	
 	/**
 	 * Returns the ArrayList of Songs
 	 * 
@@ -158,26 +240,76 @@ public class SongLibrary {
 		File[] paths2 = dir2.listFiles();
 		if (paths2 != null) {
 			for (File p : paths2) {
-				if (p.toString().contains(song.getName())){
+				if (p.isFile() && p.toString().contains(song.getName())){
 					song.setCover(p.toString());
 				} 
 			}
 		}
 		
+		// songs on the same album share their art, so the audio is what tells songs apart
 		for (Song songs : songLibrary) {
-			if (songs.getArtPath().equals(song.getArtPath())) {
+			if (songs.getAudioPath().equals(song.getAudioPath())) {
 				return;
 			}
 		}
 		songLibrary.add(song);
+		retain(song);
+		readHeaders(List.of(song));
+		analyzer.analyzeInBackground(List.of(song.getAudioPath()));
+		waveforms.requestAll(List.of(song.getAudioPath()));
 
 	} 
 	
+	/**
+	 * Adds a batch of songs to the song library, like addSong but only
+	 * looking through src/images and the library once for the whole batch
+	 * 
+	 * @param songs
+	 * 		are the songs to be added to the song library
+	 * @return the songs that were added, leaving out any already in the library
+	 */
+	public List<Song> addSongs(List<Song> songs) {
+		File dir2 = new File("src/images");
+		File[] paths2 = dir2.listFiles();
+		Set<String> audioPaths = new HashSet<>();
+		for (Song songs2 : songLibrary) {
+			audioPaths.add(songs2.getAudioPath());
+		}
+		List<Song> added = new ArrayList<>();
+		for (Song song : songs) {
+			if (paths2 != null) {
+				for (File p : paths2) {
+					if (p.isFile() && p.toString().contains(song.getName())){
+						song.setCover(p.toString());
+					} 
+				}
+			}
+			if (audioPaths.add(song.getAudioPath())) {
+				songLibrary.add(song);
+				added.add(song);
+				retain(song);
+			}
+		}
+		readHeaders(added);
+		analyzer.analyzeInBackground(audioPaths(added));
+		waveforms.requestAll(audioPaths(added));
+		return added;
+	}
+	
+	/**
+	 * Removes a song from the library and every playlist. Its audio and art
+	 * are only deleted if no other song in the library is using them.
+	 * 
+	 * @param song
+	 * 		is the song to be removed
+	 */
 	public void removeSong(Song song) {
-		String artPath = song.getArtPath();
-		String audioPath = song.getAudioPath();
-		removeArt(artPath);
-		removeAudio(audioPath);
+		if (audioStore.release(song.getAudioPath())) {
+			analyzer.remove(song.getAudioPath());
+		}
+		if (artStore.release(song.getArtPath())) {
+			Thumbnails.delete(song.getArtPath());
+		}
 		songLibrary.remove(song);
 		for (PlayList p : playlists) {
 			p.removeSong(song);
@@ -190,28 +322,150 @@ public class SongLibrary {
 		
 	}
 	
-	private void removeArt(String artPath) {
-		File dir2 = new File("src/images");
-		File[] paths2 = dir2.listFiles();
-		if (paths2 != null) {
-			for (File p : paths2) {
-				if (p.toString().equals(artPath)){
-					p.delete();
-				} 
+	/**
+	 * Returns what to multiply the volume by while a song plays, so songs
+	 * all play at about the same loudness. Songs that haven't been measured
+	 * yet play as they are.
+	 * 
+	 * @param song, the song that is playing
+	 * @return the volume factor, between 0 and 1
+	 */
+	public double getVolume(Song song) {
+		return analyzer.getVolume(song.getAudioPath());
+	}
+	
+	/**
+	 * Returns where the sound in a Song's audio starts and ends, so the
+	 * silence before and after it can be skipped
+	 * 
+	 * @param song, the Song
+	 * @return the Trim, null if the audio hasn't been looked through yet or
+	 * couldn't be
+	 */
+	public Trim getTrim(Song song) {
+		return analyzer.getTrim(song.getAudioPath());
+	}
+	
+	/**
+	 * Hands over the Waveform of a Song's audio, right away if it has been
+	 * made, otherwise from a background thread once it is made, which is
+	 * asked for right away since this is for the Song that is playing
+	 * 
+	 * @param song, the Song
+	 * @param whenReady, given the Waveform, never called if it can't be made
+	 */
+	public void getWaveform(Song song, Consumer<Waveform> whenReady) {
+		waveforms.get(song.getAudioPath(), whenReady);
+	}
+	
+	/**
+	 * Starts reading the files of the Songs after the one that is playing,
+	 * so they start right away
+	 * 
+	 * @param next, the next few Songs, in the order they will play
+	 */
+	public void readAhead(List<Song> next) {
+		prefetcher.follow(audioPaths(next));
+	}
+	
+	/**
+	 * Returns every pair of Songs in the library that are the same
+	 * recording, flagged as their audio was fingerprinted
+	 * 
+	 * @return each pair, the Song that was in the library first first
+	 */
+	public List<Song[]> getDuplicates() {
+		List<Song[]> pairs = new ArrayList<>();
+		synchronized (duplicates) {
+			for (String[] pair : duplicates) {
+				Song original = findByAudio(pair[0]);
+				Song duplicate = findByAudio(pair[1]);
+				if (original != null && duplicate != null && original != duplicate) {
+					pairs.add(new Song[] {original, duplicate});
+				}
 			}
 		}
+		return pairs;
 	}
 	
-	private void removeAudio(String audioPath) {
-		File dir2 = new File("Audios");
-		File[] paths2 = dir2.listFiles();
-		if (paths2 != null) {
-			for (File p : paths2) {
-				if (p.toString().equals(audioPath)){
-					p.delete();
-				} 
+	/**
+	 * Fingerprints every Song that hasn't been yet, waiting for it, then
+	 * looks every Song up against the rest to flag every duplicate in the
+	 * library, not just the ones caught at import
+	 * 
+	 * @return every pair of Songs that are the same recording
+	 */
+	public List<Song[]> findDuplicates() {
+		analyzer.analyze(audioPaths(songLibrary));
+		List<String[]> found = analyzer.findDuplicates();
+		synchronized (duplicates) {
+			duplicates.clear();
+			duplicates.addAll(found);
+		}
+		return getDuplicates();
+	}
+	
+	/**
+	 * Sets what to tell when a Song is flagged as the same recording as one
+	 * already in the library
+	 * 
+	 * @param listener, run on an analyzer thread every time a pair is
+	 * flagged
+	 */
+	public void setDuplicateListener(Runnable listener) {
+		duplicateListener = listener;
+	}
+	
+	/**
+	 * Forgets every flagged pair of duplicates, for when the user wants to
+	 * keep both
+	 */
+	public void clearDuplicates() {
+		duplicates.clear();
+	}
+	
+	private Song findByAudio(String audioPath) {
+		Path path = Paths.get(audioPath).normalize();
+		for (Song song : songLibrary) {
+			if (Paths.get(song.getAudioPath()).normalize().equals(path)) {
+				return song;
 			}
 		}
+		return null;
+	}
+	
+	/**
+	 * Gives Songs their length and format from their audio files' headers
+	 * 
+	 * @param songs, the Songs
+	 */
+	private void readHeaders(List<Song> songs) {
+		Map<String, AudioHeader> found = headers.scan(audioPaths(songs));
+		for (Song song : songs) {
+			AudioHeader header = found.get(song.getAudioPath());
+			if (header != null) {
+				song.setFormat(header.getFormat(), header.getDuration(), header.getSampleRate(), header.getChannels(),
+						header.getBitrate());
+			}
+		}
+	}
+	
+	private static List<String> audioPaths(List<Song> songs) {
+		List<String> paths = new ArrayList<>();
+		for (Song song : songs) {
+			paths.add(song.getAudioPath());
+		}
+		return paths;
+	}
+	
+	/**
+	 * Counts a song as using its audio and art
+	 * 
+	 * @param song, the song that was added to the library
+	 */
+	private void retain(Song song) {
+		audioStore.retain(song.getAudioPath());
+		artStore.retain(song.getArtPath());
 	}
 	
 	private void removeFromFile(String name, String artist) throws IOException {
@@ -0,0 +1,664 @@
+package utilities;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import song.ReleaseDate;
+import song.Song;
+
+/**
+ * A column store for Song metadata, meant for libraries that are too big
+ * to keep as one Song object per track.
+ *
+ * Every property lives in its own off-heap column (a direct ByteBuffer), so
+ * a million tracks are a handful of large buffers instead of millions of
+ * objects for the garbage collector to walk. Artists and genres are interned
+ * in a StringDictionary and stored as 4 byte ids, and release dates are
+ * kept in their packed ReleaseDate form. Titles and file paths are
+ * mostly unique per track, so they are written as UTF-8 into an off-heap
+ * text column instead, and each row keeps an offset into it.
+ *
+ * Sorting and filtering run directly over the columns and hand back row
+ * numbers. A SongView reads a single row without copying it, and toSong()
+ * builds a regular Song for the parts of the program that still need one.
+ *
+ * Properties:
+ * size:
+ * The number of rows in the table.
+ *
+ * capacity:
+ * The number of rows the columns can hold before they are grown.
+ *
+ * textOffset, artist, genre, date, duration, flags:
+ * The fixed width columns, one entry per row.
+ *
+ * dateText:
+ * The id in strings of the release date as it was given, for the rows
+ * where formatting the packed date wouldn't give it back, like dates that
+ * couldn't be parsed, and -1 for the rest.
+ *
+ * text:
+ * Holds the title, art path and audio path of each row back to back,
+ * each one prefixed with its length.
+ *
+ * strings:
+ * The StringDictionary used by the artist, genre and dateText columns.
+ */
+public class SongTable {
+
+	/**
+	 * Bit in the flags column that marks a favorite Song
+	 */
+	public static final byte FAVORITE = 1;
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int INITIAL_TEXT_CAPACITY = 64 * 1024;
+
+	private int size;
+	private int capacity;
+
+	// fixed width columns
+	private ByteBuffer textOffset;
+	private ByteBuffer artist;
+	private ByteBuffer genre;
+	private ByteBuffer date;
+	private ByteBuffer dateText;
+	private ByteBuffer duration;
+	private ByteBuffer flags;
+
+	// variable width column
+	private ByteBuffer text;
+	private int textEnd;
+
+	private StringDictionary strings;
+
+	/**
+	 * Creates an empty SongTable
+	 */
+	public SongTable() {
+		this.size = 0;
+		this.capacity = INITIAL_CAPACITY;
+		this.textOffset = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+		this.artist = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+		this.genre = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+		this.date = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+		this.dateText = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+		this.duration = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+		this.flags = ByteBuffer.allocateDirect(capacity);
+		this.text = ByteBuffer.allocateDirect(INITIAL_TEXT_CAPACITY);
+		this.textEnd = 0;
+		this.strings = new StringDictionary();
+	}
+
+	/**
+	 * Creates a SongTable holding every Song in a List
+	 *
+	 * @param songs, the Songs to add
+	 */
+	public SongTable(List<Song> songs) {
+		this();
+		for (Song song : songs) {
+			add(song);
+		}
+	}
+
+	/**
+	 * Adds a Song to the end of the table
+	 *
+	 * @param song, the Song to add
+	 * @return the row the Song was stored in
+	 */
+	public int add(Song song) {
+		if (size == capacity) {
+			grow();
+		}
+		int row = size;
+		textOffset.putInt(row * Integer.BYTES, textEnd);
+		writeText(song.getName());
+		writeText(song.getArtPath());
+		writeText(song.getAudioPath());
+
+		artist.putInt(row * Integer.BYTES, strings.intern(song.getArtist()));
+		genre.putInt(row * Integer.BYTES, strings.intern(song.getGenre()));
+		date.putInt(row * Integer.BYTES, song.getReleaseDate());
+		String songDate = song.getSongDate();
+		boolean formats = songDate == null || songDate.equals(ReleaseDate.format(song.getReleaseDate()));
+		dateText.putInt(row * Integer.BYTES, formats ? -1 : strings.intern(songDate));
+		duration.putInt(row * Integer.BYTES, 0);
+		flags.put(row, song.isFavorite() ? FAVORITE : 0);
+
+		size += 1;
+		return row;
+	}
+
+	/**
+	 * Returns the number of rows in the table
+	 *
+	 * @return the number of rows in the table
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the name of the Song in a row
+	 *
+	 * @param row, the row
+	 * @return the name of the Song
+	 */
+	public String getName(int row) {
+		return readText(textField(row, 0));
+	}
+
+	/**
+	 * Returns the path to the album art of the Song in a row
+	 *
+	 * @param row, the row
+	 * @return the path to the album art
+	 */
+	public String getArtPath(int row) {
+		return readText(textField(row, 1));
+	}
+
+	/**
+	 * Returns the path to the audio of the Song in a row
+	 *
+	 * @param row, the row
+	 * @return the path to the audio
+	 */
+	public String getAudioPath(int row) {
+		return readText(textField(row, 2));
+	}
+
+	/**
+	 * Returns the artist of the Song in a row
+	 *
+	 * @param row, the row
+	 * @return the artist of the Song
+	 */
+	public String getArtist(int row) {
+		return strings.get(artistId(row));
+	}
+
+	/**
+	 * Returns the genre of the Song in a row
+	 *
+	 * @param row, the row
+	 * @return the genre of the Song
+	 */
+	public String getGenre(int row) {
+		return strings.get(genreId(row));
+	}
+
+	/**
+	 * Returns the release date of the Song in a row
+	 *
+	 * @param row, the row
+	 * @return the release date of the Song
+	 */
+	public String getSongDate(int row) {
+		int id = dateText.getInt(row * Integer.BYTES);
+		return id < 0 ? ReleaseDate.format(getReleaseDate(row)) : strings.get(id);
+	}
+
+	/**
+	 * Returns the packed release date of the Song in a row
+	 *
+	 * @param row, the row
+	 * @return the packed release date, see ReleaseDate
+	 */
+	public int getReleaseDate(int row) {
+		return date.getInt(row * Integer.BYTES);
+	}
+
+	/**
+	 * Returns the duration of the Song in a row in milliseconds
+	 *
+	 * @param row, the row
+	 * @return the duration in milliseconds, 0 if it is not known
+	 */
+	public int getDuration(int row) {
+		return duration.getInt(row * Integer.BYTES);
+	}
+
+	/**
+	 * Sets the duration of the Song in a row
+	 *
+	 * @param row, the row
+	 * @param millis, the duration in milliseconds
+	 */
+	public void setDuration(int row, int millis) {
+		duration.putInt(row * Integer.BYTES, millis);
+	}
+
+	/**
+	 * Returns if the Song in a row is a favorite
+	 *
+	 * @param row, the row
+	 * @return true if the Song is a favorite
+	 */
+	public boolean isFavorite(int row) {
+		return (flags.get(row) & FAVORITE) != 0;
+	}
+
+	/**
+	 * Marks or unmarks the Song in a row as a favorite
+	 *
+	 * @param row, the row
+	 * @param favorite, true to mark the Song as a favorite
+	 */
+	public void setFavorite(int row, boolean favorite) {
+		byte f = flags.get(row);
+		if (favorite) {
+			f |= FAVORITE;
+		} else {
+			f &= ~FAVORITE;
+		}
+		flags.put(row, f);
+	}
+
+	/**
+	 * Returns a view of a row. The view holds nothing but the row number
+	 * and reads every property straight from the columns.
+	 *
+	 * @param row, the row
+	 * @return a SongView of that row
+	 */
+	public SongView view(int row) {
+		return new SongView(row);
+	}
+
+	/**
+	 * Builds a regular Song out of a row
+	 *
+	 * @param row, the row
+	 * @return a new Song with the row's metadata
+	 */
+	public Song toSong(int row) {
+		Song song = new Song(getName(row), getArtist(row), getGenre(row),
+				getArtPath(row), getSongDate(row), getAudioPath(row));
+		song.setCover(song.getArtPath());
+		if (isFavorite(row)) {
+			song.makeFavorite();
+		}
+		return song;
+	}
+
+	/*
+	 * Sorting, each returns the rows in sorted order and leaves the table alone
+	 */
+
+	/**
+	 * Returns the rows sorted by artist
+	 *
+	 * @return the rows sorted by artist
+	 */
+	public int[] sortArtist() {
+		long[] keys = new long[size];
+		for (int row = 0; row < size; row++) {
+			keys[row] = pack(strings.rank(artistId(row)), row);
+		}
+		return unpack(keys);
+	}
+
+	/**
+	 * Returns the rows sorted by genre
+	 *
+	 * @return the rows sorted by genre
+	 */
+	public int[] sortGenre() {
+		long[] keys = new long[size];
+		for (int row = 0; row < size; row++) {
+			keys[row] = pack(strings.rank(genreId(row)), row);
+		}
+		return unpack(keys);
+	}
+
+	/**
+	 * Returns the rows sorted by release date, newest first
+	 *
+	 * @return the rows sorted by release date
+	 */
+	public int[] sortDate() {
+		long[] keys = new long[size];
+		for (int row = 0; row < size; row++) {
+			// ~date flips the order so the newest date comes first
+			keys[row] = pack(~getReleaseDate(row), row);
+		}
+		return unpack(keys);
+	}
+
+	/**
+	 * Returns the rows sorted by title. Titles are compared as UTF-8 bytes
+	 * right in the text column, so nothing is decoded while sorting.
+	 *
+	 * @return the rows sorted by title
+	 */
+	public int[] sortTitle() {
+		int[] rows = allRows();
+		int[] titles = new int[size];
+		for (int row = 0; row < size; row++) {
+			titles[row] = textField(row, 0);
+		}
+		mergeSort(rows, new int[size], 0, size, titles);
+		return rows;
+	}
+
+	/*
+	 * Filtering, each returns the matching rows in table order
+	 */
+
+	/**
+	 * Returns the rows by an artist
+	 *
+	 * @param name, the artist
+	 * @return the rows whose artist is name
+	 */
+	public int[] filterArtist(String name) {
+		int id = strings.lookup(name);
+		if (id < 0) {
+			return new int[0];
+		}
+		int[] matches = new int[size];
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if (artistId(row) == id) {
+				matches[count] = row;
+				count += 1;
+			}
+		}
+		return trim(matches, count);
+	}
+
+	/**
+	 * Returns the rows in a genre
+	 *
+	 * @param name, the genre
+	 * @return the rows whose genre is name
+	 */
+	public int[] filterGenre(String name) {
+		int id = strings.lookup(name);
+		if (id < 0) {
+			return new int[0];
+		}
+		int[] matches = new int[size];
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if (genreId(row) == id) {
+				matches[count] = row;
+				count += 1;
+			}
+		}
+		return trim(matches, count);
+	}
+
+	/**
+	 * Returns the rows released between two packed dates
+	 *
+	 * @param start, the first packed date to include
+	 * @param end, the first packed date to leave out
+	 * @return the rows with a release date in [start, end)
+	 */
+	public int[] filterDates(int start, int end) {
+		int[] matches = new int[size];
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			int d = getReleaseDate(row);
+			if (d != ReleaseDate.UNKNOWN && d >= start && d < end) {
+				matches[count] = row;
+				count += 1;
+			}
+		}
+		return trim(matches, count);
+	}
+
+	/**
+	 * Returns the rows marked as favorites
+	 *
+	 * @return the favorite rows
+	 */
+	public int[] filterFavorites() {
+		int[] matches = new int[size];
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if ((flags.get(row) & FAVORITE) != 0) {
+				matches[count] = row;
+				count += 1;
+			}
+		}
+		return trim(matches, count);
+	}
+
+	/**
+	 * Counts how many rows belong to each artist, indexed by the artist's
+	 * id in the dictionary. This is the column store version of
+	 * PlayList.getGenres().
+	 *
+	 * @return the number of rows for each artist id
+	 */
+	public int[] countArtists() {
+		int[] counts = new int[strings.size()];
+		for (int row = 0; row < size; row++) {
+			counts[artistId(row)] += 1;
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the dictionary used by the artist and genre columns
+	 *
+	 * @return the StringDictionary of the table
+	 */
+	public StringDictionary getStrings() {
+		return strings;
+	}
+
+	/**
+	 * A Song backed by one row of a SongTable. It only holds the row number,
+	 * so making one costs a few bytes no matter how large the table is.
+	 */
+	public class SongView {
+
+		private final int row;
+
+		private SongView(int row) {
+			this.row = row;
+		}
+
+		/**
+		 * Returns the row this view reads
+		 *
+		 * @return the row
+		 */
+		public int getRow() {
+			return row;
+		}
+
+		public String getName() {
+			return SongTable.this.getName(row);
+		}
+
+		public String getArtist() {
+			return SongTable.this.getArtist(row);
+		}
+
+		public String getGenre() {
+			return SongTable.this.getGenre(row);
+		}
+
+		public String getSongDate() {
+			return SongTable.this.getSongDate(row);
+		}
+
+		public int getReleaseDate() {
+			return SongTable.this.getReleaseDate(row);
+		}
+
+		public String getArtPath() {
+			return SongTable.this.getArtPath(row);
+		}
+
+		public String getAudioPath() {
+			return SongTable.this.getAudioPath(row);
+		}
+
+		public int getDuration() {
+			return SongTable.this.getDuration(row);
+		}
+
+		public boolean isFavorite() {
+			return SongTable.this.isFavorite(row);
+		}
+
+		/**
+		 * Builds a regular Song out of this view
+		 *
+		 * @return a new Song with this row's metadata
+		 */
+		public Song toSong() {
+			return SongTable.this.toSong(row);
+		}
+	}
+
+	/*
+	 * Column helpers
+	 */
+
+	private int artistId(int row) {
+		return artist.getInt(row * Integer.BYTES);
+	}
+
+	private int genreId(int row) {
+		return genre.getInt(row * Integer.BYTES);
+	}
+
+	/**
+	 * Returns the position in the text column of one of a row's Strings.
+	 * field 0 is the title, 1 the art path and 2 the audio path.
+	 *
+	 * @param row, the row
+	 * @param field, which String of the row
+	 * @return the position of that String's length prefix
+	 */
+	private int textField(int row, int field) {
+		int pos = textOffset.getInt(row * Integer.BYTES);
+		for (int i = 0; i < field; i++) {
+			pos += Integer.BYTES + text.getInt(pos);
+		}
+		return pos;
+	}
+
+	private void writeText(String value) {
+		byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+		int needed = textEnd + Integer.BYTES + bytes.length;
+		if (needed > text.capacity()) {
+			text = copyOf(text, Math.max(needed, text.capacity() * 2), textEnd);
+		}
+		text.putInt(textEnd, bytes.length);
+		text.put(textEnd + Integer.BYTES, bytes);
+		textEnd = needed;
+	}
+
+	private String readText(int pos) {
+		byte[] bytes = new byte[text.getInt(pos)];
+		text.get(pos + Integer.BYTES, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Compares two Strings in the text column byte by byte
+	 */
+	private int compareText(int a, int b) {
+		int lenA = text.getInt(a);
+		int lenB = text.getInt(b);
+		int len = Math.min(lenA, lenB);
+		a += Integer.BYTES;
+		b += Integer.BYTES;
+		for (int i = 0; i < len; i++) {
+			int cmp = (text.get(a + i) & 0xff) - (text.get(b + i) & 0xff);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return lenA - lenB;
+	}
+
+	/**
+	 * Stable merge sort of rows by the text at keys[row]
+	 */
+	private void mergeSort(int[] rows, int[] scratch, int from, int to, int[] keys) {
+		if (to - from < 2) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(rows, scratch, from, mid, keys);
+		mergeSort(rows, scratch, mid, to, keys);
+		if (compareText(keys[rows[mid - 1]], keys[rows[mid]]) <= 0) {
+			return;
+		}
+		System.arraycopy(rows, from, scratch, from, to - from);
+		int i = from;
+		int j = mid;
+		for (int k = from; k < to; k++) {
+			if (j >= to || (i < mid && compareText(keys[scratch[i]], keys[scratch[j]]) <= 0)) {
+				rows[k] = scratch[i++];
+			} else {
+				rows[k] = scratch[j++];
+			}
+		}
+	}
+
+	/**
+	 * Packs a sort key and a row into one long, so that sorting the longs
+	 * sorts by key and keeps rows with the same key in table order.
+	 */
+	private static long pack(int key, int row) {
+		return ((long) key << 32) | row;
+	}
+
+	private static int[] unpack(long[] keys) {
+		Arrays.sort(keys);
+		int[] rows = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			rows[i] = (int) keys[i];
+		}
+		return rows;
+	}
+
+	private int[] allRows() {
+		int[] rows = new int[size];
+		for (int row = 0; row < size; row++) {
+			rows[row] = row;
+		}
+		return rows;
+	}
+
+	private static int[] trim(int[] rows, int count) {
+		int[] trimmed = new int[count];
+		System.arraycopy(rows, 0, trimmed, 0, count);
+		return trimmed;
+	}
+
+	/**
+	 * Doubles the capacity of every fixed width column
+	 */
+	private void grow() {
+		int newCapacity = capacity * 2;
+		textOffset = copyOf(textOffset, newCapacity * Integer.BYTES, size * Integer.BYTES);
+		artist = copyOf(artist, newCapacity * Integer.BYTES, size * Integer.BYTES);
+		genre = copyOf(genre, newCapacity * Integer.BYTES, size * Integer.BYTES);
+		date = copyOf(date, newCapacity * Integer.BYTES, size * Integer.BYTES);
+		dateText = copyOf(dateText, newCapacity * Integer.BYTES, size * Integer.BYTES);
+		duration = copyOf(duration, newCapacity * Integer.BYTES, size * Integer.BYTES);
+		flags = copyOf(flags, newCapacity, size);
+		capacity = newCapacity;
+	}
+
+	private static ByteBuffer copyOf(ByteBuffer column, int newBytes, int usedBytes) {
+		ByteBuffer bigger = ByteBuffer.allocateDirect(newBytes);
+		bigger.put(0, column, 0, usedBytes);
+		return bigger;
+	}
+}
@@ -0,0 +1,128 @@
+package utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Interns Strings into dense int ids so that columns in a SongTable
+ * can hold a 4 byte id instead of a reference to a String.
+ *
+ * Every distinct String is stored exactly once, no matter how many
+ * Songs share it, which is what keeps artist and genre columns cheap
+ * on big libraries.
+ *
+ * Properties:
+ * ids:
+ * A HashMap of each String to its id.
+ *
+ * values:
+ * An ArrayList of the Strings, where a String's position is its id.
+ *
+ * ranks:
+ * The alphabetical rank of each id, built lazily for sorting and
+ * thrown away whenever a new String is added.
+ */
+public class StringDictionary {
+
+	private HashMap<String, Integer> ids;
+	private ArrayList<String> values;
+	private int[] ranks;
+
+	/**
+	 * Creates an empty StringDictionary
+	 */
+	public StringDictionary() {
+		this.ids = new HashMap<String, Integer>();
+		this.values = new ArrayList<String>();
+		this.ranks = null;
+	}
+
+	/**
+	 * Returns the id of a String, adding it if it is not already in
+	 * the dictionary. null is stored as the empty String.
+	 *
+	 * @param value, the String to intern
+	 * @return the id of the String
+	 */
+	public int intern(String value) {
+		if (value == null) {
+			value = "";
+		}
+		Integer id = ids.get(value);
+		if (id != null) {
+			return id;
+		}
+		int newId = values.size();
+		values.add(value);
+		ids.put(value, newId);
+		ranks = null;
+		return newId;
+	}
+
+	/**
+	 * Returns the id of a String without adding it
+	 *
+	 * @param value, the String to look up
+	 * @return the id of the String, -1 if it is not in the dictionary
+	 */
+	public int lookup(String value) {
+		Integer id = ids.get(value == null ? "" : value);
+		if (id == null) {
+			return -1;
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the String with the given id
+	 *
+	 * @param id, an id returned by intern()
+	 * @return the String for that id
+	 */
+	public String get(int id) {
+		return values.get(id);
+	}
+
+	/**
+	 * Returns the number of distinct Strings
+	 *
+	 * @return the number of distinct Strings
+	 */
+	public int size() {
+		return values.size();
+	}
+
+	/**
+	 * Returns the alphabetical rank of an id. Sorting by rank is the
+	 * same as sorting by the Strings themselves, but only needs int
+	 * comparisons.
+	 *
+	 * @param id, an id returned by intern()
+	 * @return the alphabetical rank of the String with that id
+	 */
+	public int rank(int id) {
+		if (ranks == null) {
+			buildRanks();
+		}
+		return ranks[id];
+	}
+
+	/**
+	 * Sorts the ids once by their Strings so every later comparison
+	 * is between ints.
+	 */
+	private void buildRanks() {
+		Integer[] order = new Integer[values.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> values.get(a).compareTo(values.get(b)));
+
+		int[] newRanks = new int[order.length];
+		for (int rank = 0; rank < order.length; rank++) {
+			newRanks[order[rank]] = rank;
+		}
+		ranks = newRanks;
+	}
+}
@@ -0,0 +1,189 @@
+package utilities;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.Stream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Makes smaller copies of album art when it is imported, so the view never
+ * has to decode a full size cover to show it in a small ImageView.
+ *
+ * For a cover saved at src/images/3f/3f9a...c2.jpg, a copy is saved next
+ * to it for every size in SIZES that is smaller than the cover, like
+ * 3f9a...c2_64.jpg, with the longer side scaled down to that many pixels.
+ * Covers are stored by hash, so a cover and its copies never change once
+ * they are made, and making them again is skipped.
+ *
+ * The view asks pick for the art it needs at a given size and gets the
+ * smallest copy that is at least that big, or the cover itself if there
+ * are no copies, like for art saved before copies were made.
+ */
+public class Thumbnails {
+
+	/**
+	 * The sizes copies are made at, smallest first
+	 */
+	public static final int[] SIZES = {64, 160, 640};
+
+	private static final float QUALITY = 0.85f;
+
+	/**
+	 * Makes every copy of a cover that isn't there yet. A cover that can't be
+	 * read is left without copies, which only means the view decodes the
+	 * whole cover.
+	 *
+	 * @param cover, the path of the cover
+	 */
+	public static void generate(String cover) {
+		Path original = Paths.get(cover);
+		// the smallest copy is written last, so if it is there the rest are too
+		if (Files.exists(variant(original, SIZES[0]))) {
+			return;
+		}
+		try {
+			BufferedImage image = ImageIO.read(original.toFile());
+			if (image == null) {
+				return;
+			}
+			int longest = Math.max(image.getWidth(), image.getHeight());
+			// the largest copy is made first and each smaller one is scaled from
+			// the one before it, which is faster and looks better than going
+			// straight from the full cover
+			BufferedImage from = image;
+			for (int i = SIZES.length - 1; i >= 0; i--) {
+				if (SIZES[i] >= longest) {
+					continue;
+				}
+				from = scale(from, SIZES[i]);
+				Path target = variant(original, SIZES[i]);
+				if (!Files.exists(target)) {
+					write(from, target);
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			// a broken image can make ImageIO throw more than IOExceptions
+			return;
+		}
+	}
+
+	/**
+	 * Returns the smallest copy of a cover that is at least a given size, or
+	 * the cover itself if there isn't one
+	 *
+	 * @param cover, the path of the cover
+	 * @param size, how many pixels wide and tall the art will be shown
+	 * @return the path of the art to load, written the same way as cover
+	 */
+	public static String pick(String cover, int size) {
+		for (int variantSize : SIZES) {
+			if (variantSize >= size) {
+				String variant = variantName(cover, variantSize);
+				if (new File(variant).exists()) {
+					return variant;
+				}
+			}
+		}
+		return cover;
+	}
+
+	/**
+	 * Deletes every copy of a cover, for when the cover itself is deleted
+	 *
+	 * @param cover, the path of the cover
+	 */
+	public static void delete(String cover) {
+		for (int size : SIZES) {
+			try {
+				Files.deleteIfExists(variant(Paths.get(cover), size));
+			} catch (IOException e) {
+				// an extra copy left behind doesn't hurt anything
+			}
+		}
+	}
+
+	private static Path variant(Path cover, int size) {
+		return cover.resolveSibling(variantName(cover.getFileName().toString(), size));
+	}
+
+	private static String variantName(String cover, int size) {
+		int dot = cover.lastIndexOf('.');
+		return cover.substring(0, dot) + "_" + size + cover.substring(dot);
+	}
+
+	/**
+	 * Scales an image down so its longer side is size pixels, halving it
+	 * first for as long as it is more than twice that
+	 */
+	private static BufferedImage scale(BufferedImage image, int size) {
+		BufferedImage current = image;
+		while (true) {
+			int longest = Math.max(current.getWidth(), current.getHeight());
+			double factor = Math.max(size / (double) longest, 0.5);
+			int width = Math.max(1, (int) Math.round(current.getWidth() * factor));
+			int height = Math.max(1, (int) Math.round(current.getHeight() * factor));
+			BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = next.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(current, 0, 0, width, height, null);
+			g.dispose();
+			current = next;
+			if (Math.max(width, height) <= size) {
+				return current;
+			}
+		}
+	}
+
+	/**
+	 * Writes a copy as a JPEG, to a temporary file first so a copy that is
+	 * there is always whole. The temporary file has its own name, so two
+	 * songs sharing a cover can both make its copies at once.
+	 */
+	private static void write(BufferedImage image, Path target) throws IOException {
+		Path part = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+		try (ImageOutputStream out = ImageIO.createImageOutputStream(part.toFile())) {
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(QUALITY);
+			writer.setOutput(out);
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.dispose();
+		}
+		Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Makes the copies for every cover already in src/images, for art that
+	 * was saved before copies were made at import
+	 *
+	 * @param args, optionally the folder to look in instead of src/images
+	 */
+	public static void main(String[] args) throws IOException {
+		Path root = Paths.get(args.length > 0 ? args[0] : "src/images");
+		long start = System.nanoTime();
+		int[] count = new int[1];
+		try (Stream<Path> files = Files.walk(root)) {
+			files.filter(p -> p.toString().endsWith(".jpg") && !p.getFileName().toString().matches(".*_\\d+\\.jpg"))
+					.forEach(p -> {
+						generate(p.toString());
+						count[0] += 1;
+					});
+		}
+		System.out.println(String.format("%d covers in %.1f s", count[0], (System.nanoTime() - start) / 1e9));
+	}
+}
@@ -0,0 +1,76 @@
+package view;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import audio.Equalizer;
+import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.Slider;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.media.AudioEqualizer;
+import javafx.scene.media.EqualizerBand;
+import javafx.scene.media.MediaPlayer;
+
+/**
+ * A slider for every band of the Equalizer, from -12 to +12 dB.
+ *
+ * The Equalizer keeps the settings, and is what filters PCM. Songs played
+ * through a MediaPlayer are filtered by JavaFX's own equalizer, so every
+ * change is copied to the MediaPlayers that are playing, and apply copies
+ * the settings to each new one. JavaFX's bands are at the same octaves as
+ * the Equalizer's.
+ */
+public class EqualizerPane extends HBox {
+
+    private static final double RANGE = 12;
+
+    public EqualizerPane(Equalizer equalizer, Supplier<List<MediaPlayer>> players) {
+        setSpacing(8);
+        setPadding(new Insets(10));
+        setAlignment(Pos.CENTER);
+        for (int i = 0; i < equalizer.getBands(); i++) {
+            final int band = i;
+            Slider slider = new Slider(-RANGE, RANGE, equalizer.getGain(band));
+            slider.setOrientation(Orientation.VERTICAL);
+            slider.setPrefHeight(120);
+            slider.valueProperty().addListener((observable, before, gain) -> {
+                equalizer.setGain(band, gain.doubleValue());
+                for (MediaPlayer player : players.get()) {
+                    apply(equalizer, player);
+                }
+            });
+            double hz = equalizer.getFrequency(band);
+            Label label = new Label(hz >= 1000 ? (int) (hz / 1000) + "k" : String.valueOf((int) hz));
+            VBox column = new VBox(4, slider, label);
+            column.setAlignment(Pos.CENTER);
+            getChildren().add(column);
+        }
+    }
+
+    /**
+     * Copies the Equalizer's settings to a MediaPlayer's equalizer
+     *
+     * @param equalizer
+     * 		the Equalizer
+     * @param player
+     * 		the MediaPlayer
+     */
+    public static void apply(Equalizer equalizer, MediaPlayer player) {
+        AudioEqualizer audio = player.getAudioEqualizer();
+        if (audio == null) {
+            return;
+        }
+        List<EqualizerBand> bands = audio.getBands();
+        boolean flat = true;
+        for (int band = 0; band < Math.min(bands.size(), equalizer.getBands()); band++) {
+            double gain = Math.max(EqualizerBand.MIN_GAIN, Math.min(EqualizerBand.MAX_GAIN, equalizer.getGain(band)));
+            bands.get(band).setGain(gain);
+            flat &= gain == 0;
+        }
+        audio.setEnabled(!flat);
+    }
+}
@@ -3,6 +3,8 @@ package view;
 import java.util.ArrayList;
 import java.util.List;
 
+import audio.Waveform;
+
 import javafx.application.Platform;
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
@@ -14,16 +16,14 @@ import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.Slider;
 import javafx.scene.layout.HBox;
-import javafx.scene.layout.Priority;
 import javafx.scene.media.MediaPlayer;
 import javafx.scene.media.MediaPlayer.Status;
 import javafx.scene.media.MediaView;
-import javafx.util.Duration;
 
 /**
  * This creates the media bar that keeps track of the duration
- * of the song left. Basically, the slider that the user
- * can toggle/seek through the song.
+ * of the song left. Basically, the waveform that the user
+ * can click/drag to seek through the song.
  * 
  * @author Jackson
  *
@@ -31,7 +31,7 @@ import javafx.util.Duration;
 public class MediaBar extends HBox { // MediaBar extends Horizontal Box
 
     // introducing Sliders
-    Slider time = new Slider(); // Slider for time
+    WaveformView time = new WaveformView(400, 40); // waveform for time
     Slider vol = new Slider(); // Slider for volume
     Button PlayButton = new Button("||"); // For pausing the player
     Button skipButton = new Button(">>");
@@ -39,11 +39,13 @@ public class MediaBar extends HBox { // MediaBar extends Horizontal Box
     MediaPlayer player;
     MediaView mediaView;
     List<MediaPlayer> players;
+    double gain; // from the song's loudness, so songs play equally loud
 
-    public MediaBar(ArrayList<MediaPlayer> players)
+    public MediaBar(ArrayList<MediaPlayer> players, double gain)
     { // Default constructor taking
         // the MediaPlayer object
         this.players = players;
+        this.gain = gain;
         player = players.get(0);
         mediaView = new MediaView(player);
         
@@ -53,7 +55,6 @@ public class MediaBar extends HBox { // MediaBar extends Horizontal Box
         vol.setPrefWidth(70);
         vol.setMinWidth(30);
         vol.setValue(100);
-        HBox.setHgrow(time, Priority.ALWAYS);
         PlayButton.setPrefWidth(30);
         
         // Adding the components to the bottom
@@ -71,22 +72,14 @@ public class MediaBar extends HBox { // MediaBar extends Horizontal Box
         });
 
         // Inorder to jump to the certain part of video
-        time.valueProperty().addListener(new InvalidationListener() { 
-            public void invalidated(Observable ov) 
-            {
-                if (time.isPressed()) { // It would set the time 
-                    // as specified by user by pressing 
-                    player.seek(player.getMedia().getDuration().multiply(time.getValue() / 100)); 
-                }
-            }
-        });
+        time.setOnSeek(fraction -> player.seek(player.getMedia().getDuration().multiply(fraction)));
 
         // providing functionality to volume slider 
         vol.valueProperty().addListener(new InvalidationListener() { 
             public void invalidated(Observable ov) 
             { 
                 if (vol.isPressed()) { 
-                    player.setVolume(vol.getValue() / 100); // It would set the volume 
+                    player.setVolume(vol.getValue() / 100 * gain); // It would set the volume 
                     // as specified by user by pressing 
                 }
             }
@@ -97,12 +90,26 @@ public class MediaBar extends HBox { // MediaBar extends Horizontal Box
         skipButton.setOnAction(actionEvent -> {
             final MediaPlayer curPlayer = player;
             MediaPlayer nextPlayer = players.get((players.indexOf(curPlayer) + 1) % players.size());
-            nextPlayer.seek(Duration.ZERO);
+            nextPlayer.seek(nextPlayer.getStartTime());
             mediaView.setMediaPlayer(nextPlayer);
             nextPlayer.play();
         });
     }
 
+    /**
+     * Shows the waveform of the song, from whatever thread it was made on
+     *
+     * @param waveform
+     * 		the song's waveform
+     */
+    public void setWaveform(Waveform waveform) {
+        if (Platform.isFxApplicationThread()) {
+            time.setWaveform(waveform);
+        } else {
+            Platform.runLater(() -> time.setWaveform(waveform));
+        }
+    }
+
     // Outside the constructor
     protected void updatesValues()
     {
@@ -110,10 +117,11 @@ public class MediaBar extends HBox { // MediaBar extends Horizontal Box
             public void run()
             {
                 // Updating to the new time value
-                // This will move the slider while running your video
-                time.setValue(player.getCurrentTime().toMillis()/
-                           player.getTotalDuration()
-                                      .toMillis() * 100);
+                // This will move the waveform while running your video
+                // against the whole file, like the waveform, not the trimmed part that plays
+                time.setProgress(player.getCurrentTime().toMillis()/
+                           player.getMedia().getDuration()
+                                      .toMillis());
             }
         });
     }
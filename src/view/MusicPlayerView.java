@@ -12,6 +12,9 @@ import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
+import api.BulkImporter;
+import api.BulkImporter.ImportListener;
+import api.BulkImporter.ImportSummary;
 import api.SpotifyAPI;
 import controller.MusicPlayerController;
 import javafx.application.Application;
@@ -33,6 +36,7 @@ import javafx.scene.control.ContentDisplay;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Slider;
+import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextInputDialog;
 import javafx.scene.image.Image;
@@ -64,8 +68,11 @@ import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import javafx.util.Duration;
+import audio.Equalizer;
+import audio.Trim;
 import model.MusicPlayerModel;
 import song.Song;
+import utilities.PlayCursor;
 import utilities.PlayList;
 import javafx.scene.control.ProgressBar;
 
@@ -73,6 +80,7 @@ import javafx.scene.control.ProgressBar;
 import utilities.SongLibrary;
 import utilities.SpotifyAPIInvalidStreamException;
 import utilities.SpotifyAPIInvalidURLException;
+import utilities.Thumbnails;
 
 /**
  * Is the GUI of the music player. It displays all the components so the user can
@@ -93,6 +101,8 @@ public class MusicPlayerView extends Application implements Observer {
 	// GUI Components
 	private ControlMenu controls;
 	private MediaBar mediaBar;
+	private SpectrumView spectrum; // made once, every MediaPlayer feeds it
+	private Equalizer equalizer; // the EQ settings, copied to every MediaPlayer
 	
 	//media player stuff
 
@@ -101,6 +111,7 @@ public class MusicPlayerView extends Application implements Observer {
 	private PlayList SHOW_PLAYLIST;
 	private MediaPlayer CURRENT_PLAYER;
 	private boolean shuffle = false;
+	private boolean showingDuplicates = false;
 	
 	private static final int TILE_HEIGHT = 50;
 	private static final int TILE_WIDTH = 100;
@@ -129,8 +140,11 @@ public class MusicPlayerView extends Application implements Observer {
 		controller = new MusicPlayerController(model);
 
 		mediaPlayers = new ArrayList<>();
+		spectrum = new SpectrumView(400, 60);
+		equalizer = new Equalizer(2, 44100);
 
 		model.addObserver(this);
+		controller.setDuplicateListener(() -> Platform.runLater(this::showDuplicates));
 
 		
 		VBox root = new VBox();
@@ -197,7 +211,8 @@ public class MusicPlayerView extends Application implements Observer {
 		
 		if (controller.isPlayingPlaylist()) {
 			String playlist = controller.getCurPlaylist().getName();
-			typeText.setText("Playing: " + playlist);
+			long length = controller.getCurPlaylist().getDuration();
+			typeText.setText("Playing: " + playlist + (length > 0 ? " (" + formatDuration(length) + ")" : ""));
 		} 
 		
 		
@@ -233,8 +248,7 @@ public class MusicPlayerView extends Application implements Observer {
 				Song song = ((SongTile)p).getSong();
 				CURRENT_SONG = song;
 				
-				Media file = new Media(new File(song.getAudioPath()).toURI().toString());
-				MediaPlayer mediaPlayer = new MediaPlayer(file);
+				MediaPlayer mediaPlayer = newPlayer(song);
 				mediaPlayers.add(mediaPlayer);
 				
 				mediaPlayer.setAutoPlay(true);
@@ -288,7 +302,9 @@ public class MusicPlayerView extends Application implements Observer {
 		for (int i = 0; i < songList.size(); i++) {
 			SongTile songTile = new SongTile(songList.get(i));
 			songTile.getTitle().setText(songList.get(i).getName());
-			songTile.getArtist().setText(songList.get(i).getArtist());
+			// lengths come from the audio headers read at load, so they show without opening any Media
+			long length = songList.get(i).getDuration();
+			songTile.getArtist().setText(songList.get(i).getArtist() + (length >= 0 ? "  " + formatDuration(length) : ""));
 
 
 			songTile.setOnMouseEntered(highlightSong);
@@ -303,6 +319,92 @@ public class MusicPlayerView extends Application implements Observer {
 		return scroller;
 	}
 
+	/**
+	 * Makes a MediaPlayer for a Song, turned down by however much it takes
+	 * for the Song to play at the same loudness as every other Song, and
+	 * starting and stopping where its sound does once the silence around
+	 * it has been found.
+	 * 
+	 * @param song
+	 * 		the Song to play
+	 * @return the MediaPlayer
+	 */
+	private MediaPlayer newPlayer(Song song) {
+		Media file = new Media(new File(song.getAudioPath()).toURI().toString());
+		MediaPlayer mediaPlayer = new MediaPlayer(file);
+		mediaPlayer.setVolume(controller.getVolume(song));
+		Trim trim = controller.getTrim(song);
+		if (trim != null && trim.isTrimmed()) {
+			mediaPlayer.setStartTime(Duration.millis(trim.getStart()));
+			if (trim.getEnd() < trim.getLength()) {
+				mediaPlayer.setStopTime(Duration.millis(trim.getEnd()));
+			}
+		}
+		spectrum.listenTo(mediaPlayer);
+		EqualizerPane.apply(equalizer, mediaPlayer);
+		return mediaPlayer;
+	}
+
+	/**
+	 * Formats a length as m:ss, or h:mm:ss if it is an hour or more
+	 * 
+	 * @param millis
+	 * 		the length in milliseconds
+	 * @return the formatted length
+	 */
+	private static String formatDuration(long millis) {
+		long seconds = millis / 1000;
+		if (seconds >= 3600) {
+			return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+		}
+		return String.format("%d:%02d", seconds / 60, seconds % 60);
+	}
+
+	/**
+	 * Opens a window with a slider for every band of the equalizer
+	 */
+	private void showEqualizer() {
+		Stage stage = new Stage();
+		stage.setTitle("Equalizer");
+		stage.setScene(new Scene(new EqualizerPane(equalizer, () -> mediaPlayers)));
+		stage.show();
+	}
+
+	/**
+	 * Tells the user which Songs were flagged as the same recording as a
+	 * Song already in the library, and merges them or keeps both. Only one
+	 * of these is open at a time, and it shows every pair flagged so far.
+	 */
+	private void showDuplicates() {
+		if (showingDuplicates) {
+			return;
+		}
+		List<Song[]> pairs = controller.getDuplicates(false);
+		if (pairs.isEmpty()) {
+			return;
+		}
+		String message = "";
+		for (Song[] pair : pairs) {
+			message += pair[1].getName() + " by " + pair[1].getArtist() + " is the same recording as "
+					+ pair[0].getName() + " by " + pair[0].getArtist() + "\n";
+		}
+		message += "\nMerge them to keep only the first of each, in every playlist.";
+		ButtonType merge = new ButtonType("Merge");
+		ButtonType keep = new ButtonType("Keep Both");
+		Alert dialog = new Alert(AlertType.CONFIRMATION, message, merge, keep);
+		dialog.setHeaderText("Duplicate songs found");
+		showingDuplicates = true;
+		dialog.showAndWait().ifPresent(choice -> {
+			if (choice == merge) {
+				controller.mergeDuplicates();
+			} else {
+				controller.keepDuplicates();
+			}
+		});
+		showingDuplicates = false;
+		update(model, null);
+	}
+
 	private ImageView setAlbumArt(Song curSong) {
 		
     	ImageView imageView = new ImageView();
@@ -314,7 +416,9 @@ public class MusicPlayerView extends Application implements Observer {
     	} 
     	else {
     		try {
-    			Image i = new Image(CURRENT_SONG.getCover().substring(4).strip());
+    			// the smallest copy made at import that still fills the view, decoded at the size it's shown
+    			String art = Thumbnails.pick(CURRENT_SONG.getCover().strip(), 400);
+    			Image i = new Image(art.substring(4).strip(), 400, 400, true, true);
     			imageView.setImage(i);
     		} catch (IllegalArgumentException e) {
     			imageView.setImage(new Image("images/no-cover-art-found.jpg"));
@@ -480,6 +584,7 @@ public class MusicPlayerView extends Application implements Observer {
 		private Button backwardButton;
 		private Button prevSongButton;
 		private Button nextSongButton;
+		private Button equalizerButton;
 		private MediaPlayer player;
 	    private List<MediaPlayer> players;
 		
@@ -498,6 +603,8 @@ public class MusicPlayerView extends Application implements Observer {
 			backwardButton = new Button();
 			prevSongButton = new Button();
 			nextSongButton = new Button();
+			equalizerButton = new Button("EQ");
+			equalizerButton.setOnAction(actionEvent -> showEqualizer());
 			
 			setPausePlayButton();
 			setShuffleButton();
@@ -506,7 +613,7 @@ public class MusicPlayerView extends Application implements Observer {
 			setPrevSongButton();
 			setNextSongButton();
 			
-			getChildren().addAll(prevSongButton, backwardButton, playPauseButton, fastForwardButton, nextSongButton, shuffleButton);
+			getChildren().addAll(prevSongButton, backwardButton, playPauseButton, fastForwardButton, nextSongButton, shuffleButton, equalizerButton);
 			setAlignment(Pos.CENTER);
 		}
 		
@@ -562,7 +669,7 @@ public class MusicPlayerView extends Application implements Observer {
 	            		 Status status = player.getStatus(); // To get the status of Player
 	 	                if (status == Status.PLAYING) {
 	 	                    // If the status is Video playing
-	 	                    if (player.getCurrentTime().greaterThanOrEqualTo(player.getTotalDuration())) {
+	 	                    if (player.getCurrentTime().greaterThanOrEqualTo(player.getStopTime())) {
 	 	                        // If the player is at the end of video
 	 	                        player.seek(player.getStartTime()); // Restart the video
 	 	                        player.play();
@@ -629,7 +736,7 @@ public class MusicPlayerView extends Application implements Observer {
 				@Override
 				public void handle(ActionEvent arg0) {
 					if (player != null) {
-						player.seek(player.getTotalDuration());
+						player.seek(player.getStopTime());
 					}
 				}
 			});
@@ -646,17 +753,11 @@ public class MusicPlayerView extends Application implements Observer {
 				@Override
 				public void handle(ActionEvent arg0) {
 					if (player != null) {
-						Song s = controller.getCurSong();
-						if (s.getIndex() == 0) {
+						PlayCursor cursor = controller.getCursor();
+						if (cursor == null || !cursor.hasPrevious()) {
 							return;
 						}
-						Song prev = s;
-						for (Song song : controller.getCurPlaylist().getPlayOrder()) {
-							if (s.getIndex()== song.getIndex() + 1) {
-								prev = song;
-								break;
-							}
-						}
+						Song prev = cursor.peekPrevious();
 						
 						if (mediaPlayers.size() > 0) {
 							for (MediaPlayer p : mediaPlayers) {
@@ -666,13 +767,12 @@ public class MusicPlayerView extends Application implements Observer {
 						mediaPlayers = new ArrayList<>();
 						CURRENT_SONG = prev;
 						
-						Media file = new Media(new File(prev.getAudioPath()).toURI().toString());
-						MediaPlayer mediaPlayer = new MediaPlayer(file);
+						MediaPlayer mediaPlayer = newPlayer(prev);
 						mediaPlayers.add(mediaPlayer);
 						
 						mediaPlayer.setAutoPlay(true);
 						player = mediaPlayer;
-						controller.changeSong(prev);
+						controller.previousSong();
 						mediaPlayer.setOnEndOfMedia(() -> playNextSong(controller.getCurPlaylist(), CURRENT_SONG));
 						
 					}
@@ -721,13 +821,12 @@ public class MusicPlayerView extends Application implements Observer {
 						controls.setImage(controls.playPauseButton, "pause.png", BUTTON_SIZE_1);
 						SHOW_PLAYLIST = controller.getCurPlaylist();
 					}	
-					Song song = controller.getCurPlaylist().getPlayOrder().get(0);
+					Song song = controller.getCurPlaylist().getSongAt(0);
 					
 					mediaPlayers = new ArrayList<>();
 					CURRENT_SONG = song;
 					
-					Media file = new Media(new File(song.getAudioPath()).toURI().toString());
-					MediaPlayer mediaPlayer = new MediaPlayer(file);
+					MediaPlayer mediaPlayer = newPlayer(song);
 					mediaPlayers.add(mediaPlayer);
 					
 					mediaPlayer.setAutoPlay(true);
@@ -758,8 +857,11 @@ public class MusicPlayerView extends Application implements Observer {
 	private Button createPlaylistButton;
 	private Button switchPlaylistButton;
 	private Button searchButton;
+	private Button importButton;
 	private Button dateButton;
 	private Button backButton;
+	private ProgressBar importProgress;
+	private Label importStatus;
 	
 	private Menu() {
 		createPlaylistButton = new Button("Create New Playlist");
@@ -769,6 +871,11 @@ public class MusicPlayerView extends Application implements Observer {
 		dateButton = new Button("Sort by Date");
 		backButton = new Button("Back");
 		searchButton = new Button("Search");
+		importButton = new Button("Import");
+		// only shown while an import is running
+		importProgress = new ProgressBar(0);
+		importProgress.setVisible(false);
+		importStatus = new Label();
 		menu = new GridPane();
 		
 		// where the buttons are going to be placed in the GridPane
@@ -779,7 +886,10 @@ public class MusicPlayerView extends Application implements Observer {
 		GridPane.setConstraints(dateButton, 5, 0);
 		GridPane.setConstraints(backButton, 6, 0);
 		GridPane.setConstraints(searchButton, 7, 0);
-		menu.getChildren().addAll(createPlaylistButton, switchPlaylistButton, artistButton, titleButton, searchButton, dateButton, backButton);
+		GridPane.setConstraints(importButton, 8, 0);
+		GridPane.setConstraints(importProgress, 9, 0);
+		GridPane.setConstraints(importStatus, 10, 0);
+		menu.getChildren().addAll(createPlaylistButton, switchPlaylistButton, artistButton, titleButton, searchButton, importButton, dateButton, backButton, importProgress, importStatus);
 		
 		menu.setHgap(10);
         menu.setVgap(10);
@@ -963,38 +1073,20 @@ public class MusicPlayerView extends Application implements Observer {
 				        return;
 			    	}
 			    	else {
-			    		try {
-							SpotifyAPI.authenticate();
-						} catch (SpotifyAPIInvalidURLException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						} catch (SpotifyAPIInvalidStreamException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-			    		try {
-							SpotifyAPI.getToken();
-						} catch (SpotifyAPIInvalidURLException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						} catch (SpotifyAPIInvalidStreamException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-			    		try {
-							Song toAdd = SpotifyAPI.getMetadata(toSearch[0], toSearch[1]);
-							songLibrary.addSong(toAdd);
-							PlayList songLib = controller.getPlaylist("Song Library");
-							songLib.addSong(toAdd);
-							update(model, null);
-						} catch (Exception e) {
-							Platform.runLater(() -> {
-						        Alert error = new Alert(AlertType.INFORMATION, "Oops! Something went wrong! Song not available!", ButtonType.OK);
-						        error.show();
-						    });
-							e.printStackTrace();
-						}
-
+			    		// the lookup runs off the FX thread, the view is only touched in runLater
+			    		SpotifyAPI.getMetadataAsync(toSearch[0], toSearch[1]).whenComplete((toAdd, e) -> 
+			    			Platform.runLater(() -> {
+			    				if (e != null) {
+			    					Alert error = new Alert(AlertType.INFORMATION, "Oops! Something went wrong! Song not available!", ButtonType.OK);
+			    					error.show();
+			    					e.printStackTrace();
+			    					return;
+			    				}
+			    				songLibrary.addSong(toAdd);
+			    				PlayList songLib = controller.getPlaylist("Song Library");
+			    				songLib.addSong(toAdd);
+			    				update(model, null);
+			    			}));
 			    		
 			    	}
 				    	
@@ -1003,6 +1095,67 @@ public class MusicPlayerView extends Application implements Observer {
 			}
 		};
 		
+		EventHandler<MouseEvent> importSongs = new EventHandler<MouseEvent>() {
+			@Override
+			public void handle(MouseEvent mouseEvent) {
+				
+				TextInputDialog dialog = new TextInputDialog();
+				dialog.setTitle("Import Songs");
+				dialog.setHeaderText("Type in the path of a file with one artist, song on each line");
+				dialog.showAndWait().ifPresent(path -> 
+			    {
+			    	// the import waits on the network, so it gets its own thread and
+			    	// each saved batch is added to the library in runLater
+			    	importButton.setDisable(true);
+			    	importProgress.setProgress(0);
+			    	importProgress.setVisible(true);
+			    	importStatus.setText("Importing...");
+			    	Thread importer = new Thread(() -> {
+			    		try {
+			    			ImportSummary summary = new BulkImporter().importFile(path.strip(), new ImportListener() {
+			    				@Override
+			    				public void progress(int done, int failed, int total) {
+			    					// every song would flood the FX thread on a big import
+			    					if (done % 50 == 0 || done == total) {
+			    						Platform.runLater(() -> {
+			    							importProgress.setProgress((double) done / total);
+			    							importStatus.setText(done + "/" + total + " done, " + failed + " failed");
+			    						});
+			    					}
+			    				}
+			    				
+			    				@Override
+			    				public void imported(List<Song> songs) {
+			    					Platform.runLater(() -> controller.addSongs(songs));
+			    				}
+			    			});
+			    			Platform.runLater(() -> {
+			    				finishImport();
+			    				String message = "Imported " + summary.getImported() + " of " + summary.getTotal() + " songs!";
+			    				Alert done = new Alert(AlertType.INFORMATION, message, ButtonType.OK);
+			    				if (!summary.getFailures().isEmpty()) {
+			    					done.setContentText(message + "\n" + summary.getFailures().size() + " songs weren't available:");
+			    					TextArea failures = new TextArea(String.join("\n", summary.getFailures()));
+			    					failures.setEditable(false);
+			    					done.getDialogPane().setExpandableContent(failures);
+			    					done.getDialogPane().setExpanded(true);
+			    				}
+			    				done.show();
+			    			});
+			    		} catch (IOException | InterruptedException e) {
+			    			Platform.runLater(() -> {
+			    				finishImport();
+			    				Alert error = new Alert(AlertType.INFORMATION, "Oops! Couldn't read that file!", ButtonType.OK);
+			    				error.show();
+			    			});
+			    		}
+			    	}, "bulk-import");
+			    	importer.setDaemon(true);
+			    	importer.start();
+			    });
+			}
+		};
+		
 		createPlaylistButton.addEventFilter(MouseEvent.MOUSE_CLICKED, createPlaylist);
 		switchPlaylistButton.addEventHandler(MouseEvent.MOUSE_CLICKED, switchPlaylist);
 		artistButton.addEventHandler(MouseEvent.MOUSE_CLICKED, sortPlaylistbyArtist);
@@ -1010,7 +1163,17 @@ public class MusicPlayerView extends Application implements Observer {
 		dateButton.addEventHandler(MouseEvent.MOUSE_CLICKED, sortPlaylistbyDate);
 		backButton.addEventHandler(MouseEvent.MOUSE_CLICKED, back);
 		searchButton.addEventHandler(MouseEvent.MOUSE_CLICKED, search);
+		importButton.addEventHandler(MouseEvent.MOUSE_CLICKED, importSongs);
 		}
+	
+	/**
+	 * Hides the import progress and lets the user start another import
+	 */
+	private void finishImport() {
+		importButton.setDisable(false);
+		importProgress.setVisible(false);
+		importStatus.setText("");
+	}
 	}
 	
 	/**
@@ -1189,15 +1352,18 @@ public class MusicPlayerView extends Application implements Observer {
 		controls = new ControlMenu(mediaPlayers);
 		
 		if (controller.getCurSong() != null && mediaPlayers.size() > 0) {
-			mediaBar = new MediaBar(mediaPlayers);
+			Song playing = controller.getCurSong();
+			mediaBar = new MediaBar(mediaPlayers, controller.getVolume(playing));
+			controller.getWaveform(playing, mediaBar::setWaveform);
 			curSongView.setAlignment(Pos.CENTER);
 			controls.setAlignment(Pos.CENTER);
 			controls.setImage(controls.playPauseButton, "pause.png", BUTTON_SIZE_1);
-			root.getChildren().addAll(menu, songMenu, hbox, curSongView, controls, mediaBar);
+			root.getChildren().addAll(menu, songMenu, hbox, curSongView, spectrum, controls, mediaBar);
 		} else {
 			curSongView.setAlignment(Pos.CENTER);
 			controls.setAlignment(Pos.CENTER);
 			root.getChildren().addAll(menu, hbox, curSongView, controls);
+			spectrum.clear();
 		}
 
 		Scene scene = new Scene(root);
@@ -1218,8 +1384,8 @@ public class MusicPlayerView extends Application implements Observer {
 	 * and the current song. Calls this same function to determine what Song
 	 * to play after said next song. 
 	 * 
-	 * Base case: When the Song passed as an argument has an index equal to
-	 * the length of the PlayList it belongs to.
+	 * Base case: When the PlayCursor of the current PlayList has no Song
+	 * after the current one.
 	 * 
 	 * @param curPlaylist
 	 * 		the current PlayList that is being played.
@@ -1227,24 +1393,22 @@ public class MusicPlayerView extends Application implements Observer {
 	 * 		the current Song that is playing.
 	 */
 	public void playNextSong(PlayList curPlaylist, Song curSong) {
-		if (curSong.getIndex() == curPlaylist.getSize() - 1) {
+		PlayCursor cursor = controller.getCursor();
+		if (cursor == null || !cursor.hasNext()) {
 			controls.setImage(controls.playPauseButton, "play.png", BUTTON_SIZE_1);
 			return;
 		}
 		mediaPlayers = new ArrayList<>();
 
-		int index = curSong.getIndex();
-		Song nextSong = curPlaylist.getPlayOrder().get(index + 1);
-		
-		Media file = new Media(new File(nextSong.getAudioPath()).toURI().toString());
+		Song nextSong = cursor.peekNext();
 		
-		MediaPlayer nextMediaPlayer = new MediaPlayer(file);
+		MediaPlayer nextMediaPlayer = newPlayer(nextSong);
 		mediaPlayers.add(nextMediaPlayer);
 		
 		nextMediaPlayer.setAutoPlay(true);
 		CURRENT_PLAYER = nextMediaPlayer;
 		CURRENT_SONG = nextSong;
-		controller.changeSong(nextSong);
+		controller.nextSong();
 		
 		nextMediaPlayer.setOnEndOfMedia(() -> playNextSong(curPlaylist, nextSong));
 	}
@@ -0,0 +1,96 @@
+package view;
+
+import audio.SpectrumBuffer;
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.media.AudioSpectrumListener;
+import javafx.scene.media.MediaPlayer;
+import javafx.scene.paint.Color;
+
+/**
+ * Draws the spectrum of the Song that is playing as a row of bars that
+ * fall back slowly, like a stereo's.
+ *
+ * The MediaPlayer's spectrum is written into a SpectrumBuffer by one
+ * listener made once and given to every MediaPlayer. An AnimationTimer
+ * reads the buffer into an array made up front once a frame and draws, so
+ * nothing is allocated while it runs. JavaFX calls both the listener and
+ * the timer on the FX Application Thread, so they never overlap and the
+ * buffer needs no locking. Frames where nothing new was written and every
+ * bar has fallen are skipped.
+ *
+ * There is only ever one SpectrumView, kept by the MusicPlayerView and
+ * moved into each new layout.
+ */
+public class SpectrumView extends Canvas {
+
+    private static final int BANDS = 48;
+    private static final double INTERVAL = 1.0 / 60; // seconds between spectrum updates
+    private static final float FALL = 0.02f; // how far a bar falls each frame
+
+    private final SpectrumBuffer buffer = new SpectrumBuffer(BANDS);
+    private final float[] levels = new float[BANDS];
+    private final float[] shown = new float[BANDS];
+    private int sequence;
+    private boolean moving;
+
+    private final AudioSpectrumListener listener =
+            (timestamp, duration, magnitudes, phases) -> buffer.writeDecibels(magnitudes, -60);
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            int read = buffer.read(levels, sequence);
+            if (read == sequence && !moving) {
+                return;
+            }
+            sequence = read;
+            draw();
+        }
+    };
+
+    public SpectrumView(double width, double height) {
+        super(width, height);
+        timer.start();
+    }
+
+    /**
+     * Makes a MediaPlayer send its spectrum here
+     *
+     * @param player
+     * 		the MediaPlayer
+     */
+    public void listenTo(MediaPlayer player) {
+        player.setAudioSpectrumNumBands(BANDS);
+        player.setAudioSpectrumInterval(INTERVAL);
+        player.setAudioSpectrumThreshold(-60);
+        player.setAudioSpectrumListener(listener);
+    }
+
+    /**
+     * Lets every bar fall to nothing, for when playback stops
+     */
+    public void clear() {
+        buffer.clear();
+    }
+
+    private void draw() {
+        GraphicsContext g = getGraphicsContext2D();
+        double width = getWidth();
+        double height = getHeight();
+        double barWidth = width / BANDS;
+        g.clearRect(0, 0, width, height);
+        g.setFill(Color.rgb(0, 150, 170));
+        moving = false;
+        for (int i = 0; i < BANDS; i++) {
+            // jump up to a louder level, fall slowly from a quieter one
+            shown[i] = Math.max(levels[i], shown[i] - FALL);
+            if (shown[i] > 0) {
+                moving = true;
+                double barHeight = shown[i] * height;
+                g.fillRect(i * barWidth + 1, height - barHeight, barWidth - 2, barHeight);
+            }
+        }
+    }
+}
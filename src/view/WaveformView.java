@@ -0,0 +1,110 @@
+package view;
+
+import java.util.function.DoubleConsumer;
+
+import audio.Waveform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.paint.Color;
+
+/**
+ * Draws the waveform of the Song that is playing, with the part that has
+ * played in a different color, and seeks when it is clicked or dragged.
+ * It takes the place of a plain time slider in the MediaBar.
+ *
+ * Everything is drawn from a Waveform made ahead of time, so drawing never
+ * touches the audio. The level of the Waveform with about one bucket per
+ * pixel is used, so a long track costs the same to draw as a short one.
+ * Until the Waveform is ready, a plain bar is drawn instead.
+ */
+public class WaveformView extends Canvas {
+
+    private static final Color PLAYED = Color.rgb(0, 150, 170);
+    private static final Color UNPLAYED = Color.LIGHTGREY;
+
+    private Waveform waveform;
+    private double progress; // from 0 to 1
+    private DoubleConsumer onSeek;
+
+    public WaveformView(double width, double height) {
+        super(width, height);
+        setOnMousePressed(this::seek);
+        setOnMouseDragged(this::seek);
+        draw();
+    }
+
+    /**
+     * Sets the Waveform to draw
+     *
+     * @param waveform
+     * 		the Waveform, or null to draw a plain bar
+     */
+    public void setWaveform(Waveform waveform) {
+        this.waveform = waveform;
+        draw();
+    }
+
+    /**
+     * Sets how much of the Song has played
+     *
+     * @param progress
+     * 		from 0 to 1
+     */
+    public void setProgress(double progress) {
+        this.progress = Math.max(0, Math.min(1, progress));
+        draw();
+    }
+
+    /**
+     * Sets what to do when the user clicks or drags on the waveform
+     *
+     * @param onSeek
+     * 		given where the user clicked, from 0 to 1
+     */
+    public void setOnSeek(DoubleConsumer onSeek) {
+        this.onSeek = onSeek;
+    }
+
+    private void seek(MouseEvent event) {
+        double fraction = Math.max(0, Math.min(1, event.getX() / getWidth()));
+        setProgress(fraction);
+        if (onSeek != null) {
+            onSeek.accept(fraction);
+        }
+    }
+
+    private void draw() {
+        GraphicsContext g = getGraphicsContext2D();
+        double width = getWidth();
+        double height = getHeight();
+        double middle = height / 2;
+        double playedTo = progress * width;
+        g.clearRect(0, 0, width, height);
+        if (waveform == null) {
+            g.setFill(UNPLAYED);
+            g.fillRect(0, middle - 2, width, 4);
+            g.setFill(PLAYED);
+            g.fillRect(0, middle - 2, playedTo, 4);
+            return;
+        }
+        int pixels = (int) width;
+        int level = waveform.levelFor(pixels);
+        int buckets = waveform.getBuckets(level);
+        double scale = middle / 127.0;
+        g.setLineWidth(1);
+        for (int x = 0; x < pixels; x++) {
+            // every bucket that falls under this pixel
+            int from = (int) ((long) x * buckets / pixels);
+            int to = Math.max(from + 1, (int) ((long) (x + 1) * buckets / pixels));
+            int min = 0;
+            int max = 0;
+            for (int b = from; b < to && b < buckets; b++) {
+                min = Math.min(min, waveform.getMin(level, b));
+                max = Math.max(max, waveform.getMax(level, b));
+            }
+            g.setStroke(x < playedTo ? PLAYED : UNPLAYED);
+            g.strokeLine(x + 0.5, middle - max * scale, x + 0.5, middle - Math.min(min, -1) * scale);
+        }
+    }
+}